@@ -0,0 +1,39 @@
+package org.openforis.commons.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the JMH benchmarks writing the results in JSON format, so that the results of different releases
+ * can be compared (e.g. with the JMH visualizer or any JSON tool).
+ * 
+ * Usage:
+ * <pre>
+ * mvn -pl of-commons-benchmarks -am package -DskipTests
+ * java -jar of-commons-benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp]
+ * </pre>
+ * Results are written to {@value #DEFAULT_RESULT_FILE} unless the -rf or -rff JMH options are specified;
+ * run it with -h to see all the JMH options.
+ *
+ */
+public class BenchmarkRunner {
+
+	public static final String DEFAULT_RESULT_FORMAT = "json";
+	public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws Exception {
+		List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+		if (! jmhArgs.contains("-rf")) {
+			jmhArgs.add(0, "-rf");
+			jmhArgs.add(1, DEFAULT_RESULT_FORMAT);
+		}
+		if (! jmhArgs.contains("-rff")) {
+			jmhArgs.add(0, "-rff");
+			jmhArgs.add(1, DEFAULT_RESULT_FILE);
+		}
+		Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+	}
+}
@@ -0,0 +1,224 @@
+package org.openforis.commons.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.io.csv.CsvColumn;
+import org.openforis.commons.io.csv.CsvLine;
+import org.openforis.commons.io.csv.CsvReader;
+import org.openforis.commons.io.csv.CsvWriter;
+import org.openforis.commons.io.flat.ColumnBatch;
+import org.openforis.commons.io.flat.Field;
+import org.openforis.commons.io.flat.Field.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of {@link CsvReader}, {@link CsvLine} and {@link CsvWriter}, expressed in lines per second.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvBenchmark {
+
+	static final int LINES = 10000;
+	static final String[] HEADERS = new String[] {"id", "name", "plot", "dbh", "height", "date", "notes"};
+
+	@Param({"false", "true"})
+	public boolean quoted;
+
+	private File file;
+	private CsvReader lineReader;
+	private CsvLine line;
+	private CsvColumn[] columns;
+	private Object[] values;
+
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		file = File.createTempFile("of-commons-benchmark", ".csv");
+		file.deleteOnExit();
+		CsvWriter writer = quoted 
+				? new CsvWriter(new FileOutputStream(file), "UTF-8", ',', '"')
+				: new CsvWriter(new FileOutputStream(file));
+		try {
+			writer.writeHeaders(HEADERS);
+			for (int i = 0; i < LINES; i++) {
+				writer.writeNext(createValues(i));
+			}
+		} finally {
+			writer.close();
+		}
+		values = createValues(LINES / 2);
+	}
+
+	@Setup(Level.Trial)
+	public void readLine() throws IOException {
+		lineReader = new CsvReader(file);
+		lineReader.readHeaders();
+		line = lineReader.readNextLine();
+		columns = new CsvColumn[] {lineReader.getColumn("id"), lineReader.getColumn("name"), 
+				lineReader.getColumn("dbh"), lineReader.getColumn("notes")};
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() throws IOException {
+		lineReader.close();
+		file.delete();
+	}
+
+	static Object[] createValues(int i) {
+		return new Object[] {i, "tree " + i, i % 100, 10.5 + i % 50, 2 + i % 30, "2020-01-" + (10 + i % 20), 
+				i % 10 == 0 ? "dead, fallen" : ""};
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void readNextLine(Blackhole blackhole) throws IOException {
+		CsvReader reader = new CsvReader(file);
+		try {
+			reader.readHeaders();
+			CsvLine line = reader.readNextLine();
+			while (line != null) {
+				blackhole.consume(line);
+				line = reader.readNextLine();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public double sumByRecord() throws IOException {
+		CsvReader reader = new CsvReader(file);
+		try {
+			reader.readHeaders();
+			CsvColumn plot = reader.getColumn("plot");
+			CsvColumn dbh = reader.getColumn("dbh");
+			double sum = 0;
+			CsvLine line = reader.readNextLine();
+			while (line != null) {
+				sum += plot.getInt(line, 0) + dbh.getDouble(line, 0);
+				line = reader.readNextLine();
+			}
+			return sum;
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public double sumByBatch() throws IOException {
+		CsvReader reader = new CsvReader(file);
+		try {
+			reader.readHeaders();
+			ColumnBatch batch = new ColumnBatch(Arrays.asList(new Field("plot", Type.INTEGER), new Field("dbh", Type.DECIMAL)));
+			double sum = 0;
+			while (reader.nextBatch(batch) > 0) {
+				long[] plots = batch.getLongs(0);
+				double[] dbhs = batch.getDoubles(1);
+				for (int i = 0; i < batch.getRowCount(); i++) {
+					sum += plots[i] + dbhs[i];
+				}
+			}
+			return sum;
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public void getValueByColumnName(Blackhole blackhole) {
+		blackhole.consume(line.getValue("id", Integer.class));
+		blackhole.consume(line.getValue("name", String.class));
+		blackhole.consume(line.getValue("dbh", Double.class));
+		blackhole.consume(line.getValue("notes", String.class));
+	}
+
+	@Benchmark
+	public void getValueByColumnHandle(Blackhole blackhole) {
+		blackhole.consume(columns[0].getValue(line, Integer.class));
+		blackhole.consume(columns[1].getValue(line, String.class));
+		blackhole.consume(columns[2].getValue(line, Double.class));
+		blackhole.consume(columns[3].getValue(line, String.class));
+	}
+
+	@Benchmark
+	public void getValueByIndex(Blackhole blackhole) {
+		blackhole.consume(line.getValue(0, Integer.class));
+		blackhole.consume(line.getValue(1, String.class));
+		blackhole.consume(line.getValue(3, Double.class));
+		blackhole.consume(line.getValue(6, String.class));
+	}
+
+	@Benchmark
+	public void getPrimitiveByIndex(Blackhole blackhole) {
+		blackhole.consume(line.getInt(0, -1));
+		blackhole.consume(line.getInt(2, -1));
+		blackhole.consume(line.getDouble(3, Double.NaN));
+		blackhole.consume(line.getDouble(4, Double.NaN));
+	}
+
+	@Benchmark
+	public void getNumberByIndex(Blackhole blackhole) {
+		blackhole.consume(line.getValue(0, Integer.class));
+		blackhole.consume(line.getValue(2, Integer.class));
+		blackhole.consume(line.getValue(3, Double.class));
+		blackhole.consume(line.getValue(4, Double.class));
+	}
+
+	@Benchmark
+	public Date getDateByIndex() {
+		return line.getValue(5, Date.class);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public StringWriter writeNext() throws IOException {
+		StringWriter out = new StringWriter(LINES * 64);
+		CsvWriter writer = quoted ? new CsvWriter(out, ',', '"') : new CsvWriter(out);
+		writer.writeHeaders(HEADERS);
+		for (int i = 0; i < LINES; i++) {
+			writer.writeNext(values);
+		}
+		writer.close();
+		return out;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public ByteArrayOutputStream writeNextToStream() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(LINES * 64);
+		CsvWriter writer = quoted ? new CsvWriter(out, "UTF-8", ',', '"') : new CsvWriter(out);
+		writer.writeHeaders(HEADERS);
+		for (int i = 0; i < LINES; i++) {
+			writer.writeNext(values);
+		}
+		writer.close();
+		return out;
+	}
+}
@@ -0,0 +1,103 @@
+package org.openforis.commons.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openforis.commons.io.ParallelGzipOutputStream;
+import org.openforis.commons.io.csv.CsvLine;
+import org.openforis.commons.io.csv.CsvReader;
+import org.openforis.commons.io.csv.CsvWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time needed to write a gzip compressed CSV file with {@link GZIPOutputStream} and with {@link ParallelGzipOutputStream},
+ * and to read it with {@link CsvReader}.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CsvCompressionBenchmark {
+
+	@Param({"200000"})
+	public int lines;
+
+	@Param({"2"})
+	public int parallelism;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		file = File.createTempFile("of-commons-benchmark", ".csv.gz");
+		file.deleteOnExit();
+		write(new ParallelGzipOutputStream(new FileOutputStream(file), parallelism));
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream writeGzip() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+		write(new GZIPOutputStream(out, 64 * 1024));
+		return out;
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream writeParallelGzip() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+		write(new ParallelGzipOutputStream(out, parallelism));
+		return out;
+	}
+
+	@Benchmark
+	public void readGzip(Blackhole blackhole) throws IOException {
+		CsvReader reader = new CsvReader(file);
+		try {
+			reader.readHeaders();
+			CsvLine line = reader.readNextLine();
+			while (line != null) {
+				blackhole.consume(line.getLine());
+				line = reader.readNextLine();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void write(OutputStream out) throws IOException {
+		CsvWriter writer = new CsvWriter(out, "UTF-8", ',', '"');
+		try {
+			writer.writeHeaders(CsvBenchmark.HEADERS);
+			for (int i = 0; i < lines; i++) {
+				writer.writeNext(CsvBenchmark.createValues(i));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
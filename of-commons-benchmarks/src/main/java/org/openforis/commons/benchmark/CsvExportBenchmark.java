@@ -0,0 +1,80 @@
+package org.openforis.commons.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.io.csv.CsvReader;
+import org.openforis.commons.io.csv.CsvWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time needed to export all the records of a CSV file with {@link CsvWriter#writeAll(org.openforis.commons.io.flat.FlatDataStream, int)},
+ * formatting them on a different number of threads.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CsvExportBenchmark {
+
+	@Param({"200000"})
+	public int lines;
+
+	@Param({"1", "2", "4"})
+	public int parallelism;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		file = File.createTempFile("of-commons-benchmark", ".csv");
+		file.deleteOnExit();
+		CsvWriter writer = new CsvWriter(new FileOutputStream(file), "UTF-8", ',', '"');
+		try {
+			writer.writeHeaders(CsvBenchmark.HEADERS);
+			for (int i = 0; i < lines; i++) {
+				writer.writeNext(CsvBenchmark.createValues(i));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream writeAll() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+		CsvReader reader = new CsvReader(file);
+		CsvWriter writer = new CsvWriter(out, "UTF-8", ',', '"');
+		try {
+			reader.readHeaders();
+			writer.writeAll(reader, parallelism);
+		} finally {
+			writer.close();
+			reader.close();
+		}
+		return out;
+	}
+}
@@ -0,0 +1,106 @@
+package org.openforis.commons.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.io.csv.CsvReader;
+import org.openforis.commons.io.csv.CsvWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time needed to count the lines of a CSV file with {@link CsvReader#size()} (on a new reader every time,
+ * so the count is not cached), compared with a {@link LineNumberReader}, and to estimate them.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CsvSizeBenchmark {
+
+	@Param({"500000"})
+	public int lines;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		file = File.createTempFile("of-commons-benchmark", ".csv");
+		file.deleteOnExit();
+		CsvWriter writer = new CsvWriter(new FileOutputStream(file), "UTF-8", ',', '"');
+		try {
+			writer.writeHeaders(CsvBenchmark.HEADERS);
+			for (int i = 0; i < lines; i++) {
+				writer.writeNext(CsvBenchmark.createValues(i));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Benchmark
+	public int lineNumberReader() throws IOException {
+		LineNumberReader reader = new LineNumberReader(new FileReader(file));
+		try {
+			reader.skip(Long.MAX_VALUE);
+			return reader.getLineNumber();
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public int size() throws IOException {
+		CsvReader reader = new CsvReader(file);
+		try {
+			return reader.size();
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public int quoteAwareSize() throws IOException {
+		CsvReader reader = new CsvReader(file);
+		try {
+			reader.setQuoteAwareSize(true);
+			return reader.size();
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int estimateSize() throws IOException {
+		CsvReader reader = new CsvReader(file);
+		try {
+			return reader.estimateSize();
+		} finally {
+			reader.close();
+		}
+	}
+}
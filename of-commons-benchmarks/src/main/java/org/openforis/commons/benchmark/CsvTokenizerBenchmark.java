@@ -0,0 +1,123 @@
+package org.openforis.commons.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.io.OpenForisIOUtils;
+import org.openforis.commons.io.csv.CsvLine;
+import org.openforis.commons.io.csv.CsvReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the time needed to read a whole CSV file with the opencsv based reader
+ * (used by the deprecated {@link CsvReader#CsvReader(java.io.Reader)} constructor)
+ * and with the built-in tokenizer used for CSV files, with and without reusing the line arrays.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvTokenizerBenchmark {
+
+	@Param({"100000"})
+	public int lines;
+
+	/**
+	 * Percentage of quoted values
+	 */
+	@Param({"0", "30"})
+	public int quotedPercent;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		file = File.createTempFile("of-commons-tokenizer-benchmark", ".csv");
+		file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), OpenForisIOUtils.UTF_8);
+		try {
+			writer.write("plot_id,tree_id,species,dbh,height,health,date,notes,latitude,longitude\n");
+			for (int i = 0; i < lines; i++) {
+				String[] values = new String[] {
+						String.valueOf(i / 20), String.valueOf(i), "Species " + i % 300, String.valueOf(10.5 + i % 50),
+						String.valueOf(2 + i % 30), String.valueOf(i % 5), "2020-01-" + (10 + i % 20), 
+						i % 7 == 0 ? "leaning, \"dead\" branches" : "ok", String.valueOf(-12.345678 + i * 0.0001), 
+						String.valueOf(34.567891 + i * 0.0001)
+				};
+				for (int j = 0; j < values.length; j++) {
+					if (j > 0) {
+						writer.write(',');
+					}
+					String value = values[j];
+					boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || (i * 10 + j) % 100 < quotedPercent;
+					if (quote) {
+						writer.write('"');
+						writer.write(value.replace("\"", "\"\""));
+						writer.write('"');
+					} else {
+						writer.write(value);
+					}
+				}
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@SuppressWarnings("deprecation")
+	@Benchmark
+	public void openCsv(Blackhole blackhole) throws IOException {
+		read(new CsvReader(OpenForisIOUtils.toReader(file)), blackhole);
+	}
+
+	@Benchmark
+	public void nativeTokenizer(Blackhole blackhole) throws IOException {
+		read(new CsvReader(file), blackhole);
+	}
+
+	@Benchmark
+	public void nativeTokenizerReusingLines(Blackhole blackhole) throws IOException {
+		CsvReader reader = new CsvReader(file);
+		reader.setReuseLineArrays(true);
+		read(reader, blackhole);
+	}
+
+	private void read(CsvReader reader, Blackhole blackhole) throws IOException {
+		try {
+			reader.readHeaders();
+			CsvLine line = reader.readNextLine();
+			while (line != null) {
+				blackhole.consume(line.getLine());
+				line = reader.readNextLine();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+}
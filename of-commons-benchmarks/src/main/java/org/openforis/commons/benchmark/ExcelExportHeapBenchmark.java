@@ -0,0 +1,105 @@
+package org.openforis.commons.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+
+import org.openforis.commons.io.excel.ExcelFlatValuesWriter;
+import org.openforis.commons.io.flat.Field;
+import org.openforis.commons.io.flat.Field.Type;
+
+/**
+ * Measures the peak heap usage of {@link ExcelFlatValuesWriter} writing an increasing number of rows,
+ * with the workbook kept in memory and in streaming mode.
+ * 
+ * Not a JMH benchmark (JMH doesn't measure retained memory): run it with
+ * <pre>
+ * java -cp of-commons-benchmarks/target/benchmarks.jar org.openforis.commons.benchmark.ExcelExportHeapBenchmark [rows...]
+ * </pre>
+ * The results are printed in CSV format (mode, rows, peak heap in MB, time in ms).
+ * For meaningful results, every mode should be run with the same max heap size (-Xmx).
+ */
+public class ExcelExportHeapBenchmark {
+
+	private static final int[] DEFAULT_ROWS = new int[] {10000, 50000, 100000, 200000};
+
+	public static void main(String[] args) throws IOException {
+		int[] rowCounts = DEFAULT_ROWS;
+		if (args.length > 0) {
+			rowCounts = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				rowCounts[i] = Integer.parseInt(args[i]);
+			}
+		}
+		System.out.println("mode,rows,peak_heap_mb,time_ms");
+		for (boolean streaming : new boolean[] {true, false}) {
+			for (int rows : rowCounts) {
+				try {
+					run(streaming, rows);
+				} catch (OutOfMemoryError e) {
+					System.out.println(String.format("%s,%d,OOM,", mode(streaming), rows));
+				}
+			}
+		}
+	}
+
+	private static void run(boolean streaming, int rows) throws IOException {
+		resetPeakHeapUsage();
+		long start = System.currentTimeMillis();
+		ExcelFlatValuesWriter writer = new ExcelFlatValuesWriter(new NullOutputStream(), streaming);
+		try {
+			writer.writeHeaders(new String[] {"id", "name", "plot", "dbh", "height", "date"});
+			writer.setFields(Arrays.asList(
+					new Field("id", Type.INTEGER, 0), 
+					new Field("name", Type.STRING, 1), 
+					new Field("plot", Type.INTEGER, 2), 
+					new Field("dbh", Type.DECIMAL, 3), 
+					new Field("height", Type.DECIMAL, 4), 
+					new Field("date", Type.STRING, 5)));
+			for (int i = 0; i < rows; i++) {
+				writer.writeNext(new Object[] {i, "tree " + i, i % 100, 10.5 + i % 50, 2.5 + i % 30, "2020-01-" + (10 + i % 20)});
+			}
+		} finally {
+			writer.close();
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		System.out.println(String.format("%s,%d,%.1f,%d", mode(streaming), rows, getPeakHeapUsage() / (1024d * 1024d), elapsed));
+	}
+
+	private static String mode(boolean streaming) {
+		return streaming ? "streaming" : "in_memory";
+	}
+
+	private static void resetPeakHeapUsage() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long getPeakHeapUsage() {
+		long result = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				result += pool.getPeakUsage().getUsed();
+			}
+		}
+		return result;
+	}
+
+	private static class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
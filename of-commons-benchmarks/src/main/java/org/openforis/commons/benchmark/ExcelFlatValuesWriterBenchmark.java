@@ -0,0 +1,66 @@
+package org.openforis.commons.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.io.excel.ExcelFlatValuesWriter;
+import org.openforis.commons.io.flat.Field;
+import org.openforis.commons.io.flat.Field.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time needed by {@link ExcelFlatValuesWriter} to write a whole workbook, keeping it in memory or in streaming mode.
+ * See {@link ExcelExportHeapBenchmark} for the memory usage.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExcelFlatValuesWriterBenchmark {
+
+	@Param({"1000", "10000"})
+	public int rows;
+
+	@Param({"false", "true"})
+	public boolean streaming;
+
+	private Field[] fields;
+
+	@Setup
+	public void setup() {
+		fields = new Field[] {
+				new Field("id", Type.INTEGER, 0),
+				new Field("name", Type.STRING, 1),
+				new Field("dbh", Type.DECIMAL, 2),
+				new Field("date", Type.STRING, 3)
+		};
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ExcelFlatValuesWriter writer = new ExcelFlatValuesWriter(out, streaming);
+		writer.writeHeaders(new String[] {"id", "name", "dbh", "date"});
+		writer.setFields(Arrays.asList(fields));
+		for (int i = 0; i < rows; i++) {
+			writer.writeNext(new Object[] {i, "tree " + i, 10.5 + i % 50, "2020-01-" + (10 + i % 20)});
+		}
+		writer.close();
+		return out.size();
+	}
+}
@@ -0,0 +1,37 @@
+package org.openforis.commons.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.lang.Numbers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of values to integers with {@link Numbers#toIntegerObject(Object)}:
+ * integer strings, decimal strings (slow path through the double conversion) and invalid values.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumbersBenchmark {
+
+	@Param({"12345", "12345.0", "12345.5", "abc", " "})
+	public String value;
+
+	@Benchmark
+	public Integer toIntegerObject() {
+		return Numbers.toIntegerObject(value);
+	}
+}
@@ -0,0 +1,106 @@
+package org.openforis.commons.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openforis.commons.io.csv.CsvLine;
+import org.openforis.commons.io.csv.CsvReader;
+import org.openforis.commons.io.csv.CsvReader.Format;
+import org.openforis.commons.io.csv.CsvReader.LineHandler;
+import org.openforis.commons.io.csv.CsvWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time needed by {@link CsvReader} to read a large CSV file with a different number of parsing threads,
+ * reading the lines in order or passing them to a {@link LineHandler} concurrently.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ParallelCsvReaderBenchmark {
+
+	@Param({"500000"})
+	public int lines;
+
+	@Param({"1", "2", "4"})
+	public int parallelism;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		file = File.createTempFile("of-commons-benchmark", ".csv");
+		file.deleteOnExit();
+		CsvWriter writer = new CsvWriter(new FileOutputStream(file), "UTF-8", ',', '"');
+		try {
+			writer.writeHeaders(CsvBenchmark.HEADERS);
+			for (int i = 0; i < lines; i++) {
+				writer.writeNext(CsvBenchmark.createValues(i));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		file.delete();
+	}
+
+	private CsvReader createReader() throws IOException {
+		CsvReader reader = new CsvReader(file, "UTF-8", ',', '"', Format.CSV, parallelism);
+		reader.readHeaders();
+		return reader;
+	}
+
+	@Benchmark
+	public void readNextLine(Blackhole blackhole) throws IOException {
+		CsvReader reader = createReader();
+		try {
+			CsvLine line = reader.readNextLine();
+			while (line != null) {
+				blackhole.consume(line);
+				line = reader.readNextLine();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public long readAllLines() throws IOException {
+		final AtomicLong count = new AtomicLong();
+		CsvReader reader = createReader();
+		try {
+			reader.readAllLines(new LineHandler() {
+				@Override
+				public void handle(CsvLine line) {
+					count.addAndGet(line.getLine().length);
+				}
+			});
+		} finally {
+			reader.close();
+		}
+		return count.get();
+	}
+}
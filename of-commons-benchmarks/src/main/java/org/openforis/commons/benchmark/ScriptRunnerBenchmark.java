@@ -0,0 +1,79 @@
+package org.openforis.commons.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.jdbc.ScriptRunner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time needed by {@link ScriptRunner#runScript(java.io.Reader)} to run a script against an embedded (in-memory H2) database.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptRunnerBenchmark {
+
+	@Param({"100", "1000"})
+	public int statements;
+
+	private Connection connection;
+	private String script;
+
+	@Setup(Level.Trial)
+	public void setup() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:of_commons_benchmark;DB_CLOSE_DELAY=-1");
+		StringBuilder sb = new StringBuilder();
+		sb.append("-- benchmark script\n");
+		sb.append("CREATE TABLE IF NOT EXISTS plot (id INTEGER PRIMARY KEY, name VARCHAR(255), area DOUBLE);\n");
+		for (int i = 0; i < statements; i++) {
+			sb.append("INSERT INTO plot (id, name, area)\n");
+			sb.append("\tVALUES (").append(i).append(", 'plot ").append(i).append("', ").append(i * 1.5).append(");\n");
+		}
+		script = sb.toString();
+	}
+
+	@Setup(Level.Invocation)
+	public void clearTable() throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute("DROP TABLE IF EXISTS plot");
+		} finally {
+			statement.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Benchmark
+	public void runScript() throws IOException, SQLException {
+		ScriptRunner runner = new ScriptRunner(connection, false, true);
+		runner.setLogWriter(null);
+		runner.setErrorLogWriter(null);
+		runner.runScript(new StringReader(script));
+	}
+}
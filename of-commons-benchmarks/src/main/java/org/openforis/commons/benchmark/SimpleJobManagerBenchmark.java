@@ -0,0 +1,126 @@
+package org.openforis.commons.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.openforis.concurrency.Job;
+import org.openforis.concurrency.PooledJobExecutor;
+import org.openforis.concurrency.PooledJobExecutor.RejectionPolicy;
+import org.openforis.concurrency.SimpleJobManager;
+import org.openforis.concurrency.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of {@link SimpleJobManager}: jobs started (synchronously and asynchronously) 
+ * and job status requests served while other threads keep starting jobs.
+ * The polling threads ask for the status of the most recently started jobs, as clients usually do.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimpleJobManagerBenchmark {
+
+	private static final int POLLED_JOBS = 100;
+	private static final long JOB_TIME_TO_LIVE_MILLIS = 10000;
+
+	private PooledJobExecutor jobExecutor;
+	private SimpleJobManager jobManager;
+	private AtomicReferenceArray<String> recentJobIds;
+	private final AtomicInteger startedJobsCount = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		//block the producers when the executor is saturated, instead of rejecting the jobs
+		jobExecutor = new PooledJobExecutor(PooledJobExecutor.DEFAULT_CORE_POOL_SIZE, PooledJobExecutor.DEFAULT_MAX_POOL_SIZE, 
+				PooledJobExecutor.DEFAULT_QUEUE_CAPACITY, RejectionPolicy.BLOCK);
+		jobManager = new SimpleJobManager(jobExecutor);
+		//keep the registry small: millions of jobs are started during a trial
+		jobManager.setJobTimeToLiveMillis(JOB_TIME_TO_LIVE_MILLIS);
+		recentJobIds = new AtomicReferenceArray<String>(POLLED_JOBS);
+		for (int i = 0; i < POLLED_JOBS; i++) {
+			Job job = new EmptyJob();
+			jobManager.start(job, false);
+			recentJobIds.set(i, job.getId().toString());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		jobManager.destroy();
+		jobExecutor.shutdown();
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+
+		int count;
+
+	}
+
+	@Benchmark
+	public Job startSync() {
+		Job job = new EmptyJob();
+		jobManager.start(job, false);
+		return job;
+	}
+
+	@Benchmark
+	public Job startAsync() {
+		Job job = new EmptyJob();
+		jobManager.start(job);
+		return job;
+	}
+
+	@Benchmark
+	@Group("startAndPoll")
+	@GroupThreads(1)
+	public Job startWithLock() {
+		int count = startedJobsCount.incrementAndGet();
+		Job job = new EmptyJob();
+		jobManager.start(job, "lock-" + count, false);
+		recentJobIds.set(count % POLLED_JOBS, job.getId().toString());
+		return job;
+	}
+
+	@Benchmark
+	@Group("startAndPoll")
+	@GroupThreads(3)
+	public void pollStatus(ThreadState state, Blackhole blackhole) {
+		Job job = jobManager.getJob(recentJobIds.get(state.count ++ % POLLED_JOBS));
+		if (job != null) {
+			blackhole.consume(job.getStatus());
+			blackhole.consume(job.getProgressPercent());
+		}
+	}
+
+	private static class EmptyJob extends Job {
+
+		@Override
+		protected void buildTasks() throws Throwable {
+			addTask(new Task() {
+				@Override
+				protected void execute() throws Throwable {
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package org.openforis.commons.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.openforis.concurrency.Job;
+import org.openforis.concurrency.SimpleJobManager;
+import org.openforis.concurrency.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of job status polling ({@link SimpleJobManager#getJob(String)}) while other threads keep starting jobs
+ * competing for a small set of locks: starting a job whose lock is held by another job fails.
+ * Unlike {@link SimpleJobManagerBenchmark}, pollers ask for the status of random jobs.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimpleJobManagerContentionBenchmark {
+
+	private static final int POLLED_JOBS = 10000;
+	private static final int LOCKS = 50;
+	private static final long JOB_TIME_TO_LIVE_MILLIS = 10000;
+
+	private SimpleJobManager jobManager;
+	private AtomicReferenceArray<String> jobIds;
+	private final AtomicInteger startedJobsCount = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		jobManager = new SimpleJobManager();
+		jobManager.setJobTimeToLiveMillis(JOB_TIME_TO_LIVE_MILLIS);
+		jobIds = new AtomicReferenceArray<String>(POLLED_JOBS);
+		for (int i = 0; i < POLLED_JOBS; i++) {
+			Job job = new EmptyJob();
+			jobManager.start(job, false);
+			jobIds.set(i, job.getId().toString());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		jobManager.destroy();
+	}
+
+	@Benchmark
+	@Group("contention")
+	@GroupThreads(4)
+	public boolean startWithContendedLock() {
+		int count = startedJobsCount.incrementAndGet();
+		Job job = new EmptyJob();
+		try {
+			jobManager.start(job, "lock-" + (count % LOCKS), false);
+		} catch (RuntimeException e) {
+			//lock held by another job
+			return false;
+		}
+		jobIds.set(count % POLLED_JOBS, job.getId().toString());
+		return true;
+	}
+
+	@Benchmark
+	@Group("contention")
+	@GroupThreads(8)
+	public void pollRandomStatus(Blackhole blackhole) {
+		Job job = jobManager.getJob(jobIds.get(ThreadLocalRandom.current().nextInt(POLLED_JOBS)));
+		if (job != null) {
+			blackhole.consume(job.getStatus());
+			blackhole.consume(job.getProgressPercent());
+		}
+	}
+
+	private static class EmptyJob extends Job {
+
+		@Override
+		protected void buildTasks() throws Throwable {
+			addTask(new Task() {
+				@Override
+				protected void execute() throws Throwable {
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package org.openforis.commons.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.collection.Tree;
+import org.openforis.commons.collection.Tree.Node;
+import org.openforis.commons.collection.Tree.NodeVisitor;
+import org.openforis.commons.collection.Tree.TraversalType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Traversal of a {@link Tree} with {@code depth} levels and {@code fanOut} children per node.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark {
+
+	@Param({"4", "6"})
+	public int depth;
+
+	@Param({"5"})
+	public int fanOut;
+
+	@Param({"BFS", "DFS"})
+	public TraversalType traversalType;
+
+	private Tree<Integer> tree;
+
+	@Setup
+	public void setup() {
+		tree = new Tree<Integer>(0);
+		addChildren(tree.getRoot(), 1, new int[] {1});
+	}
+
+	private void addChildren(Node<Integer> parent, int level, int[] nextItem) {
+		if (level > depth) {
+			return;
+		}
+		for (int i = 0; i < fanOut; i++) {
+			Node<Integer> child = tree.createNode(nextItem[0] ++);
+			parent.addChild(child);
+			addChildren(child, level + 1, nextItem);
+		}
+	}
+
+	@Benchmark
+	public void traverse(final Blackhole blackhole) {
+		tree.traverse(new NodeVisitor<Integer>() {
+			@Override
+			public void visit(Node<Integer> node) {
+				blackhole.consume(node);
+			}
+		}, traversalType);
+	}
+
+	@Benchmark
+	public int getItems() {
+		return tree.getItems().size();
+	}
+
+	@Benchmark
+	public Node<Integer> findNodeByItem() {
+		return tree.findNodeByItem(fanOut * depth);
+	}
+}
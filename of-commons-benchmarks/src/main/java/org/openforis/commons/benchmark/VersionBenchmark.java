@@ -0,0 +1,57 @@
+package org.openforis.commons.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.versioning.Version;
+import org.openforis.commons.versioning.Version.Significance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and comparison of {@link Version} numbers.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionBenchmark {
+
+	@Param({"3.26", "3.26.12", "4.0.1-b2-SNAPSHOT"})
+	public String value;
+
+	private Version version;
+	private Version other;
+
+	@Setup
+	public void setup() {
+		version = new Version(value);
+		other = new Version("3.26.5-a1");
+	}
+
+	@Benchmark
+	public Version parse() {
+		return new Version(value);
+	}
+
+	@Benchmark
+	public int compare() {
+		return version.compareTo(other);
+	}
+
+	@Benchmark
+	public int compareMinor() {
+		return version.compareTo(other, Significance.MINOR);
+	}
+}
@@ -0,0 +1,99 @@
+package org.openforis.commons.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.io.csv.CsvColumn;
+import org.openforis.commons.io.csv.CsvLine;
+import org.openforis.commons.io.csv.CsvReader;
+import org.openforis.commons.io.csv.CsvWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time needed to read a few columns of a CSV file with many columns,
+ * with lazy lines (values created only when accessed) or not.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class WideCsvBenchmark {
+
+	static final int LINES = 20000;
+	static final int COLUMNS = 200;
+	static final int COLUMNS_READ = 20;
+
+	@Param({"false", "true"})
+	public boolean lazyLines;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		file = File.createTempFile("of-commons-benchmark", ".csv");
+		file.deleteOnExit();
+		CsvWriter writer = new CsvWriter(new FileOutputStream(file));
+		try {
+			String[] headers = new String[COLUMNS];
+			for (int i = 0; i < COLUMNS; i++) {
+				headers[i] = "column_" + i;
+			}
+			writer.writeHeaders(headers);
+			Object[] values = new Object[COLUMNS];
+			for (int line = 0; line < LINES; line++) {
+				for (int i = 0; i < COLUMNS; i++) {
+					values[i] = i % 2 == 0 ? (Object) (line * 0.5 + i) : "value " + i;
+				}
+				writer.writeNext(values);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Benchmark
+	public double readSomeColumns() throws IOException {
+		CsvReader reader = new CsvReader(file);
+		try {
+			reader.readHeaders();
+			reader.setLazyLines(lazyLines);
+			CsvColumn[] columns = new CsvColumn[COLUMNS_READ];
+			for (int i = 0; i < COLUMNS_READ; i++) {
+				columns[i] = reader.getColumn("column_" + (i * COLUMNS / COLUMNS_READ));
+			}
+			double sum = 0;
+			CsvLine line = reader.readNextLine();
+			while (line != null) {
+				for (CsvColumn column : columns) {
+					sum += column.getDouble(line, 0);
+				}
+				line = reader.readNextLine();
+			}
+			return sum;
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openforis.commons.io.OpenForisIOUtils;
+import org.openforis.commons.io.csv.CsvReader.Format;
+
+/**
+ * The streaming reader returns the same values as {@link ExcelReader}
+ */
+public class XlsxStreamingReaderTest {
+
+	private static final Date DATE = new GregorianCalendar(2020, 0, 5, 10, 30).getTime();
+	private static final Date OTHER_DATE = new GregorianCalendar(1999, 11, 31).getTime();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSameValuesAsExcelReader() throws Exception {
+		XSSFWorkbook workbook = new XSSFWorkbook();
+		Sheet sheet = workbook.createSheet();
+		CellStyle dateStyle = createDateStyle(workbook);
+		setValues(sheet.createRow(0), "text", "integer", "decimal", "date", "boolean", "product", "concat", "check", "error", "uncached");
+
+		Row row = sheet.createRow(1);
+		setValues(row, "a", 3, 2.5, DATE, true);
+		row.getCell(3).setCellStyle(dateStyle);
+		row.createCell(5).setCellFormula("B2*2");
+		row.createCell(6).setCellFormula("A2&\"x\"");
+		row.createCell(7).setCellFormula("B2>1");
+		row.createCell(8).setCellFormula("1/0");
+		FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+		for (int i = 5; i <= 8; i++) {
+			evaluator.evaluateFormulaCell(row.getCell(i));
+		}
+		row.createCell(9).setCellFormula("B2*3");
+
+		// sparse row, with a cell beyond the headers
+		row = sheet.createRow(2);
+		row.createCell(0).setCellValue("b");
+		row.createCell(3).setCellValue(OTHER_DATE);
+		row.getCell(3).setCellStyle(dateStyle);
+		row.createCell(12).setCellValue("ignored");
+
+		setValues(sheet.createRow(3), " c ", -4, 1e10, 0.1, false);
+		// rows after a missing row are not read
+		setValues(sheet.createRow(5), "after missing row");
+
+		List<List<String>> expected = Arrays.asList(
+				Arrays.asList("text", "integer", "decimal", "date", "boolean", "product", "concat", "check", "error", "uncached"),
+				Arrays.asList("a", "3", "2.5", formatDate(DATE), "true", "6", "ax", "true", "#DIV/0!", ""),
+				Arrays.asList("b", "", "", formatDate(OTHER_DATE), "", "", "", "", "", ""),
+				Arrays.asList(" c ", "-4", "1.0E10", "0.1", "false", "", "", "", "", ""));
+		assertSameValues(expected, write(workbook));
+	}
+
+	/**
+	 * Streaming workbooks write strings inline instead of in the shared strings table
+	 */
+	@Test
+	public void testInlineStrings() throws Exception {
+		SXSSFWorkbook workbook = new SXSSFWorkbook(2);
+		try {
+			Sheet sheet = workbook.createSheet();
+			setValues(sheet.createRow(0), "id", "name");
+			for (int i = 1; i <= 10; i++) {
+				setValues(sheet.createRow(i), i, "name \u00e8 " + i);
+			}
+			List<List<String>> expected = new ArrayList<List<String>>();
+			expected.add(Arrays.asList("id", "name"));
+			for (int i = 1; i <= 10; i++) {
+				expected.add(Arrays.asList(String.valueOf(i), "name \u00e8 " + i));
+			}
+			assertSameValues(expected, write(workbook));
+		} finally {
+			workbook.dispose();
+		}
+	}
+
+	@Test
+	public void testDate1904() throws Exception {
+		XSSFWorkbook workbook = new XSSFWorkbook();
+		workbook.getCTWorkbook().getWorkbookPr().setDate1904(true);
+		Sheet sheet = workbook.createSheet();
+		setValues(sheet.createRow(0), "date", "number");
+		Row row = sheet.createRow(1);
+		setValues(row, DATE, 2);
+		row.getCell(0).setCellStyle(createDateStyle(workbook));
+
+		List<List<String>> expected = Arrays.asList(Arrays.asList("date", "number"), Arrays.asList(formatDate(DATE), "2"));
+		assertSameValues(expected, write(workbook));
+	}
+
+	private void assertSameValues(List<List<String>> expected, File file) throws IOException {
+		assertEquals(expected, readAll(file, Format.XLS));
+		assertEquals(expected, readAll(file, Format.XLSX));
+	}
+
+	/**
+	 * Reads headers and lines: the XLS format is read by {@link ExcelReader}, that can read xlsx files too
+	 */
+	private static List<List<String>> readAll(File file, Format format) throws IOException {
+		CsvReader reader = new CsvReader(file, OpenForisIOUtils.UTF_8, ',', '"', format);
+		try {
+			reader.readHeaders();
+			List<List<String>> result = new ArrayList<List<String>>();
+			result.add(reader.getColumnNames());
+			CsvLine line;
+			while ((line = reader.readNextLine()) != null) {
+				result.add(Arrays.asList(line.getLine()));
+			}
+			return result;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private File write(Workbook workbook) throws IOException {
+		File file = folder.newFile("test.xlsx");
+		OutputStream os = new FileOutputStream(file);
+		try {
+			workbook.write(os);
+		} finally {
+			os.close();
+			workbook.close();
+		}
+		return file;
+	}
+
+	private static void setValues(Row row, Object... values) {
+		for (int i = 0; i < values.length; i++) {
+			Cell cell = row.createCell(i);
+			Object value = values[i];
+			if (value instanceof Number) {
+				cell.setCellValue(((Number) value).doubleValue());
+			} else if (value instanceof Boolean) {
+				cell.setCellValue((Boolean) value);
+			} else if (value instanceof Date) {
+				cell.setCellValue((Date) value);
+			} else {
+				cell.setCellValue((String) value);
+			}
+		}
+	}
+
+	private static CellStyle createDateStyle(Workbook workbook) {
+		CellStyle style = workbook.createCellStyle();
+		style.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
+		return style;
+	}
+
+	private static String formatDate(Date date) {
+		return new SimpleDateFormat(ExcelReader.DATE_TIME_FORMAT).format(date);
+	}
+}
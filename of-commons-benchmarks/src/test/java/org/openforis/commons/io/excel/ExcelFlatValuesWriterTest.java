@@ -0,0 +1,169 @@
+package org.openforis.commons.io.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.apache.poi.util.DefaultTempFileCreationStrategy;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFClientAnchor;
+import org.apache.poi.xssf.usermodel.XSSFDrawing;
+import org.apache.poi.xssf.usermodel.XSSFPicture;
+import org.apache.poi.xssf.usermodel.XSSFPictureData;
+import org.apache.poi.xssf.usermodel.XSSFShape;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openforis.commons.io.OpenForisIOUtils;
+import org.openforis.commons.io.csv.CsvLine;
+import org.openforis.commons.io.csv.CsvReader;
+import org.openforis.commons.io.csv.CsvReader.Format;
+import org.openforis.commons.io.flat.Field;
+import org.openforis.commons.io.flat.Field.Type;
+
+public class ExcelFlatValuesWriterTest {
+
+	private static final String[] HEADERS = new String[] {"id", "name", "dbh", "photo"};
+	private static final List<Field> FIELDS = Arrays.asList(
+			new Field("id", Type.INTEGER, 0),
+			new Field("name", Type.STRING, 1),
+			new Field("dbh", Type.DECIMAL, 2),
+			new Field("photo", Type.IMAGE_BYTE_ARRAY, 3));
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Rows flushed out of the window are written like the ones kept in memory
+	 */
+	@Test
+	public void testStreamingRoundTrip() throws IOException {
+		File file = folder.newFile("test.xlsx");
+		OutputStream os = new FileOutputStream(file);
+		try {
+			ExcelFlatValuesWriter writer = new ExcelFlatValuesWriter(os, 3);
+			assertTrue(writer.isStreaming());
+			writer.writeHeaders(HEADERS);
+			writer.setFields(FIELDS);
+			for (int i = 1; i <= 20; i++) {
+				writer.writeNext(new Object[] {i, i % 5 == 0 ? null : "tree \u00e8 " + i, 10.5 + i, null});
+			}
+			writer.close();
+		} finally {
+			os.close();
+		}
+
+		CsvReader reader = new CsvReader(file, OpenForisIOUtils.UTF_8, ',', '"', Format.XLSX);
+		try {
+			reader.readHeaders();
+			assertEquals(Arrays.asList(HEADERS), reader.getColumnNames());
+			int count = 0;
+			CsvLine line;
+			while ((line = reader.readNextLine()) != null) {
+				count ++;
+				String name = count % 5 == 0 ? "" : "tree \u00e8 " + count;
+				assertArrayEquals(new String[] {String.valueOf(count), name, String.valueOf(10.5 + count), ""}, line.getLine());
+			}
+			assertEquals(20, count);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Images are anchored to their cells also when the rows are flushed
+	 */
+	@Test
+	public void testStreamingImages() throws Exception {
+		byte[] image = createJpeg();
+		File file = folder.newFile("test.xlsx");
+		OutputStream os = new FileOutputStream(file);
+		try {
+			ExcelFlatValuesWriter writer = new ExcelFlatValuesWriter(os, 2);
+			writer.writeHeaders(HEADERS);
+			writer.setFields(FIELDS);
+			for (int i = 1; i <= 6; i++) {
+				writer.writeNext(new Object[] {i, "tree " + i, 10.5, i % 2 == 0 ? image : null});
+			}
+			writer.close();
+		} finally {
+			os.close();
+		}
+
+		XSSFWorkbook workbook = new XSSFWorkbook(file);
+		try {
+			List<XSSFPictureData> pictures = workbook.getAllPictures();
+			assertEquals(3, pictures.size());
+			assertArrayEquals(image, pictures.get(0).getData());
+
+			XSSFDrawing drawing = workbook.getSheetAt(0).getDrawingPatriarch();
+			List<Integer> pictureRows = new ArrayList<Integer>();
+			for (XSSFShape shape : drawing.getShapes()) {
+				XSSFClientAnchor anchor = ((XSSFPicture) shape).getClientAnchor();
+				assertEquals(3, anchor.getCol1());
+				pictureRows.add(anchor.getRow1());
+			}
+			assertEquals(Arrays.asList(2, 4, 6), pictureRows);
+		} finally {
+			workbook.close();
+		}
+	}
+
+	@Test
+	public void testTempFilesDeletedOnClose() throws IOException {
+		File tempDir = folder.newFolder("poi");
+		TempFile.setTempFileCreationStrategy(new DefaultTempFileCreationStrategy(tempDir));
+		try {
+			ExcelFlatValuesWriter writer = new ExcelFlatValuesWriter(new ByteArrayOutputStream(), 2);
+			writer.writeHeaders(HEADERS);
+			writer.setFields(FIELDS);
+			for (int i = 1; i <= 10; i++) {
+				writer.writeNext(new Object[] {i, "tree " + i, 10.5, null});
+			}
+			assertFalse(listFiles(tempDir).isEmpty());
+			writer.close();
+			assertEquals(new ArrayList<File>(), listFiles(tempDir));
+		} finally {
+			TempFile.setTempFileCreationStrategy(new DefaultTempFileCreationStrategy());
+		}
+	}
+
+	private static List<File> listFiles(File dir) {
+		List<File> result = new ArrayList<File>();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					result.addAll(listFiles(file));
+				} else {
+					result.add(file);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static byte[] createJpeg() throws IOException {
+		BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < image.getWidth(); x++) {
+			image.setRGB(x, x % image.getHeight(), 0xff0000);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", out);
+		return out.toByteArray();
+	}
+}
@@ -2,33 +2,94 @@ package org.openforis.concurrency;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Groups items into batches and executes them when the batch is full.
+ * 
+ * Items are collected into array lists that are cleared and reused for the following batches,
+ * so no object is allocated for every processed item once the lists have grown to the batch size.
+ * The executor can modify the list (e.g. sort it or remove items) but must not retain it after the execution.
+ * 
+ * Optionally, a batch can also be executed:
+ * <ul>
+ * <li>after a maximum latency from the moment its first item has been added (see {@link #setMaxLatencyMillis(long)}):
+ * in this case the batch could be executed by a flushing thread owned by this processor</li>
+ * <li>when the estimated weight of its items reaches a limit (see {@link #setMaxBatchWeight(long, Weigher)})</li>
+ * </ul>
+ * The batch size can also be tuned automatically according to the observed execution time
+ * (see {@link #setTargetExecutionMillis(long)}); in this case the batch size specified in the constructor
+ * is the maximum one.
  * 
  * @author S. Ricci
  * 
  */
 public abstract class BatchProcessor<T> implements Processor<T>, Closeable {
 
+	private static final AtomicInteger FLUSH_THREAD_COUNT = new AtomicInteger();
+	
 	private final int batchSize;
 	private final Executor<T> executor;
 	
-	private final LinkedList<T> queue = new LinkedList<T>();
+	//buffers ready to be filled: more than one can be used by subclasses executing batches asynchronously
+	private final BlockingQueue<List<T>> freeBuffers;
+	private List<T> queue;
+	
+	private volatile int currentBatchSize;
+	private long maxLatencyMillis = -1;
+	private long maxBatchWeight = -1;
+	private Weigher<T> weigher;
+	private long batchWeight;
+	private volatile long targetExecutionMillis = -1;
+	private long batchCount;
+	private ScheduledFuture<?> scheduledFlush;
+	private ScheduledThreadPoolExecutor flushScheduler;
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
 	
 	public BatchProcessor(int batchSize, Executor<T> executor) {
+		this(batchSize, executor, 1);
+	}
+	
+	/**
+	 * @param batchSize
+	 * @param executor
+	 * @param buffersCount number of buffers to allocate: when all of them are in use, the next batch cannot be filled 
+	 * until a buffer is recycled (see {@link #recycleBatch(List)})
+	 */
+	protected BatchProcessor(int batchSize, Executor<T> executor, int buffersCount) {
 		super();
 		this.batchSize = batchSize;
+		this.currentBatchSize = batchSize;
 		this.executor = executor;
+		this.freeBuffers = new ArrayBlockingQueue<List<T>>(buffersCount);
+		for (int i = 0; i < buffersCount; i++) {
+			//buffers grow with the items added: the batch size can be much larger than the actual number of items
+			this.freeBuffers.add(new ArrayList<T>());
+		}
+		this.queue = this.freeBuffers.poll();
 	}
 	
 	@Override
-	public void process(T item) {
+	public synchronized void process(T item) {
+		checkFailure();
 		queue.add(item);
-		if (queue.size() == batchSize) {
+		if (weigher != null) {
+			batchWeight += weigher.weigh(item);
+		}
+		if (queue.size() >= currentBatchSize || weigher != null && batchWeight >= maxBatchWeight) {
 			flush();
+		} else if (queue.size() == 1 && maxLatencyMillis > 0) {
+			scheduleFlush();
 		}
 	}
 	
@@ -37,22 +98,252 @@ public abstract class BatchProcessor<T> implements Processor<T>, Closeable {
 			process(item);
 		}
 	}
-
+	
+	/**
+	 * Executes the last partial batch and stops the flushing thread, if any;
+	 * a failure of a batch executed by the flushing thread is thrown here if not thrown by {@link #process(Object)} yet.
+	 */
 	@Override
 	public void close() throws IOException {
-		flush();
+		try {
+			flush();
+		} finally {
+			stopFlushScheduler();
+		}
+		checkFailure();
 	}
 	
-	private void flush() {
+	private synchronized void flush() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
 		if (! queue.isEmpty()) {
-			executor.execute(queue);
-			queue.clear();
+			batchCount ++;
+			batchWeight = 0;
+			List<T> batch = queue;
+			queue = null;
+			try {
+				executeBatch(batch);
+			} finally {
+				queue = takeFreeBuffer();
+			}
+		}
+	}
+	
+	private List<T> takeFreeBuffer() {
+		try {
+			return freeBuffers.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for a batch to be completed", e);
+		}
+	}
+	
+	private void scheduleFlush() {
+		final long batchNumber = batchCount;
+		scheduledFlush = getFlushScheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (BatchProcessor.this) {
+					//flush only if the batch has not been executed in the meantime
+					if (batchCount == batchNumber) {
+						try {
+							flush();
+						} catch (Throwable t) {
+							setFailure(t);
+						}
+					}
+				}
+			}
+		}, maxLatencyMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Returns the scheduler of the time triggered executions, creating it if needed:
+	 * every processor has its own thread, so a slow executor doesn't delay the batches of other processors;
+	 * the thread is stopped when idle and restarted when needed.
+	 */
+	private ScheduledThreadPoolExecutor getFlushScheduler() {
+		if (flushScheduler == null) {
+			flushScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "of-batch-flush-" + FLUSH_THREAD_COUNT.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			flushScheduler.setRemoveOnCancelPolicy(true);
+			flushScheduler.setKeepAliveTime(maxLatencyMillis + 1000, TimeUnit.MILLISECONDS);
+			flushScheduler.allowCoreThreadTimeOut(true);
+		}
+		return flushScheduler;
+	}
+	
+	private synchronized void stopFlushScheduler() {
+		if (flushScheduler != null) {
+			flushScheduler.shutdownNow();
+			flushScheduler = null;
+		}
+	}
+	
+	/**
+	 * Records the first failure of a batch execution not thrown to the producer:
+	 * it will be thrown by the next call to {@link #process(Object)} or {@link #close()}
+	 */
+	protected void setFailure(Throwable t) {
+		failure.compareAndSet(null, t);
+	}
+	
+	protected boolean isFailed() {
+		return failure.get() != null;
+	}
+	
+	protected void checkFailure() {
+		Throwable t = failure.get();
+		if (t != null) {
+			throw new RuntimeException("Error executing batch: " + t.getMessage(), t);
+		}
+	}
+	
+	/**
+	 * Executes the batch of items and recycles the list for a following batch.
+	 * Subclasses executing the batch asynchronously must call {@link #recycleBatch(List)} once done. 
+	 * 
+	 * @param items
+	 */
+	protected void executeBatch(List<T> items) {
+		try {
+			executeBatchInternal(items);
+		} finally {
+			recycleBatch(items);
+		}
+	}
+	
+	/**
+	 * Clears the list of items of an executed batch and makes it available for a following batch
+	 */
+	protected final void recycleBatch(List<T> items) {
+		items.clear();
+		freeBuffers.offer(items);
+	}
+	
+	/**
+	 * Number of buffers not in use
+	 */
+	protected int getFreeBuffersCount() {
+		return freeBuffers.size();
+	}
+	
+	/**
+	 * Executes the batch using the executor and tunes the batch size according to the execution time
+	 */
+	protected final void executeBatchInternal(List<T> items) {
+		int size = items.size();
+		long start = System.nanoTime();
+		executor.execute(items);
+		batchExecuted(size, System.nanoTime() - start);
+	}
+	
+	/**
+	 * Adjusts the batch size so that the execution time gets closer to the target one:
+	 * the size is reduced when the execution is too slow and increased when a full batch is executed quickly.
+	 */
+	private void batchExecuted(int size, long elapsedNanos) {
+		long target = targetExecutionMillis;
+		if (target <= 0) {
+			return;
+		}
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		int current = currentBatchSize;
+		if (elapsedMillis > target) {
+			currentBatchSize = Math.max(1, current * 3 / 4);
+		} else if (elapsedMillis < target / 2 && size >= current) {
+			currentBatchSize = Math.min(batchSize, current + current / 4 + 1);
+		}
+	}
+	
+	protected Executor<T> getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * Returns the maximum batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * Returns the current batch size: it can be lower than the maximum one if automatic tuning is enabled
+	 */
+	public int getCurrentBatchSize() {
+		return currentBatchSize;
+	}
+	
+	public long getMaxLatencyMillis() {
+		return maxLatencyMillis;
+	}
+	
+	/**
+	 * Sets the maximum time an item can wait before its batch is executed, even if not full;
+	 * a value less or equal to 0 disables the time triggered execution.
+	 * 
+	 * Batches not filled in time are executed by a thread owned by this processor, not by the producer:
+	 * context bound to the producer thread (e.g. a transaction or a ThreadLocal) is not available to the executor,
+	 * which must be thread safe, and {@link #close()} must be called to stop the thread.
+	 * A failure of such an execution is thrown by the next call to {@link #process(Object)} or {@link #close()}.
+	 * 
+	 * @param maxLatencyMillis
+	 */
+	public synchronized void setMaxLatencyMillis(long maxLatencyMillis) {
+		this.maxLatencyMillis = maxLatencyMillis;
+	}
+	
+	public long getMaxBatchWeight() {
+		return maxBatchWeight;
+	}
+	
+	/**
+	 * Executes the batch when the total weight of its items (e.g. the estimated size in bytes)
+	 * reaches the specified limit.
+	 * 
+	 * @param maxBatchWeight
+	 * @param weigher Estimates the weight of every item; if null, the weight is not considered
+	 */
+	public synchronized void setMaxBatchWeight(long maxBatchWeight, Weigher<T> weigher) {
+		this.maxBatchWeight = maxBatchWeight;
+		this.weigher = weigher;
+	}
+	
+	public long getTargetExecutionMillis() {
+		return targetExecutionMillis;
+	}
+	
+	/**
+	 * Enables the automatic tuning of the batch size: the batch size will be adjusted (up to the maximum one)
+	 * so that every batch is executed in around the specified time;
+	 * a value less or equal to 0 disables the automatic tuning.
+	 * 
+	 * @param targetExecutionMillis
+	 */
+	public void setTargetExecutionMillis(long targetExecutionMillis) {
+		this.targetExecutionMillis = targetExecutionMillis;
+		if (targetExecutionMillis <= 0) {
+			this.currentBatchSize = batchSize;
 		}
 	}
 	
 	public static interface Executor<T> {
-		
+
 		void execute(List<T> items);
+	
+	}
+	
+	public static interface Weigher<T> {
 
+		long weigh(T item);
+	
 	}
 }
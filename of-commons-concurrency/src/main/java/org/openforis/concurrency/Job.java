@@ -3,11 +3,26 @@ package org.openforis.concurrency;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Synchronously executes a series of Tasks in order.
  * 
+ * If the maximum number of concurrent tasks is greater than 1 (see {@link #setMaxConcurrentTasks(int)}),
+ * tasks are instead scheduled as a dependency graph: every task whose dependencies (declared with 
+ * {@link #addTask(Worker, Worker...)}) are completed is run on a bounded pool of threads.
+ * 
  * @author M. Togna
  * @author S. Ricci
  */
@@ -16,7 +31,11 @@ public abstract class Job extends Worker {
 	private transient JobManager jobManager;
 
 	private List<Worker> tasks = new ArrayList<Worker>();
+	private Map<Worker, Set<Worker>> dependenciesByTask = new HashMap<Worker, Set<Worker>>();
 	private int currentTaskIndex = -1;
+	private int maxConcurrentTasks = 1;
+	private transient boolean virtualThreads;
+	private transient Set<Worker> runningTasks = Collections.newSetFromMap(new ConcurrentHashMap<Worker, Boolean>());
 	
 	/**
 	 * Builds all the tasks. Each task will be initialized before running it.
@@ -61,15 +80,26 @@ public abstract class Job extends Worker {
 		if (currentTask != null) {
 			currentTask.abort();
 		}
+		//abort tasks running concurrently
+		abortRunningTasks();
 	}
 	
 	/**
-	 * Runs each contained task in order.
+	 * Runs each contained task in order or, if more than one concurrent task is allowed, 
+	 * runs the tasks concurrently honoring their dependencies.
 	 * 
 	 * @throws Exception
 	 */
 	@Override
 	protected void execute() throws Throwable {
+		if ( maxConcurrentTasks > 1 ) {
+			executeConcurrently();
+		} else {
+			executeSequentially();
+		}
+	}
+	
+	protected void executeSequentially() throws Throwable {
 		while ( hasTaskToRun() ) {
 			Worker task = nextTask();
 			
@@ -94,20 +124,129 @@ public abstract class Job extends Worker {
 		try {
 			task.run();
 
-			switch ( task.getStatus() ) {
-			case COMPLETED:
-				onTaskCompleted(task);
+			handleTaskEnd(task);
+		} finally {
+			onTaskEnd(task);
+		}
+	}
+
+	private void handleTaskEnd(Worker task) throws Throwable {
+		switch ( task.getStatus() ) {
+		case COMPLETED:
+			onTaskCompleted(task);
+			break;
+		case FAILED:
+			onTaskFailed(task);
+			break;
+		case ABORTED:
+			abort();
+			break;
+		default:
+		}
+	}
+
+	/**
+	 * Runs every task as soon as all its dependencies are completed, using at most 
+	 * {@link #getMaxConcurrentTasks()} threads.
+	 * Task callbacks ({@link #onTaskCompleted(Worker)}, {@link #onTaskFailed(Worker)}, {@link #onTaskEnd(Worker)})
+	 * are always invoked in the thread running the job.
+	 * 
+	 * @throws Throwable
+	 */
+	protected void executeConcurrently() throws Throwable {
+		ExecutorService executor = createTaskExecutor();
+		CompletionService<Worker> completionService = new ExecutorCompletionService<Worker>(executor);
+		Set<Worker> pendingTasks = new LinkedHashSet<Worker>(tasks);
+		Set<Worker> completedTasks = new LinkedHashSet<Worker>();
+		Set<Worker> failedTasks = new LinkedHashSet<Worker>();
+		try {
+			int submittedTasks = submitReadyTasks(completionService, pendingTasks, completedTasks, failedTasks);
+			while ( submittedTasks > 0 ) {
+				Worker task = completionService.take().get();
+				submittedTasks --;
+				runningTasks.remove(task);
+				try {
+					handleTaskEnd(task);
+				} finally {
+					onTaskEnd(task);
+				}
+				if ( task.isCompleted() ) {
+					completedTasks.add(task);
+				} else {
+					failedTasks.add(task);
+				}
+				submittedTasks += submitReadyTasks(completionService, pendingTasks, completedTasks, failedTasks);
+			}
+			if ( isRunning() && ! pendingTasks.isEmpty() ) {
+				if ( ! failedTasks.isEmpty() ) {
+					// onTaskFailed didn't stop the job: tasks depending on the failed ones cannot run
+					throw new IllegalStateException(String.format("Tasks %s not run: dependencies %s failed", pendingTasks, failedTasks));
+				}
+				throw new IllegalStateException("Unsatisfiable task dependencies for tasks: " + pendingTasks);
+			}
+		} finally {
+			abortRunningTasks();
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private int submitReadyTasks(CompletionService<Worker> completionService, Set<Worker> pendingTasks, 
+			Set<Worker> completedTasks, Set<Worker> failedTasks) throws Throwable {
+		int count = 0;
+		Iterator<Worker> it = pendingTasks.iterator();
+		while ( isRunning() && runningTasks.size() < maxConcurrentTasks && it.hasNext() ) {
+			final Worker task = it.next();
+			if ( ! completedTasks.containsAll(getTaskDependencies(task)) ) {
+				continue;
+			}
+			it.remove();
+			this.currentTaskIndex = tasks.indexOf(task);
+			
+			initializeTask(task);
+			
+			switch (task.getStatus()) {
+			case PENDING:
+				runningTasks.add(task);
+				completionService.submit(new Runnable() {
+					public void run() {
+						task.run();
+					}
+				}, task);
+				count ++;
 				break;
 			case FAILED:
+				failedTasks.add(task);
 				onTaskFailed(task);
 				break;
 			case ABORTED:
+				failedTasks.add(task);
 				abort();
 				break;
 			default:
 			}
-		} finally {
-			onTaskEnd(task);
+		}
+		return count;
+	}
+
+	private void abortRunningTasks() {
+		for (Worker task : runningTasks) {
+			if ( task.isRunning() ) {
+				task.abort();
+			}
+		}
+	}
+
+	/**
+	 * Creates the executor used to run tasks concurrently.
+	 * It will be shut down when the job execution ends.
+	 * If virtual threads are enabled and supported, every task is run in a new virtual thread.
+	 */
+	protected ExecutorService createTaskExecutor() {
+		if ( virtualThreads && VirtualThreads.isSupported() ) {
+			return VirtualThreads.newExecutor(getName() + "-task");
+		} else {
+			return Executors.newFixedThreadPool(Math.max(1, Math.min(maxConcurrentTasks, tasks.size())));
 		}
 	}
 
@@ -154,6 +293,43 @@ public abstract class Job extends Worker {
 		tasks.add(task);
 	}
 
+	/**
+	 * Creates and adds a task of the specified type that will be run only after 
+	 * the specified tasks are completed.
+	 * 
+	 * @param type
+	 * @param dependencies Tasks already added to this job
+	 * @return
+	 */
+	protected <T extends Worker> T addTask(Class<T> type, Worker... dependencies) {
+		T task = createTask(type);
+		addTask(task, dependencies);
+		return task;
+	}
+
+	/**
+	 * Adds a task that will be run only after the specified tasks are completed.
+	 * Dependencies must be added to this job before the dependent task, so the resulting graph has no cycles.
+	 * 
+	 * Throws IllegalStateException if invoked after run() is called
+	 * 
+	 * @param task
+	 * @param dependencies Tasks already added to this job
+	 */
+	protected <T extends Worker> void addTask(T task, Worker... dependencies) {
+		for (Worker dependency : dependencies) {
+			if ( ! tasks.contains(dependency) ) {
+				throw new IllegalArgumentException("Task dependency must be added to the job first: " + dependency.getName());
+			}
+		}
+		addTask(task);
+		if ( dependencies.length > 0 ) {
+			Set<Worker> taskDependencies = new LinkedHashSet<Worker>();
+			Collections.addAll(taskDependencies, dependencies);
+			dependenciesByTask.put(task, taskDependencies);
+		}
+	}
+
 	protected <C extends Collection<? extends Worker>> void addTasks(C tasks) {
 		for (Worker task : tasks) {
 			addTask(task);
@@ -204,6 +380,11 @@ public abstract class Job extends Worker {
 		return Collections.unmodifiableList(tasks);
 	}
 
+	public Set<Worker> getTaskDependencies(Worker task) {
+		Set<Worker> dependencies = dependenciesByTask.get(task);
+		return dependencies == null ? Collections.<Worker>emptySet() : Collections.unmodifiableSet(dependencies);
+	}
+
 	public int getCurrentTaskIndex() {
 		return this.currentTaskIndex;
 	}
@@ -212,6 +393,34 @@ public abstract class Job extends Worker {
 		return currentTaskIndex >= 0 ? tasks.get(currentTaskIndex) : null;
 	}
 	
+	public int getMaxConcurrentTasks() {
+		return maxConcurrentTasks;
+	}
+	
+	/**
+	 * Sets the maximum number of tasks that can be run at the same time.
+	 * When greater than 1, tasks without declared dependencies can run in parallel.
+	 * 
+	 * @param maxConcurrentTasks
+	 */
+	public void setMaxConcurrentTasks(int maxConcurrentTasks) {
+		this.maxConcurrentTasks = maxConcurrentTasks;
+	}
+	
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	/**
+	 * If true and the JVM supports virtual threads, tasks run concurrently 
+	 * (see {@link #setMaxConcurrentTasks(int)}) will be run in virtual threads. 
+	 * 
+	 * @param virtualThreads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	
 	public JobManager getJobManager() {
 		return jobManager;
 	}
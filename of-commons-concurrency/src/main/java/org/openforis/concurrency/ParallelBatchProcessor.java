@@ -0,0 +1,131 @@
+package org.openforis.concurrency;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch processor that hands full batches to a pool of consumer threads, so producers can keep
+ * preparing items while the previous batches are being executed.
+ *
+ * At most {@code maxInFlightBatches} batches can be queued or running at the same time: when the limit
+ * is reached, the producer waits for a batch to be completed (back-pressure).
+ * Every batch in flight keeps its own buffer, recycled once the batch has been executed.
+ * If ordering is required, batches are executed one at a time in the order they have been filled.
+ *
+ * The first failure of the executor stops the execution of the following batches and is thrown
+ * to the producer by the next call to {@link #process(Object)} or {@link #close()}.
+ * {@link #close()} executes the last partial batch and waits for all the batches to be completed:
+ * it must always be called (e.g. using try-with-resources) to stop the consumer threads, 
+ * that are anyway stopped after a failure, even if the producer stops without closing the processor.
+ * 
+ * When automatic batch size tuning is enabled, the time measured is the one spent by the consumers executing the batches.
+ *
+ */
+public class ParallelBatchProcessor<T> extends BatchProcessor<T> {
+
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+	private final ExecutorService consumers;
+	private final int maxInFlightBatches;
+	private boolean closed;
+
+	public ParallelBatchProcessor(int batchSize, Executor<T> executor, int consumers) {
+		this(batchSize, executor, consumers, consumers * 2, false);
+	}
+
+	/**
+	 * @param batchSize number of items in each batch
+	 * @param executor executes the batches, it must be thread safe if more than one consumer is used
+	 * @param consumers number of threads executing the batches (ignored if ordered is true)
+	 * @param maxInFlightBatches maximum number of batches queued or being executed
+	 * @param ordered if true, batches are executed one at a time in the order they have been filled
+	 */
+	public ParallelBatchProcessor(int batchSize, Executor<T> executor, int consumers, int maxInFlightBatches,
+			boolean ordered) {
+		//one buffer for each batch in flight plus the one being filled
+		super(batchSize, executor, maxInFlightBatches + 1);
+		if (consumers <= 0 || maxInFlightBatches <= 0) {
+			throw new IllegalArgumentException("consumers and maxInFlightBatches must be greater than 0");
+		}
+		this.maxInFlightBatches = maxInFlightBatches;
+		this.consumers = Executors.newFixedThreadPool(ordered ? 1 : consumers, new ConsumerThreadFactory());
+	}
+
+	@Override
+	protected void executeBatch(final List<T> batch) {
+		try {
+			consumers.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (! isFailed()) {
+							executeBatchInternal(batch);
+						}
+					} catch (Throwable t) {
+						setFailure(t);
+						//batches already queued will be skipped, no more batches will be accepted
+						consumers.shutdown();
+					} finally {
+						recycleBatch(batch);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			recycleBatch(batch);
+			//consumers stopped after a failure
+			checkFailure();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			super.close();
+		} finally {
+			consumers.shutdown();
+			try {
+				consumers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the batches to be completed");
+			}
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Number of batches queued or being executed
+	 */
+	public int getInFlightBatches() {
+		return Math.max(0, maxInFlightBatches - getFreeBuffersCount());
+	}
+
+	public int getMaxInFlightBatches() {
+		return maxInFlightBatches;
+	}
+
+	private static class ConsumerThreadFactory implements ThreadFactory {
+
+		private final int poolNumber = POOL_COUNT.incrementAndGet();
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "of-batch-processor-" + poolNumber + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
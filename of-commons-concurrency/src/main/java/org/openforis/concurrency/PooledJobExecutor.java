@@ -0,0 +1,264 @@
+package org.openforis.concurrency;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool used to run jobs in the background.
+ *
+ * {@link #newUnboundedExecutor()} creates the executor used by default by {@link SimpleJobManager}:
+ * like a cached thread pool, every job starts immediately, in a new thread if all the existing ones are busy,
+ * and jobs are never queued nor rejected.
+ *
+ * The other constructors create a bounded pool, to be passed explicitly to {@link SimpleJobManager#SimpleJobManager(Executor)}.
+ * Jobs are queued in a bounded queue when all the core threads are busy;
+ * additional threads (up to the maximum pool size) are created only when the queue is full,
+ * so at most core pool size jobs run at the same time until the queue fills up.
+ * When both the queue and the pool are full the configured {@link RejectionPolicy} is applied.
+ *
+ * By default core and maximum pool sizes are the same ({@link #DEFAULT_MAX_POOL_SIZE}, four times the available processors):
+ * up to {@link #DEFAULT_MAX_POOL_SIZE} jobs run concurrently, the following ones wait in the queue.
+ * Idle threads (core ones too) terminate after {@link #DEFAULT_KEEP_ALIVE_MILLIS} milliseconds, like in a cached thread pool.
+ *
+ * Note that a job waiting for another job started with the same bounded executor can wait forever when the pool is saturated;
+ * with the {@link RejectionPolicy#ABORT} policy starting a job can throw a {@link RejectedExecutionException}.
+ *
+ * The executor keeps live counters of queued, active, completed and rejected jobs
+ * and of the time spent by jobs waiting in the queue.
+ */
+public class PooledJobExecutor implements Executor {
+
+	public static final int DEFAULT_MAX_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors()) * 4;
+	//threads beyond the core pool size are started only when the queue is full: core threads must be enough to run jobs concurrently
+	public static final int DEFAULT_CORE_POOL_SIZE = DEFAULT_MAX_POOL_SIZE;
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+	public static final long DEFAULT_KEEP_ALIVE_MILLIS = 60 * 1000; //1 minute
+
+	private static final String DEFAULT_THREAD_NAME_PREFIX = "of-job";
+
+	public enum RejectionPolicy {
+		/**
+		 * Throws a {@link RejectedExecutionException}
+		 */
+		ABORT,
+		/**
+		 * Runs the job in the thread submitting it
+		 */
+		CALLER_RUNS,
+		/**
+		 * Blocks the thread submitting the job until there is space in the queue
+		 */
+		BLOCK;
+	}
+
+	private final ThreadPoolExecutor threadPool;
+	private final BlockingQueue<Runnable> queue;
+	private final RejectionPolicy rejectionPolicy;
+
+	private final AtomicLong completedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+	private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+	public PooledJobExecutor() {
+		this(DEFAULT_CORE_POOL_SIZE, DEFAULT_MAX_POOL_SIZE, DEFAULT_QUEUE_CAPACITY, RejectionPolicy.ABORT);
+	}
+
+	public PooledJobExecutor(int corePoolSize, int maxPoolSize, int queueCapacity, RejectionPolicy rejectionPolicy) {
+		this(corePoolSize, maxPoolSize, queueCapacity, rejectionPolicy, DEFAULT_THREAD_NAME_PREFIX);
+	}
+
+	public PooledJobExecutor(int corePoolSize, int maxPoolSize, int queueCapacity, RejectionPolicy rejectionPolicy,
+			String threadNamePrefix) {
+		this(corePoolSize, maxPoolSize, new ArrayBlockingQueue<Runnable>(queueCapacity), rejectionPolicy, threadNamePrefix);
+	}
+
+	private PooledJobExecutor(int corePoolSize, int maxPoolSize, BlockingQueue<Runnable> queue, RejectionPolicy rejectionPolicy,
+			String threadNamePrefix) {
+		this.queue = queue;
+		this.rejectionPolicy = rejectionPolicy;
+		this.threadPool = new ThreadPoolExecutor(corePoolSize, maxPoolSize, DEFAULT_KEEP_ALIVE_MILLIS,
+				TimeUnit.MILLISECONDS, queue, new NamedThreadFactory(threadNamePrefix), new RejectionHandler());
+		//idle threads terminate like in a cached thread pool
+		this.threadPool.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Creates an executor without limits on the number of jobs running concurrently, 
+	 * behaving like {@link java.util.concurrent.Executors#newCachedThreadPool()}
+	 */
+	public static PooledJobExecutor newUnboundedExecutor() {
+		return new PooledJobExecutor(0, Integer.MAX_VALUE, new SynchronousQueue<Runnable>(), RejectionPolicy.ABORT,
+				DEFAULT_THREAD_NAME_PREFIX);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		threadPool.execute(new TimedRunnable(command));
+	}
+
+	public void shutdown() {
+		threadPool.shutdown();
+	}
+
+	public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+		return threadPool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public int getCorePoolSize() {
+		return threadPool.getCorePoolSize();
+	}
+
+	public void setCorePoolSize(int corePoolSize) {
+		threadPool.setCorePoolSize(corePoolSize);
+	}
+
+	public int getMaxPoolSize() {
+		return threadPool.getMaximumPoolSize();
+	}
+
+	public void setMaxPoolSize(int maxPoolSize) {
+		threadPool.setMaximumPoolSize(maxPoolSize);
+	}
+
+	public int getQueueCapacity() {
+		return queue.size() + queue.remainingCapacity();
+	}
+
+	public RejectionPolicy getRejectionPolicy() {
+		return rejectionPolicy;
+	}
+
+	/**
+	 * Number of threads currently in the pool
+	 */
+	public int getPoolSize() {
+		return threadPool.getPoolSize();
+	}
+
+	/**
+	 * Number of jobs waiting in the queue
+	 */
+	public int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Approximate number of jobs currently running
+	 */
+	public int getActiveCount() {
+		return threadPool.getActiveCount();
+	}
+
+	/**
+	 * Number of jobs that finished running
+	 */
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/**
+	 * Number of times a job has been submitted when both the queue and the pool were full
+	 * (the job could be eventually run according to the rejection policy)
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Average time (in milliseconds) spent by the started jobs waiting in the queue
+	 */
+	public double getAverageQueueWaitMillis() {
+		long started = completedCount.get() + threadPool.getActiveCount();
+		return started == 0 ? 0 : (double) totalQueueWaitNanos.get() / started / 1000000;
+	}
+
+	/**
+	 * Maximum time (in milliseconds) spent by a job waiting in the queue
+	 */
+	public long getMaxQueueWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos.get());
+	}
+
+	private void recordQueueWait(long waitNanos) {
+		totalQueueWaitNanos.addAndGet(waitNanos);
+		long max = maxQueueWaitNanos.get();
+		while (waitNanos > max && ! maxQueueWaitNanos.compareAndSet(max, waitNanos)) {
+			max = maxQueueWaitNanos.get();
+		}
+	}
+
+	private class TimedRunnable implements Runnable {
+
+		private final Runnable delegate;
+		private final long submitTime;
+
+		TimedRunnable(Runnable delegate) {
+			this.delegate = delegate;
+			this.submitTime = System.nanoTime();
+		}
+
+		@Override
+		public void run() {
+			recordQueueWait(System.nanoTime() - submitTime);
+			try {
+				delegate.run();
+			} finally {
+				completedCount.incrementAndGet();
+			}
+		}
+	}
+
+	private class RejectionHandler implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			rejectedCount.incrementAndGet();
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("Job executor has been shut down");
+			}
+			switch (rejectionPolicy) {
+			case CALLER_RUNS:
+				r.run();
+				break;
+			case BLOCK:
+				try {
+					queue.put(r);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException("Interrupted while waiting for space in the job queue", e);
+				}
+				break;
+			default:
+				throw new RejectedExecutionException(String.format("Job queue full (capacity: %d, active jobs: %d)",
+						getQueueCapacity(), executor.getActiveCount()));
+			}
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(false);
+			return thread;
+		}
+	}
+}
@@ -1,15 +1,19 @@
 package org.openforis.concurrency;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.logging.Logger;
 
 /**
  * 
@@ -19,25 +23,66 @@ import java.util.concurrent.Executors;
 public class SimpleJobManager implements JobManager {
 	
 	protected static final long MAX_JOB_IDLE_MILLIS = 30 * 60 * 1000; //30 minutes
-	private static final long JOB_INFO_UPDATE_PERIOD_MILLIS = 60 * 1000; //1 minute
+	private static final long JOB_EVICTION_PERIOD_MILLIS = 1000; //1 second
 	
-	private Map<String, Job> jobByLockId;
-	private Map<String, JobInfo> jobInfoById;
+	//concurrent maps: job status polling never waits for jobs being started or pruned
+	private ConcurrentMap<String, Job> jobByLockId;
+	private ConcurrentMap<String, JobInfo> jobInfoById;
 	
-	private Executor jobExecutor;
+	private volatile Executor jobExecutor;
+	private boolean jobExecutorOwned;
+	private boolean virtualThreads;
 	
-	private Timer jobInfoUpdateTimer;
+	//ended jobs ordered by end time: the next ones to be evicted are always at the head
+	private final PriorityQueue<JobInfo> endedJobInfos = new PriorityQueue<JobInfo>();
+	//orders jobs ended in the same millisecond
+	private long endedJobsSequence;
+	private volatile long jobTimeToLiveMillis = MAX_JOB_IDLE_MILLIS;
+	private volatile int maxRetainedJobs = Integer.MAX_VALUE;
+	private final AtomicLong evictedJobsCount = new AtomicLong();
+	//runs job eviction and progress publishing
+	private ScheduledExecutorService scheduler;
+	private WorkerProgressPublisher progressPublisher;
 	
+	/**
+	 * Creates a job manager that runs every asynchronous job as soon as it is started, 
+	 * without limits on the number of jobs running concurrently (see {@link PooledJobExecutor#newUnboundedExecutor()}).
+	 * To limit them, pass a bounded {@link PooledJobExecutor} to {@link #SimpleJobManager(Executor)}.
+	 */
 	public SimpleJobManager() {
-		jobByLockId = new HashMap<String, Job>();
-		jobInfoById = new HashMap<String, JobInfo>();
-		jobExecutor = Executors.newCachedThreadPool();
-		initJobInfoUpdateTimer();
+		this(PooledJobExecutor.newUnboundedExecutor());
+		jobExecutorOwned = true;
+	}
+
+	/**
+	 * Creates a job manager that runs asynchronous jobs using the specified executor 
+	 * (e.g. a bounded {@link PooledJobExecutor}). 
+	 * If the executor rejects a job, {@link #start(Job)} throws a {@link RejectedExecutionException} 
+	 * and the job is aborted.
+	 */
+	public SimpleJobManager(Executor jobExecutor) {
+		jobByLockId = new ConcurrentHashMap<String, Job>();
+		jobInfoById = new ConcurrentHashMap<String, JobInfo>();
+		this.jobExecutor = jobExecutor;
+		initScheduler();
+		progressPublisher = new WorkerProgressPublisher(scheduler, WorkerProgressPublisher.DEFAULT_MAX_EVENTS_PER_SECOND);
 	}
 
 	public synchronized void destroy() {
-		jobInfoUpdateTimer.cancel();
+		progressPublisher.shutdown();
+		scheduler.shutdownNow();
 		destroyRunningJobs();
+		if (jobExecutorOwned) {
+			shutdownJobExecutor();
+		}
+	}
+
+	private void shutdownJobExecutor() {
+		if (jobExecutor instanceof PooledJobExecutor) {
+			((PooledJobExecutor) jobExecutor).shutdown();
+		} else if (jobExecutor instanceof ExecutorService) {
+			((ExecutorService) jobExecutor).shutdown();
+		}
 	}
 
 	private void destroyRunningJobs() {
@@ -47,14 +92,22 @@ public class SimpleJobManager implements JobManager {
 		}
 	}
 	
-	private void initJobInfoUpdateTimer() {
-		jobInfoUpdateTimer = new Timer();
-		jobInfoUpdateTimer.schedule(new TimerTask() {
+	private void initScheduler() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "of-job-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		//only the head of the ended jobs queue is checked when there is nothing to evict: it can run frequently
+		scheduler.scheduleWithFixedDelay(new Runnable() {
 			@Override
 			public void run() {
-				pruneIdleJobs();
+				evictExpiredJobs();
 			}
-		}, JOB_INFO_UPDATE_PERIOD_MILLIS, JOB_INFO_UPDATE_PERIOD_MILLIS);
+		}, JOB_EVICTION_PERIOD_MILLIS, JOB_EVICTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
 	}
 	
 	@Override
@@ -93,54 +146,91 @@ public class SimpleJobManager implements JobManager {
 		start(job, new JobConfig(async));
 	}
 
-	synchronized public <J extends Job> void start(final J job, final String lockId) {
+	public <J extends Job> void start(final J job, final String lockId) {
 		start(job, new JobConfig(true, lockId));
 	}
 	
-	synchronized public <J extends Job> void start(final J job, final String lockId, boolean async) {
+	public <J extends Job> void start(final J job, final String lockId, boolean async) {
 		start(job, new JobConfig(async, lockId));
 	}
 	
-	synchronized public <J extends Job> void start(final J job, final JobConfig config) {
+	public <J extends Job> void start(final J job, final JobConfig config) {
 		if (!config.isTransientJob()) {
 			jobInfoById.put(job.getId().toString(), new JobInfo(job));
 		}
 		
 		job.initialize();
 		
-		if ( job.isPending() ) {
-			final String lockId = config.getLockId();
-			if ( lockId != null ) {
+		if ( ! job.isPending() ) {
+			onJobEnd(job);
+			return;
+		}
+		if ( virtualThreads ) {
+			job.setVirtualThreads(true);
+		}
+		final String lockId = config.getLockId();
+		if ( lockId != null ) {
+			try {
 				lock(job, lockId);
+			} catch (RuntimeException e) {
+				discard(job);
+				throw e;
 			}
+		}
+		if ( config.isAsync() ) {
 			Runnable jobRunnable = new Runnable() {
 				@Override
 				public void run() {
+					//name the thread after the job type while running it
+					Thread thread = Thread.currentThread();
+					String threadName = thread.getName();
+					thread.setName(threadName + "-" + job.getName());
 					try {
-						job.run();
-					} catch (Exception e) {
-						//do nothing, exceptions thrown to rollback transaction
+						runJob(job, lockId);
 					} finally {
-						if ( lockId != null ) {
-							release(lockId);
-						}
+						thread.setName(threadName);
 					}
 				}
-
 			};
-			if ( config.isAsync() ) {
+			try {
 				jobExecutor.execute(jobRunnable);
-			} else {
-				jobRunnable.run();
+			} catch (RejectedExecutionException e) {
+				discard(job);
+				if ( lockId != null ) {
+					release(lockId, job);
+				}
+				throw e;
 			}
+		} else {
+			runJob(job, lockId);
 		}
 	}
 
+	/**
+	 * Aborts a job that could not be started and removes it from the managed jobs
+	 */
+	private void discard(Job job) {
+		job.abort();
+		String jobId = job.getId().toString();
+		JobInfo jobInfo = jobInfoById.get(jobId);
+		if (jobInfo != null && jobInfo.getJob() == job) {
+			jobInfoById.remove(jobId, jobInfo);
+		}
+	}
+
+	/**
+	 * Atomically assigns the lock to the specified job, unless another job holding the same lock is not ended yet
+	 */
 	protected <J extends Job> void lock(final J job, final String lockId) {
-		if ( jobByLockId.containsKey(lockId) && jobByLockId.get(lockId).isRunning() ) {
+		Job lockingJob = jobByLockId.compute(lockId, new BiFunction<String, Job, Job>() {
+			@Override
+			public Job apply(String id, Job currentJob) {
+				//the locking job could be still waiting in the executor queue
+				return currentJob == null || currentJob.isEnded() ? job : currentJob;
+			}
+		});
+		if ( lockingJob != job ) {
 			throw new RuntimeException("Another job is runnign for the same locking group: " + lockId);
-		} else {
-			jobByLockId.put(lockId, job);
 		}
 	}
 
@@ -149,21 +239,59 @@ public class SimpleJobManager implements JobManager {
 		return jobInfo == null ? null : jobInfo.getJob();
 	}
 
+	/**
+	 * Subscribes the listener to the status and progress events of the job with the specified id
+	 * 
+	 * @return the subscription, or null if the job cannot be found
+	 */
+	public WorkerProgressPublisher.Subscription subscribe(String jobId, WorkerProgressListener listener) {
+		Job job = getJob(jobId);
+		return job == null ? null : subscribe(job, listener);
+	}
+	
+	/**
+	 * Subscribes the listener to the status and progress events of the specified worker.
+	 * Events are coalesced and rate limited (see {@link WorkerProgressPublisher}), 
+	 * so listeners don't need to poll {@link Worker#getProgressPercent()}.
+	 */
+	public WorkerProgressPublisher.Subscription subscribe(Worker worker, WorkerProgressListener listener) {
+		return progressPublisher.subscribe(worker, listener);
+	}
+	
+	/**
+	 * Replaces the progress publisher, e.g. to change the maximum number of events per second
+	 */
+	public synchronized void setProgressPublisher(WorkerProgressPublisher progressPublisher) {
+		this.progressPublisher.shutdown();
+		this.progressPublisher = progressPublisher;
+	}
+	
 	public Job getLockingJob(String lockId) {
 		return jobByLockId.get(lockId);
 	}
 	
-	protected synchronized void release(String lockId) {
+	protected void release(String lockId) {
 		jobByLockId.remove(lockId);
 	}
 	
+	/**
+	 * Releases the lock only if still held by the specified job: once ended, 
+	 * the job could have already been replaced by another one with the same lock
+	 */
+	protected void release(String lockId, Job job) {
+		jobByLockId.remove(lockId, job);
+	}
+	
 	protected <J extends Job> void runJob(final J job, final String lockId) {
 		try {
 			job.run();
+		} catch (Exception e) {
+			//do nothing, exceptions thrown to rollback transaction
 		} finally {
 			if ( lockId != null ) {
-				release(lockId);
+				release(lockId, job);
 			}
+			onJobEnd(job);
 		}
 	}
 	
@@ -172,46 +300,139 @@ public class SimpleJobManager implements JobManager {
 	}
 	
 	protected void setJobExecutor(Executor jobExecutor) {
+		if (jobExecutorOwned) {
+			shutdownJobExecutor();
+			jobExecutorOwned = false;
+		}
 		this.jobExecutor = jobExecutor;
 	}
 	
-	private synchronized void pruneIdleJobs() {
-		Set<Entry<String,JobInfo>> entrySet = jobInfoById.entrySet();
-		Iterator<Entry<String, JobInfo>> iterator = entrySet.iterator();
-		while (iterator.hasNext()) {
-			Entry<String, JobInfo> entry = (Entry<String, JobInfo>) iterator.next();
-			JobInfo jobInfo = entry.getValue();
-			Job job = jobInfo.getJob();
-			if (! job.isRunning() && ! job.isPending()) {
-				jobInfo.incrementIdleMillis(JOB_INFO_UPDATE_PERIOD_MILLIS);
-				if (jobInfo.getIdleMillis() > MAX_JOB_IDLE_MILLIS) {
-					iterator.remove();
-				}
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	/**
+	 * Runs every job and every task run concurrently by a job in a new virtual thread, 
+	 * if supported by the JVM (Java 21+); otherwise the current job executor is kept. 
+	 * Suitable when jobs mostly block on I/O (e.g. JDBC or file access).
+	 * 
+	 * @param virtualThreads
+	 */
+	public synchronized void setVirtualThreads(boolean virtualThreads) {
+		if ( virtualThreads == this.virtualThreads ) {
+			return;
+		}
+		if ( virtualThreads && ! VirtualThreads.isSupported() ) {
+			Logger.getLogger(getClass().getName()).warning("Virtual threads not supported by this JVM: using the default job executor");
+			return;
+		}
+		setJobExecutor(virtualThreads ? VirtualThreads.newExecutor("of-job") : PooledJobExecutor.newUnboundedExecutor());
+		jobExecutorOwned = true;
+		this.virtualThreads = virtualThreads;
+	}
+	
+	/**
+	 * Adds the ended job to the ones that will be evicted once their time to live expires
+	 */
+	private void onJobEnd(Job job) {
+		JobInfo jobInfo = jobInfoById.get(job.getId().toString());
+		if (jobInfo == null || jobInfo.getJob() != job) {
+			//transient job
+			return;
+		}
+		jobInfo.setEndTime(job.getEndTime() > 0 ? job.getEndTime() : System.currentTimeMillis());
+		synchronized (endedJobInfos) {
+			jobInfo.setEndSequence(endedJobsSequence++);
+			endedJobInfos.add(jobInfo);
+			while (endedJobInfos.size() > maxRetainedJobs) {
+				evict(endedJobInfos.poll());
 			}
 		}
 	}
 	
-	private class JobInfo {
+	/**
+	 * Evicts the ended jobs whose time to live is expired.
+	 * Jobs are evicted in order of end time, so only the expired ones are visited.
+	 */
+	protected void evictExpiredJobs() {
+		long expiryEndTime = System.currentTimeMillis() - jobTimeToLiveMillis;
+		synchronized (endedJobInfos) {
+			JobInfo jobInfo = endedJobInfos.peek();
+			while (jobInfo != null && (jobInfo.getEndTime() <= expiryEndTime || endedJobInfos.size() > maxRetainedJobs)) {
+				evict(endedJobInfos.poll());
+				jobInfo = endedJobInfos.peek();
+			}
+		}
+	}
+	
+	private void evict(JobInfo jobInfo) {
+		if (jobInfoById.remove(jobInfo.getJob().getId().toString(), jobInfo)) {
+			evictedJobsCount.incrementAndGet();
+		}
+	}
+	
+	public long getJobTimeToLiveMillis() {
+		return jobTimeToLiveMillis;
+	}
+	
+	/**
+	 * Sets for how long an ended job can be retrieved using {@link #getJob(String)}
+	 */
+	public void setJobTimeToLiveMillis(long jobTimeToLiveMillis) {
+		this.jobTimeToLiveMillis = jobTimeToLiveMillis;
+	}
+	
+	public int getMaxRetainedJobs() {
+		return maxRetainedJobs;
+	}
+	
+	/**
+	 * Sets the maximum number of ended jobs that will be retained; 
+	 * when exceeded, the jobs ended first will be evicted even if their time to live is not expired yet
+	 */
+	public void setMaxRetainedJobs(int maxRetainedJobs) {
+		this.maxRetainedJobs = maxRetainedJobs;
+	}
+	
+	/**
+	 * Returns the number of ended jobs evicted so far
+	 */
+	public long getEvictedJobsCount() {
+		return evictedJobsCount.get();
+	}
+	
+	private static class JobInfo implements Comparable<JobInfo> {
 		
 		private Job job;
-		private long idleMillis;
+		private long endTime;
+		private long endSequence;
 		
 		public JobInfo(Job job) {
 			super();
 			this.job = job;
-			this.idleMillis = 0;
+			this.endTime = -1;
 		}
 
 		public Job getJob() {
 			return job;
 		}
 		
-		public long getIdleMillis() {
-			return idleMillis;
+		public long getEndTime() {
+			return endTime;
+		}
+		
+		public void setEndTime(long endTime) {
+			this.endTime = endTime;
+		}
+		
+		public void setEndSequence(long endSequence) {
+			this.endSequence = endSequence;
 		}
 		
-		public void incrementIdleMillis(long amount) {
-			idleMillis += amount;
+		@Override
+		public int compareTo(JobInfo o) {
+			int result = Long.compare(endTime, o.endTime);
+			return result == 0 ? Long.compare(endSequence, o.endSequence) : result;
 		}
 		
 	}
@@ -0,0 +1,84 @@
+package org.openforis.concurrency;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Support for virtual threads (Java 21+).
+ *
+ * Virtual threads are detected at runtime using reflection, so the library can still be
+ * compiled and used with Java 8: when they are not available {@link #isSupported()} returns false.
+ */
+public abstract class VirtualThreads {
+
+	private static final Method OF_VIRTUAL_METHOD;
+	private static final Method BUILDER_NAME_METHOD;
+	private static final Method BUILDER_FACTORY_METHOD;
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR_METHOD;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		Method newThreadPerTaskExecutor = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			name = builderType.getMethod("name", String.class, long.class);
+			factory = builderType.getMethod("factory");
+			newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+					ThreadFactory.class);
+		} catch (Exception e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL_METHOD = ofVirtual;
+		BUILDER_NAME_METHOD = name;
+		BUILDER_FACTORY_METHOD = factory;
+		NEW_THREAD_PER_TASK_EXECUTOR_METHOD = newThreadPerTaskExecutor;
+	}
+
+	/**
+	 * Returns true if the running JVM supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL_METHOD != null;
+	}
+
+	/**
+	 * Creates a factory of virtual threads named with the specified prefix followed by a counter.
+	 *
+	 * @throws UnsupportedOperationException if virtual threads are not supported
+	 */
+	public static ThreadFactory newThreadFactory(String namePrefix) {
+		checkSupported();
+		try {
+			Object builder = OF_VIRTUAL_METHOD.invoke(null);
+			builder = BUILDER_NAME_METHOD.invoke(builder, namePrefix + "-", 1L);
+			return (ThreadFactory) BUILDER_FACTORY_METHOD.invoke(builder);
+		} catch (Exception e) {
+			throw new IllegalStateException("Error creating virtual thread factory", e);
+		}
+	}
+
+	/**
+	 * Creates an executor that runs each submitted command in a new virtual thread.
+	 *
+	 * @throws UnsupportedOperationException if virtual threads are not supported
+	 */
+	public static ExecutorService newExecutor(String threadNamePrefix) {
+		ThreadFactory threadFactory = newThreadFactory(threadNamePrefix);
+		try {
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR_METHOD.invoke(null, threadFactory);
+		} catch (Exception e) {
+			throw new IllegalStateException("Error creating virtual thread executor", e);
+		}
+	}
+
+	private static void checkSupported() {
+		if (! isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads not supported by this JVM (Java 21+ required)");
+		}
+	}
+}
@@ -1,10 +1,13 @@
 package org.openforis.concurrency;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,13 +23,19 @@ public abstract class Worker {
 	private UUID id = UUID.randomUUID();
 	private long startTime = -1;
 	private long endTime = -1;
-	private Status status = Status.PENDING;
+	private volatile Status status = Status.PENDING;
 	private String errorMessage;
 	private String [] errorMessageArgs;
 	private int weight = 1; //helps to better estimate Job progress percent
 	private transient Throwable lastException;
 	private transient Logger log;
-	private transient List<WorkerStatusChangeListener> statusChangeListeners = new ArrayList<WorkerStatusChangeListener>();
+	//listeners can be added while the worker is running in another thread
+	private transient List<WorkerStatusChangeListener> statusChangeListeners = new CopyOnWriteArrayList<WorkerStatusChangeListener>();
+	//explicit lock instead of the object monitor: it doesn't pin the carrier thread when running in a virtual thread
+	private final transient ReentrantLock runLock = new ReentrantLock();
+	private final transient Condition runEnded = runLock.newCondition();
+	private transient boolean runStarted;
+	private transient boolean runFinished;
 	private Map<String, Object> result;
 
 	public enum Status {
@@ -96,9 +105,15 @@ public abstract class Worker {
 		return getClass().getSimpleName();
 	}
 	
-	protected synchronized void run() {
-		if (! isPending()) {
-			throw new IllegalStateException("Already run");
+	protected void run() {
+		runLock.lock();
+		try {
+			if (runStarted || ! isPending()) {
+				throw new IllegalStateException("Already run");
+			}
+			runStarted = true;
+		} finally {
+			runLock.unlock();
 		}
 		try {
 			beforeExecute();
@@ -110,9 +125,22 @@ public abstract class Worker {
 			handleException(t);
 		} finally {
 			this.endTime = System.currentTimeMillis();
-			notifyAll();
 			logDebug(String.format("Finished in %.1f sec", getDuration() / 1000f));
-			onEnd();
+			try {
+				onEnd();
+			} finally {
+				signalRunEnded();
+			}
+		}
+	}
+
+	private void signalRunEnded() {
+		runLock.lock();
+		try {
+			runFinished = true;
+			runEnded.signalAll();
+		} finally {
+			runLock.unlock();
 		}
 	}
 
@@ -305,13 +333,21 @@ public abstract class Worker {
 		this.lastException = lastException;
 	}
 	
-	public synchronized boolean waitFor(int timeoutMillis) {
-		long start = System.currentTimeMillis();
-		while (! isEnded() && System.currentTimeMillis() - start < timeoutMillis) {
-			try {
-				wait(timeoutMillis);
-			} catch (InterruptedException e) {
+	public boolean waitFor(int timeoutMillis) {
+		long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		runLock.lock();
+		try {
+			//an aborted worker could be still running: wait for its run to end
+			while ((! isEnded() || runStarted && ! runFinished) && remainingNanos > 0) {
+				try {
+					remainingNanos = runEnded.awaitNanos(remainingNanos);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
 			}
+		} finally {
+			runLock.unlock();
 		}
 		return isCompleted();
 	}
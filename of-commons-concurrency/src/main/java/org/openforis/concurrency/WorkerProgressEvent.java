@@ -0,0 +1,50 @@
+package org.openforis.concurrency;
+
+import org.openforis.concurrency.Worker.Status;
+
+/**
+ * Snapshot of the status and progress of a worker, published by a {@link WorkerProgressPublisher}
+ *
+ */
+public class WorkerProgressEvent {
+
+	private Worker source;
+	private Status status;
+	private int progressPercent;
+	private String errorMessage;
+	private long time;
+
+	public WorkerProgressEvent(Worker source, Status status, int progressPercent, String errorMessage) {
+		super();
+		this.source = source;
+		this.status = status;
+		this.progressPercent = progressPercent;
+		this.errorMessage = errorMessage;
+		this.time = System.currentTimeMillis();
+	}
+
+	public boolean isEnded() {
+		return status != Status.PENDING && status != Status.RUNNING;
+	}
+
+	public Worker getSource() {
+		return source;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public int getProgressPercent() {
+		return progressPercent;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+}
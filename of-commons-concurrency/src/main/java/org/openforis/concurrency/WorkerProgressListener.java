@@ -0,0 +1,13 @@
+package org.openforis.concurrency;
+
+/**
+ * Receives the progress events of a worker (see {@link WorkerProgressPublisher}).
+ * Events are delivered by a shared publisher thread (the last published one, if any, by the subscribing thread), 
+ * so implementations should return quickly (e.g. by putting the event into a queue).
+ *
+ */
+public interface WorkerProgressListener {
+
+	void progressChanged(WorkerProgressEvent event);
+
+}
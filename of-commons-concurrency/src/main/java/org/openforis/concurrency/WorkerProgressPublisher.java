@@ -0,0 +1,236 @@
+package org.openforis.concurrency;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openforis.concurrency.Worker.Status;
+
+/**
+ * Pushes the progress of workers to the subscribed listeners, instead of letting every client poll
+ * {@link Worker#getProgressPercent()}.
+ *
+ * The progress of every observed worker is computed once per period, whatever the number of its subscribers,
+ * and an event is published only when status or progress percent changed since the last one
+ * (at most {@code maxEventsPerSecond} events per second per worker).
+ * Status changes that end the worker are published immediately; after that the subscriptions are closed.
+ * Errors thrown by a listener are logged and don't prevent the other listeners from receiving the events.
+ *
+ */
+public class WorkerProgressPublisher {
+
+	public static final int DEFAULT_MAX_EVENTS_PER_SECOND = 2;
+
+	private static final Logger LOG = Logger.getLogger(WorkerProgressPublisher.class.getName());
+
+	private final ScheduledExecutorService scheduler;
+	private final boolean schedulerOwned;
+	private final long periodMillis;
+	private final ConcurrentMap<Worker, PublishedWorker> publishedWorkers = new ConcurrentHashMap<Worker, PublishedWorker>();
+
+	public WorkerProgressPublisher() {
+		this(DEFAULT_MAX_EVENTS_PER_SECOND);
+	}
+
+	public WorkerProgressPublisher(int maxEventsPerSecond) {
+		this(createScheduler(), true, maxEventsPerSecond);
+	}
+
+	/**
+	 * Creates a publisher that uses the specified scheduler to compute and publish the events.
+	 * The scheduler won't be shut down by {@link #shutdown()}.
+	 */
+	public WorkerProgressPublisher(ScheduledExecutorService scheduler, int maxEventsPerSecond) {
+		this(scheduler, false, maxEventsPerSecond);
+	}
+
+	private WorkerProgressPublisher(ScheduledExecutorService scheduler, boolean schedulerOwned, int maxEventsPerSecond) {
+		if (maxEventsPerSecond <= 0) {
+			throw new IllegalArgumentException("maxEventsPerSecond must be greater than 0");
+		}
+		this.scheduler = scheduler;
+		this.schedulerOwned = schedulerOwned;
+		this.periodMillis = Math.max(1, 1000 / maxEventsPerSecond);
+	}
+
+	private static ScheduledExecutorService createScheduler() {
+		return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "of-worker-progress");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Subscribes the listener to the progress events of the specified worker.
+	 * The listener receives the current status of the worker soon after subscribing: 
+	 * if an event has already been published, it's sent to the listener by the calling thread, before any following event.
+	 */
+	public Subscription subscribe(Worker worker, WorkerProgressListener listener) {
+		while (true) {
+			PublishedWorker publishedWorker = publishedWorkers.get(worker);
+			if (publishedWorker == null) {
+				PublishedWorker newPublishedWorker = new PublishedWorker(worker);
+				publishedWorker = publishedWorkers.putIfAbsent(worker, newPublishedWorker);
+				if (publishedWorker == null) {
+					publishedWorker = newPublishedWorker;
+					publishedWorker.start();
+				}
+			}
+			if (publishedWorker.addListener(listener)) {
+				return new Subscription(publishedWorker, listener);
+			}
+			//the worker ended in the meantime: try again with a new one that will publish the final event
+		}
+	}
+
+	/**
+	 * Closes all the subscriptions and, if created by this publisher, shuts down the scheduler
+	 */
+	public void shutdown() {
+		for (PublishedWorker publishedWorker : publishedWorkers.values()) {
+			publishedWorker.close();
+		}
+		if (schedulerOwned) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Number of workers currently observed
+	 */
+	public int getPublishedWorkersCount() {
+		return publishedWorkers.size();
+	}
+
+	private class PublishedWorker implements Runnable, WorkerStatusChangeListener {
+
+		private final Worker worker;
+		private final List<WorkerProgressListener> listeners = new CopyOnWriteArrayList<WorkerProgressListener>();
+		private ScheduledFuture<?> future;
+		private boolean closed;
+		private WorkerProgressEvent lastEvent;
+
+		PublishedWorker(Worker worker) {
+			this.worker = worker;
+		}
+
+		void start() {
+			worker.addStatusChangeListener(this);
+			future = scheduler.scheduleAtFixedRate(this, 0, periodMillis, TimeUnit.MILLISECONDS);
+		}
+
+		synchronized boolean addListener(WorkerProgressListener listener) {
+			if (closed) {
+				return false;
+			}
+			listeners.add(listener);
+			if (lastEvent != null) {
+				//send the last published state to the new listener, holding the lock so no newer event can be sent before it
+				notifyListener(listener, lastEvent);
+			}
+			return true;
+		}
+
+		void removeListener(WorkerProgressListener listener) {
+			listeners.remove(listener);
+		}
+
+		@Override
+		public void run() {
+			try {
+				publish();
+			} catch (RuntimeException e) {
+				//an exception would cancel the following executions of this task
+				LOG.log(Level.WARNING, "Error publishing the progress of " + worker.getName(), e);
+				if (worker.isEnded()) {
+					close();
+				}
+			}
+		}
+
+		@Override
+		public void statusChanged(WorkerStatusChangeEvent event) {
+			Status to = event.getTo();
+			if (to != Status.PENDING && to != Status.RUNNING) {
+				//publish immediately the final status
+				scheduler.execute(this);
+			}
+		}
+
+		private synchronized void publish() {
+			if (closed) {
+				return;
+			}
+			Status status = worker.getStatus();
+			WorkerProgressEvent event = lastEvent;
+			if (event == null || event.getStatus() != status || status == Status.RUNNING) {
+				int progressPercent = worker.getProgressPercent();
+				if (event == null || event.getStatus() != status || event.getProgressPercent() != progressPercent) {
+					event = new WorkerProgressEvent(worker, status, progressPercent, worker.getErrorMessage());
+					lastEvent = event;
+					for (WorkerProgressListener listener : listeners) {
+						notifyListener(listener, event);
+					}
+				}
+			}
+			if (event.isEnded()) {
+				close();
+			}
+		}
+
+		private void notifyListener(WorkerProgressListener listener, WorkerProgressEvent event) {
+			try {
+				listener.progressChanged(event);
+			} catch (RuntimeException e) {
+				LOG.log(Level.WARNING, "Error notifying the progress of " + worker.getName() + " to a listener", e);
+			}
+		}
+
+		synchronized void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (future != null) {
+				future.cancel(false);
+			}
+			worker.removeStatusChangeListener(this);
+			publishedWorkers.remove(worker, this);
+		}
+	}
+
+	public static class Subscription {
+
+		private final PublishedWorker publishedWorker;
+		private final WorkerProgressListener listener;
+
+		private Subscription(PublishedWorker publishedWorker, WorkerProgressListener listener) {
+			this.publishedWorker = publishedWorker;
+			this.listener = listener;
+		}
+
+		/**
+		 * Stops receiving events; the worker is no more observed when it has no more listeners
+		 */
+		public void cancel() {
+			publishedWorker.removeListener(listener);
+			synchronized (publishedWorker) {
+				if (publishedWorker.listeners.isEmpty()) {
+					publishedWorker.close();
+				}
+			}
+		}
+	}
+}
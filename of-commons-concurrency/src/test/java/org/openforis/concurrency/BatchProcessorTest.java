@@ -0,0 +1,225 @@
+package org.openforis.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.openforis.concurrency.BatchProcessor.Executor;
+
+public class BatchProcessorTest {
+
+	/**
+	 * The executor can modify the list of items
+	 */
+	@Test
+	public void testMutableBatch() throws IOException {
+		final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+		TestBatchProcessor<Integer> processor = new TestBatchProcessor<Integer>(4, new Executor<Integer>() {
+			@Override
+			public void execute(List<Integer> items) {
+				Collections.sort(items);
+				items.remove(Integer.valueOf(0));
+				for (Iterator<Integer> it = items.iterator(); it.hasNext();) {
+					if (it.next() % 2 == 0) {
+						it.remove();
+					}
+				}
+				items.set(0, items.get(0) * 10);
+				batches.add(new ArrayList<Integer>(items));
+			}
+		});
+		processor.process(Arrays.asList(7, 0, 3, 4, 5, 2, 1, 9, 8, 11));
+		processor.close();
+		assertEquals(Arrays.asList(Arrays.asList(30, 7), Arrays.asList(10, 5, 9), Arrays.asList(110)), batches);
+	}
+
+	/**
+	 * Buffers grow with the items added: a huge batch size can be used to execute the items only on close
+	 */
+	@Test
+	public void testExecutionOnlyOnClose() throws IOException {
+		final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+		TestBatchProcessor<Integer> processor = new TestBatchProcessor<Integer>(Integer.MAX_VALUE, new CollectingExecutor<Integer>(batches));
+		for (int i = 0; i < 1000; i++) {
+			processor.process(i);
+		}
+		assertEquals(0, batches.size());
+		processor.close();
+		assertEquals(1, batches.size());
+		assertEquals(1000, batches.get(0).size());
+	}
+
+	/**
+	 * Subclasses can execute and recycle a list other than the one filled by the processor
+	 */
+	@Test
+	public void testRecycleOtherList() throws IOException {
+		final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+		BatchProcessor<Integer> processor = new TestBatchProcessor<Integer>(2, new CollectingExecutor<Integer>(batches)) {
+			@Override
+			protected void executeBatch(List<Integer> items) {
+				List<Integer> copy = new LinkedList<Integer>(items);
+				try {
+					executeBatchInternal(copy);
+				} finally {
+					recycleBatch(copy);
+				}
+			}
+		};
+		processor.process(Arrays.asList(1, 2, 3, 4, 5));
+		processor.close();
+		assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4), Arrays.asList(5)), batches);
+	}
+
+	@Test
+	public void testLatencyTriggeredExecution() throws Exception {
+		final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+		final AtomicReference<Thread> executingThread = new AtomicReference<Thread>();
+		final CountDownLatch executed = new CountDownLatch(1);
+		TestBatchProcessor<Integer> processor = new TestBatchProcessor<Integer>(100, new CollectingExecutor<Integer>(batches) {
+			@Override
+			public void execute(List<Integer> items) {
+				super.execute(items);
+				executingThread.set(Thread.currentThread());
+				executed.countDown();
+			}
+		});
+		processor.setMaxLatencyMillis(50);
+		processor.process(Arrays.asList(1, 2, 3));
+		assertTrue(executed.await(5, TimeUnit.SECONDS));
+		// executed by the flushing thread of the processor
+		assertNotSame(Thread.currentThread(), executingThread.get());
+		processor.process(4);
+		processor.close();
+		assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(4)), batches);
+	}
+
+	/**
+	 * The failure of a batch executed by the flushing thread is thrown to the producer
+	 */
+	@Test
+	public void testLatencyTriggeredExecutionFailure() throws Exception {
+		final CountDownLatch executed = new CountDownLatch(1);
+		TestBatchProcessor<Integer> processor = new TestBatchProcessor<Integer>(100, new Executor<Integer>() {
+			@Override
+			public void execute(List<Integer> items) {
+				executed.countDown();
+				throw new IllegalStateException("database error");
+			}
+		});
+		processor.setMaxLatencyMillis(10);
+		processor.process(1);
+		assertTrue(executed.await(5, TimeUnit.SECONDS));
+		// wait for the failure to be recorded
+		long timeout = System.currentTimeMillis() + 5000;
+		while (! processor.isFailed() && System.currentTimeMillis() < timeout) {
+			Thread.sleep(5);
+		}
+		try {
+			processor.process(2);
+			fail("Failure not thrown by process");
+		} catch (RuntimeException e) {
+			assertEquals("database error", e.getCause().getMessage());
+		}
+		try {
+			processor.close();
+			fail("Failure not thrown by close");
+		} catch (RuntimeException e) {
+			assertEquals("database error", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testWeightTriggeredExecution() throws IOException {
+		final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+		TestBatchProcessor<Integer> processor = new TestBatchProcessor<Integer>(100, new CollectingExecutor<Integer>(batches));
+		processor.setMaxBatchWeight(10, new BatchProcessor.Weigher<Integer>() {
+			@Override
+			public long weigh(Integer item) {
+				return item;
+			}
+		});
+		processor.process(Arrays.asList(3, 4, 5, 1, 2, 20, 6));
+		processor.close();
+		assertEquals(Arrays.asList(Arrays.asList(3, 4, 5), Arrays.asList(1, 2, 20), Arrays.asList(6)), batches);
+	}
+
+	@Test
+	public void testBatchSizeTuning() throws IOException {
+		final boolean[] slow = new boolean[] {true};
+		TestBatchProcessor<Integer> processor = new TestBatchProcessor<Integer>(16, new Executor<Integer>() {
+			@Override
+			public void execute(List<Integer> items) {
+				if (slow[0]) {
+					try {
+						Thread.sleep(60);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		});
+		processor.setTargetExecutionMillis(40);
+		for (int i = 0; i < 16 * 3; i++) {
+			processor.process(i);
+		}
+		// slow executions reduce the batch size
+		int reducedSize = processor.getCurrentBatchSize();
+		assertTrue("Batch size not reduced: " + reducedSize, reducedSize < 16);
+
+		// fast executions of full batches increase it up to the maximum
+		slow[0] = false;
+		for (int i = 0; i < 1000; i++) {
+			processor.process(i);
+		}
+		assertEquals(16, processor.getCurrentBatchSize());
+
+		// disabling the tuning restores the maximum batch size
+		slow[0] = true;
+		for (int i = 0; i < 16 * 3; i++) {
+			processor.process(i);
+		}
+		processor.setTargetExecutionMillis(0);
+		assertEquals(16, processor.getCurrentBatchSize());
+		processor.close();
+	}
+
+	static class TestBatchProcessor<T> extends BatchProcessor<T> {
+
+		TestBatchProcessor(int batchSize, Executor<T> executor) {
+			super(batchSize, executor);
+		}
+	}
+
+	/**
+	 * Keeps a copy of every executed batch
+	 */
+	static class CollectingExecutor<T> implements Executor<T> {
+
+		private final List<List<T>> batches;
+
+		CollectingExecutor(List<List<T>> batches) {
+			this.batches = batches;
+		}
+
+		@Override
+		public void execute(List<T> items) {
+			synchronized (batches) {
+				batches.add(new ArrayList<T>(items));
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.openforis.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class JobTest {
+
+	@Test
+	public void testSequentialExecution() {
+		final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		Job job = new Job() {
+			@Override
+			protected void buildTasks() throws Throwable {
+				addTask(new RecordingTask("a", executed));
+				addTask(new RecordingTask("b", executed));
+				addTask(new RecordingTask("c", executed));
+			}
+		};
+		new SimpleJobManager().start(job, false);
+		assertTrue(job.isCompleted());
+		assertEquals(100, job.getProgressPercent());
+		assertEquals(Arrays.asList("a", "b", "c"), executed);
+	}
+
+	@Test
+	public void testConcurrentExecutionHonorsDependencies() {
+		final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		// "a" and "b" can only complete if they run at the same time
+		final CountDownLatch latch = new CountDownLatch(2);
+		Job job = new Job() {
+			@Override
+			protected void buildTasks() throws Throwable {
+				Worker a = new LatchTask("a", executed, latch);
+				Worker b = new LatchTask("b", executed, latch);
+				addTask(a);
+				addTask(b);
+				addTask(new RecordingTask("c", executed), a, b);
+			}
+		};
+		job.setMaxConcurrentTasks(4);
+		new SimpleJobManager().start(job, false);
+		assertTrue(job.isCompleted());
+		assertEquals(3, executed.size());
+		assertEquals("c", executed.get(2));
+	}
+
+	@Test
+	public void testConcurrentExecutionFailure() {
+		final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		Job job = new Job() {
+			@Override
+			protected void buildTasks() throws Throwable {
+				Worker a = new RecordingTask("a", executed) {
+					@Override
+					protected void execute() throws Throwable {
+						throw new IllegalStateException("failure");
+					}
+				};
+				addTask(a);
+				addTask(new RecordingTask("b", executed), a);
+			}
+		};
+		job.setMaxConcurrentTasks(2);
+		new SimpleJobManager().start(job, false);
+		assertTrue(job.isFailed());
+		assertEquals("failure", job.getErrorMessage());
+		assertTrue(executed.isEmpty());
+	}
+
+	@Test
+	public void testConcurrentExecutionFailedDependencyReported() {
+		final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		Job job = new Job() {
+			@Override
+			protected void buildTasks() throws Throwable {
+				Worker a = new RecordingTask("a", executed) {
+					@Override
+					protected void execute() throws Throwable {
+						throw new IllegalStateException("failure");
+					}
+				};
+				addTask(a);
+				addTask(new RecordingTask("b", executed), a);
+				addTask(new RecordingTask("c", executed));
+			}
+
+			@Override
+			protected void onTaskFailed(Worker task) throws Throwable {
+				// go on with the other tasks
+			}
+		};
+		job.setMaxConcurrentTasks(2);
+		new SimpleJobManager().start(job, false);
+		assertTrue(job.isFailed());
+		assertTrue(job.getErrorMessage(), job.getErrorMessage().contains("failed"));
+		assertEquals(Arrays.asList("c"), executed);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDependencyNotAdded() {
+		Job job = new Job() {
+			@Override
+			protected void buildTasks() throws Throwable {
+			}
+		};
+		job.addTask(new RecordingTask("b", null), new RecordingTask("a", null));
+	}
+
+	private static class RecordingTask extends Task {
+
+		private final String name;
+		private final List<String> executed;
+
+		RecordingTask(String name, List<String> executed) {
+			this.name = name;
+			this.executed = executed;
+		}
+
+		@Override
+		protected void execute() throws Throwable {
+			executed.add(name);
+		}
+	}
+
+	private static class LatchTask extends RecordingTask {
+
+		private final CountDownLatch latch;
+
+		LatchTask(String name, List<String> executed, CountDownLatch latch) {
+			super(name, executed);
+			this.latch = latch;
+		}
+
+		@Override
+		protected void execute() throws Throwable {
+			latch.countDown();
+			if (!latch.await(5, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("Tasks not run concurrently");
+			}
+			super.execute();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package org.openforis.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.openforis.concurrency.BatchProcessor.Executor;
+import org.openforis.concurrency.BatchProcessorTest.CollectingExecutor;
+
+public class ParallelBatchProcessorTest {
+
+	@Test
+	public void testAllItemsExecuted() throws IOException {
+		final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+		ParallelBatchProcessor<Integer> processor = new ParallelBatchProcessor<Integer>(10, new CollectingExecutor<Integer>(batches), 4);
+		for (int i = 0; i < 1005; i++) {
+			processor.process(i);
+		}
+		processor.close();
+		// the last partial batch is executed on close
+		assertEquals(101, batches.size());
+		List<Integer> items = new ArrayList<Integer>();
+		int partialBatches = 0;
+		for (List<Integer> batch : batches) {
+			items.addAll(batch);
+			if (batch.size() < 10) {
+				partialBatches ++;
+			}
+		}
+		assertEquals(1, partialBatches);
+		Collections.sort(items);
+		for (int i = 0; i < 1005; i++) {
+			assertEquals(Integer.valueOf(i), items.get(i));
+		}
+		assertEquals(0, processor.getInFlightBatches());
+	}
+
+	@Test
+	public void testOrderedExecution() throws IOException {
+		final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+		ParallelBatchProcessor<Integer> processor = new ParallelBatchProcessor<Integer>(7, new CollectingExecutor<Integer>(batches), 4, 3, true);
+		for (int i = 0; i < 500; i++) {
+			processor.process(i);
+		}
+		processor.close();
+		int expected = 0;
+		for (List<Integer> batch : batches) {
+			for (Integer item : batch) {
+				assertEquals(Integer.valueOf(expected ++), item);
+			}
+		}
+		assertEquals(500, expected);
+	}
+
+	/**
+	 * The producer waits when the maximum number of batches in flight has been reached
+	 */
+	@Test
+	public void testBackPressure() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger executedItems = new AtomicInteger();
+		final ParallelBatchProcessor<Integer> processor = new ParallelBatchProcessor<Integer>(1, new Executor<Integer>() {
+			@Override
+			public void execute(List<Integer> items) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				executedItems.addAndGet(items.size());
+			}
+		}, 1, 2, false);
+		final AtomicInteger processedItems = new AtomicInteger();
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 5; i++) {
+					processor.process(i);
+					processedItems.incrementAndGet();
+				}
+			}
+		});
+		producer.start();
+		long timeout = System.currentTimeMillis() + 5000;
+		while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < timeout) {
+			Thread.sleep(5);
+		}
+		// blocked executing the third batch
+		assertEquals(Thread.State.WAITING, producer.getState());
+		assertEquals(2, processedItems.get());
+		assertEquals(2, processor.getInFlightBatches());
+		assertEquals(0, executedItems.get());
+
+		release.countDown();
+		producer.join(5000);
+		assertFalse(producer.isAlive());
+		processor.close();
+		assertEquals(5, executedItems.get());
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		final AtomicReference<Thread> consumerThread = new AtomicReference<Thread>();
+		final AtomicInteger executedBatches = new AtomicInteger();
+		ParallelBatchProcessor<Integer> processor = new ParallelBatchProcessor<Integer>(10, new Executor<Integer>() {
+			@Override
+			public void execute(List<Integer> items) {
+				consumerThread.set(Thread.currentThread());
+				if (executedBatches.incrementAndGet() == 2) {
+					throw new IllegalStateException("database error");
+				}
+			}
+		}, 1, 1, false);
+		try {
+			for (int i = 0; i < 1000; i++) {
+				processor.process(i);
+			}
+			fail("Failure not thrown by process");
+		} catch (RuntimeException e) {
+			assertEquals("database error", e.getCause().getMessage());
+		}
+		// no batches executed after the failure
+		assertEquals(2, executedBatches.get());
+
+		// the consumer threads are stopped even if the processor is not closed
+		consumerThread.get().join(5000);
+		assertFalse(consumerThread.get().isAlive());
+
+		try {
+			processor.close();
+			fail("Failure not thrown by close");
+		} catch (RuntimeException e) {
+			assertEquals("database error", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testFailureThrownOnClose() throws IOException, InterruptedException {
+		final CountDownLatch executed = new CountDownLatch(1);
+		ParallelBatchProcessor<Integer> processor = new ParallelBatchProcessor<Integer>(10, new Executor<Integer>() {
+			@Override
+			public void execute(List<Integer> items) {
+				executed.countDown();
+				throw new IllegalStateException("database error");
+			}
+		}, 2);
+		for (int i = 0; i < 5; i++) {
+			processor.process(i);
+		}
+		try {
+			processor.close();
+			fail("Failure not thrown by close");
+		} catch (RuntimeException e) {
+			assertEquals("database error", e.getCause().getMessage());
+		}
+		assertTrue(executed.await(0, TimeUnit.MILLISECONDS));
+	}
+}
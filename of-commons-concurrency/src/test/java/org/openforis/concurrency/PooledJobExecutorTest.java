@@ -0,0 +1,189 @@
+package org.openforis.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.openforis.concurrency.PooledJobExecutor.RejectionPolicy;
+
+public class PooledJobExecutorTest {
+
+	@Test
+	public void testAbortPolicy() throws InterruptedException {
+		PooledJobExecutor executor = new PooledJobExecutor(1, 1, 1, RejectionPolicy.ABORT);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			executor.execute(new BlockingRunnable(started, release));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			executor.execute(new BlockingRunnable(null, release));
+			assertEquals(1, executor.getActiveCount());
+			assertEquals(1, executor.getQueuedCount());
+			try {
+				executor.execute(new BlockingRunnable(null, release));
+				fail("Job not rejected");
+			} catch (RejectedExecutionException e) {
+				// expected
+			}
+			assertEquals(1, executor.getRejectedCount());
+		} finally {
+			release.countDown();
+			shutdown(executor);
+		}
+		assertEquals(2, executor.getCompletedCount());
+	}
+
+	@Test
+	public void testCallerRunsPolicy() throws InterruptedException {
+		PooledJobExecutor executor = new PooledJobExecutor(1, 1, 1, RejectionPolicy.CALLER_RUNS);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			executor.execute(new BlockingRunnable(started, release));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			executor.execute(new BlockingRunnable(null, release));
+			final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					threads.add(Thread.currentThread());
+				}
+			});
+			// run synchronously by the submitting thread
+			assertEquals(1, threads.size());
+			assertSame(Thread.currentThread(), threads.get(0));
+			assertEquals(1, executor.getRejectedCount());
+		} finally {
+			release.countDown();
+			shutdown(executor);
+		}
+		assertEquals(3, executor.getCompletedCount());
+	}
+
+	@Test
+	public void testBlockPolicy() throws InterruptedException {
+		final PooledJobExecutor executor = new PooledJobExecutor(1, 1, 1, RejectionPolicy.BLOCK);
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			executor.execute(new BlockingRunnable(started, release));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			executor.execute(new BlockingRunnable(null, release));
+			Thread submitter = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					executor.execute(new BlockingRunnable(null, release));
+				}
+			});
+			submitter.start();
+			long timeout = System.currentTimeMillis() + 5000;
+			while (submitter.getState() != Thread.State.WAITING && System.currentTimeMillis() < timeout) {
+				Thread.sleep(5);
+			}
+			// waiting for space in the queue
+			assertEquals(Thread.State.WAITING, submitter.getState());
+			assertEquals(1, executor.getRejectedCount());
+
+			// the queued jobs wait at least until the release
+			Thread.sleep(20);
+			release.countDown();
+			submitter.join(5000);
+			assertFalse(submitter.isAlive());
+		} finally {
+			release.countDown();
+			shutdown(executor);
+		}
+		assertEquals(3, executor.getCompletedCount());
+		assertTrue(executor.getMaxQueueWaitMillis() >= 20);
+	}
+
+	@Test
+	public void testThreadNames() throws InterruptedException {
+		PooledJobExecutor executor = new PooledJobExecutor(2, 2, 10, RejectionPolicy.ABORT, "test-job");
+		final List<String> threadNames = new CopyOnWriteArrayList<String>();
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			CountDownLatch started = new CountDownLatch(2);
+			for (int i = 0; i < 2; i++) {
+				final BlockingRunnable runnable = new BlockingRunnable(started, release);
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						threadNames.add(Thread.currentThread().getName());
+						runnable.run();
+					}
+				});
+			}
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			assertEquals(2, executor.getPoolSize());
+			assertEquals(2, executor.getActiveCount());
+		} finally {
+			release.countDown();
+			shutdown(executor);
+		}
+		assertEquals(2, threadNames.size());
+		assertTrue(threadNames.contains("test-job-1"));
+		assertTrue(threadNames.contains("test-job-2"));
+	}
+
+	@Test
+	public void testUnboundedExecutor() throws InterruptedException {
+		PooledJobExecutor executor = PooledJobExecutor.newUnboundedExecutor();
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			int jobs = PooledJobExecutor.DEFAULT_MAX_POOL_SIZE * 2;
+			CountDownLatch started = new CountDownLatch(jobs);
+			for (int i = 0; i < jobs; i++) {
+				executor.execute(new BlockingRunnable(started, release));
+			}
+			// all running at the same time, none queued
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			assertEquals(jobs, executor.getActiveCount());
+			assertEquals(0, executor.getQueuedCount());
+			assertEquals(0, executor.getRejectedCount());
+		} finally {
+			release.countDown();
+			shutdown(executor);
+		}
+	}
+
+	private static void shutdown(PooledJobExecutor executor) throws InterruptedException {
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5000));
+	}
+
+	/**
+	 * Signals its start and waits for the release latch
+	 */
+	private static class BlockingRunnable implements Runnable {
+
+		private final CountDownLatch started;
+		private final CountDownLatch release;
+
+		BlockingRunnable(CountDownLatch started, CountDownLatch release) {
+			this.started = started;
+			this.release = release;
+		}
+
+		@Override
+		public void run() {
+			if (started != null) {
+				started.countDown();
+			}
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
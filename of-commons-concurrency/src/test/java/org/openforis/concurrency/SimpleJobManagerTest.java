@@ -0,0 +1,229 @@
+package org.openforis.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SimpleJobManagerTest {
+
+	@Test
+	public void testConcurrentStartsWithSameLock() throws InterruptedException {
+		final SimpleJobManager jobManager = new SimpleJobManager();
+		final CountDownLatch jobsEnd = new CountDownLatch(1);
+		try {
+			int starters = 8;
+			final CountDownLatch startSignal = new CountDownLatch(1);
+			final AtomicInteger startedJobs = new AtomicInteger();
+			final AtomicInteger lockedJobs = new AtomicInteger();
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < starters; i++) {
+				threads.add(new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							startSignal.await();
+							jobManager.start(new BlockingJob(jobsEnd), "lock");
+							startedJobs.incrementAndGet();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} catch (RuntimeException e) {
+							lockedJobs.incrementAndGet();
+						}
+					}
+				}));
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			startSignal.countDown();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertEquals(1, startedJobs.get());
+			assertEquals(starters - 1, lockedJobs.get());
+		} finally {
+			jobsEnd.countDown();
+			jobManager.destroy();
+		}
+	}
+
+	/**
+	 * By default jobs are not queued: they all run concurrently
+	 */
+	@Test
+	public void testDefaultExecutorUnbounded() throws InterruptedException {
+		SimpleJobManager jobManager = new SimpleJobManager();
+		CountDownLatch jobsEnd = new CountDownLatch(1);
+		try {
+			int jobs = PooledJobExecutor.DEFAULT_MAX_POOL_SIZE + 5;
+			CountDownLatch running = new CountDownLatch(jobs);
+			for (int i = 0; i < jobs; i++) {
+				jobManager.start(new BlockingJob(jobsEnd, running));
+			}
+			assertTrue(running.await(5, TimeUnit.SECONDS));
+		} finally {
+			jobsEnd.countDown();
+			jobManager.destroy();
+		}
+	}
+
+	@Test
+	public void testRejectedJobDiscarded() {
+		SimpleJobManager jobManager = new SimpleJobManager(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("queue full");
+			}
+		});
+		try {
+			Job job = new EmptyJob();
+			try {
+				jobManager.start(job, "lock");
+				fail("Job not rejected");
+			} catch (RejectedExecutionException e) {
+				// expected
+			}
+			assertTrue(job.isAborted());
+			assertNull(jobManager.getJob(job.getId().toString()));
+
+			// the lock has been released
+			Job otherJob = new EmptyJob();
+			jobManager.start(otherJob, "lock", false);
+			assertTrue(otherJob.isCompleted());
+		} finally {
+			jobManager.destroy();
+		}
+	}
+
+	@Test
+	public void testExpiredJobsEviction() throws InterruptedException {
+		SimpleJobManager jobManager = new SimpleJobManager();
+		try {
+			Job oldJob = new EmptyJob();
+			jobManager.start(oldJob, false);
+			Thread.sleep(500);
+			Job recentJob = new EmptyJob();
+			jobManager.start(recentJob, false);
+
+			jobManager.evictExpiredJobs();
+			assertSame(oldJob, jobManager.getJob(oldJob.getId().toString()));
+			assertEquals(0, jobManager.getEvictedJobsCount());
+
+			jobManager.setJobTimeToLiveMillis(250);
+			jobManager.evictExpiredJobs();
+			assertNull(jobManager.getJob(oldJob.getId().toString()));
+			assertSame(recentJob, jobManager.getJob(recentJob.getId().toString()));
+			assertEquals(1, jobManager.getEvictedJobsCount());
+
+			jobManager.setJobTimeToLiveMillis(0);
+			jobManager.evictExpiredJobs();
+			assertNull(jobManager.getJob(recentJob.getId().toString()));
+			assertEquals(2, jobManager.getEvictedJobsCount());
+		} finally {
+			jobManager.destroy();
+		}
+	}
+
+	@Test
+	public void testMaxRetainedJobs() {
+		SimpleJobManager jobManager = new SimpleJobManager();
+		try {
+			jobManager.setMaxRetainedJobs(2);
+			List<Job> jobs = new ArrayList<Job>();
+			for (int i = 0; i < 4; i++) {
+				Job job = new EmptyJob();
+				jobManager.start(job, false);
+				jobs.add(job);
+			}
+			// the jobs ended first are evicted as soon as the limit is exceeded
+			assertNull(jobManager.getJob(jobs.get(0).getId().toString()));
+			assertNull(jobManager.getJob(jobs.get(1).getId().toString()));
+			assertSame(jobs.get(2), jobManager.getJob(jobs.get(2).getId().toString()));
+			assertSame(jobs.get(3), jobManager.getJob(jobs.get(3).getId().toString()));
+			assertEquals(2, jobManager.getEvictedJobsCount());
+
+			// a lower limit is applied by the next eviction
+			jobManager.setMaxRetainedJobs(1);
+			jobManager.evictExpiredJobs();
+			assertNull(jobManager.getJob(jobs.get(2).getId().toString()));
+			assertSame(jobs.get(3), jobManager.getJob(jobs.get(3).getId().toString()));
+			assertEquals(3, jobManager.getEvictedJobsCount());
+		} finally {
+			jobManager.destroy();
+		}
+	}
+
+	/**
+	 * Evicting the info of a job started again must not remove the newer info
+	 */
+	@Test
+	public void testStaleJobInfoNotEvicted() {
+		SimpleJobManager jobManager = new SimpleJobManager();
+		try {
+			Job job = new EmptyJob();
+			jobManager.start(job, "lock", false);
+			jobManager.start(job, "lock", false);
+			assertNull(jobManager.getLockingJob("lock"));
+
+			// evicts the first info only
+			jobManager.setMaxRetainedJobs(1);
+			jobManager.evictExpiredJobs();
+			assertSame(job, jobManager.getJob(job.getId().toString()));
+			assertEquals(0, jobManager.getEvictedJobsCount());
+
+			jobManager.setJobTimeToLiveMillis(0);
+			jobManager.evictExpiredJobs();
+			assertNull(jobManager.getJob(job.getId().toString()));
+			assertEquals(1, jobManager.getEvictedJobsCount());
+		} finally {
+			jobManager.destroy();
+		}
+	}
+
+	private static class BlockingJob extends Job {
+
+		private final CountDownLatch end;
+		private final CountDownLatch running;
+
+		BlockingJob(CountDownLatch end) {
+			this(end, null);
+		}
+
+		BlockingJob(CountDownLatch end, CountDownLatch running) {
+			this.end = end;
+			this.running = running;
+		}
+
+		@Override
+		protected void buildTasks() throws Throwable {
+			addTask(new Task() {
+				@Override
+				protected void execute() throws Throwable {
+					if (running != null) {
+						running.countDown();
+					}
+					end.await(10, TimeUnit.SECONDS);
+				}
+			});
+		}
+	}
+
+	private static class EmptyJob extends Job {
+
+		@Override
+		protected void buildTasks() throws Throwable {
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package org.openforis.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.openforis.concurrency.Worker.Status;
+
+public class WorkerProgressPublisherTest {
+
+	@Test
+	public void testRateLimiting() throws InterruptedException {
+		WorkerProgressPublisher publisher = new WorkerProgressPublisher(20);
+		try {
+			TestWorker worker = new TestWorker();
+			worker.changeStatus(Status.RUNNING);
+			RecordingListener listener = new RecordingListener();
+			publisher.subscribe(worker, listener);
+			long start = System.currentTimeMillis();
+			while (System.currentTimeMillis() - start < 500) {
+				worker.progress = (worker.progress + 1) % 100;
+				Thread.sleep(1);
+			}
+			// at most one event every 50 ms
+			int eventsCount = listener.events.size();
+			assertTrue("Too many events: " + eventsCount, eventsCount <= 500 / 50 + 2);
+			assertTrue("Too few events: " + eventsCount, eventsCount >= 2);
+
+			// no events if nothing changed
+			Thread.sleep(100);
+			eventsCount = listener.events.size();
+			Thread.sleep(200);
+			assertEquals(eventsCount, listener.events.size());
+		} finally {
+			publisher.shutdown();
+		}
+	}
+
+	@Test
+	public void testFinalEventPublishedImmediately() throws InterruptedException {
+		WorkerProgressPublisher publisher = new WorkerProgressPublisher(1);
+		try {
+			TestWorker worker = new TestWorker();
+			worker.changeStatus(Status.RUNNING);
+			RecordingListener listener = new RecordingListener();
+			publisher.subscribe(worker, listener);
+			listener.awaitEvents(1);
+			worker.progress = 100;
+			long start = System.currentTimeMillis();
+			worker.changeStatus(Status.COMPLETED);
+			listener.awaitEvents(2);
+			// not delayed until the next period (1 second)
+			assertTrue(System.currentTimeMillis() - start < 500);
+			WorkerProgressEvent event = listener.events.get(1);
+			assertEquals(Status.COMPLETED, event.getStatus());
+			assertEquals(100, event.getProgressPercent());
+			// the worker is no more observed
+			assertEquals(0, publisher.getPublishedWorkersCount());
+		} finally {
+			publisher.shutdown();
+		}
+	}
+
+	/**
+	 * A late subscriber receives the last published event before any newer one
+	 */
+	@Test
+	public void testLastEventSentToLateSubscriber() throws InterruptedException {
+		WorkerProgressPublisher publisher = new WorkerProgressPublisher(20);
+		try {
+			TestWorker worker = new TestWorker();
+			worker.changeStatus(Status.RUNNING);
+			worker.progress = 30;
+			RecordingListener first = new RecordingListener();
+			publisher.subscribe(worker, first);
+			first.awaitEvents(1);
+
+			RecordingListener late = new RecordingListener();
+			publisher.subscribe(worker, late);
+			assertEquals(1, late.events.size());
+			assertEquals(30, late.events.get(0).getProgressPercent());
+
+			worker.progress = 60;
+			late.awaitEvents(2);
+			assertEquals(60, late.events.get(1).getProgressPercent());
+			worker.changeStatus(Status.COMPLETED);
+			late.awaitEvents(3);
+			assertEquals(first.events.subList(1, first.events.size()), late.events.subList(1, late.events.size()));
+		} finally {
+			publisher.shutdown();
+		}
+	}
+
+	@Test
+	public void testThrowingListener() throws InterruptedException {
+		WorkerProgressPublisher publisher = new WorkerProgressPublisher(20);
+		try {
+			TestWorker worker = new TestWorker();
+			worker.changeStatus(Status.RUNNING);
+			publisher.subscribe(worker, new WorkerProgressListener() {
+				@Override
+				public void progressChanged(WorkerProgressEvent event) {
+					throw new IllegalStateException("listener error");
+				}
+			});
+			RecordingListener listener = new RecordingListener();
+			publisher.subscribe(worker, listener);
+			listener.awaitEvents(1);
+			worker.progress = 50;
+			listener.awaitEvents(2);
+			worker.changeStatus(Status.FAILED);
+			listener.awaitEvents(3);
+			assertEquals(Status.FAILED, listener.events.get(2).getStatus());
+			assertEquals(0, publisher.getPublishedWorkersCount());
+		} finally {
+			publisher.shutdown();
+		}
+	}
+
+	static class TestWorker extends Worker {
+
+		volatile int progress;
+
+		@Override
+		protected void execute() throws Throwable {
+		}
+
+		@Override
+		public int getProgressPercent() {
+			return progress;
+		}
+	}
+
+	static class RecordingListener implements WorkerProgressListener {
+
+		final List<WorkerProgressEvent> events = new CopyOnWriteArrayList<WorkerProgressEvent>();
+
+		@Override
+		public void progressChanged(WorkerProgressEvent event) {
+			events.add(event);
+		}
+
+		void awaitEvents(int count) throws InterruptedException {
+			long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+			while (events.size() < count && System.currentTimeMillis() < timeout) {
+				Thread.sleep(1);
+			}
+			assertEquals(count, events.size());
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package org.openforis.commons.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output stream compressing the data in gzip format on several threads.
+ *
+ * Data is split into blocks of {@code blockSize} bytes, compressed independently by a pool of threads
+ * and written in order as consecutive gzip members: the result is a valid gzip file
+ * (e.g. it can be read by gunzip, {@link java.util.zip.GZIPInputStream} or {@link org.openforis.commons.io.csv.CsvReader}).
+ * At most {@code parallelism * 2} blocks are pending, so memory usage doesn't depend on the size of the data written.
+ * Every {@link #flush()} terminates the current block: flushing often reduces the compression ratio.
+ *
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	private final OutputStream out;
+	private final int blockSize;
+	private final int maxPendingBlocks;
+	private final ForkJoinPool pool;
+	private final Deque<ForkJoinTask<ByteArrayOutputStream>> pendingBlocks = new ArrayDeque<ForkJoinTask<ByteArrayOutputStream>>();
+	private final Deque<byte[]> pendingData = new ArrayDeque<byte[]>();
+	private final Deque<byte[]> freeBuffers = new ArrayDeque<byte[]>();
+	private byte[] block;
+	private int blockLength;
+	private long blocksCount;
+	private boolean closed;
+
+	/**
+	 * Creates a stream compressing the data on as many threads as the available processors
+	 */
+	public ParallelGzipOutputStream(OutputStream out) {
+		this(out, Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelGzipOutputStream(OutputStream out, int parallelism) {
+		this(out, parallelism, DEFAULT_BLOCK_SIZE);
+	}
+
+	public ParallelGzipOutputStream(OutputStream out, int parallelism, int blockSize) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be greater than 0");
+		}
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("blockSize must be greater than 0");
+		}
+		this.out = out;
+		this.blockSize = blockSize;
+		this.maxPendingBlocks = parallelism * 2;
+		this.pool = new ForkJoinPool(parallelism);
+		this.block = new byte[blockSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkNotClosed();
+		block[blockLength ++] = (byte) b;
+		if (blockLength == blockSize) {
+			submitBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkNotClosed();
+		while (len > 0) {
+			int length = Math.min(len, blockSize - blockLength);
+			System.arraycopy(b, off, block, blockLength, length);
+			blockLength += length;
+			off += length;
+			len -= length;
+			if (blockLength == blockSize) {
+				submitBlock();
+			}
+		}
+	}
+
+	/**
+	 * Submits the current block to the pool, writing the oldest compressed block if too many are pending
+	 */
+	private void submitBlock() throws IOException {
+		if (pendingBlocks.size() >= maxPendingBlocks) {
+			writeNextBlock();
+		}
+		final byte[] data = block;
+		final int length = blockLength;
+		pendingBlocks.add(pool.submit(new Callable<ByteArrayOutputStream>() {
+			@Override
+			public ByteArrayOutputStream call() throws Exception {
+				return compress(data, length);
+			}
+		}));
+		pendingData.add(data);
+		blocksCount ++;
+		block = freeBuffers.isEmpty() ? new byte[blockSize] : freeBuffers.poll();
+		blockLength = 0;
+	}
+
+	private static ByteArrayOutputStream compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+		GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192);
+		gzip.write(data, 0, length);
+		gzip.close();
+		return compressed;
+	}
+
+	private void writeNextBlock() throws IOException {
+		ByteArrayOutputStream compressed = getResult(pendingBlocks.poll());
+		compressed.writeTo(out);
+		// the uncompressed data can be reused for the next blocks
+		freeBuffers.add(pendingData.poll());
+	}
+
+	private ByteArrayOutputStream getResult(ForkJoinTask<ByteArrayOutputStream> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing data");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IOException("Error compressing data: " + cause.getMessage(), cause);
+			}
+		}
+	}
+
+	/**
+	 * Compresses the data written so far and writes it to the underlying stream
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkNotClosed();
+		writeAll();
+		out.flush();
+	}
+
+	private void writeAll() throws IOException {
+		if (blockLength > 0) {
+			submitBlock();
+		}
+		while (! pendingBlocks.isEmpty()) {
+			writeNextBlock();
+		}
+	}
+
+	private void checkNotClosed() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (blocksCount == 0) {
+				// an empty gzip member: an empty file is not a valid gzip file
+				submitBlock();
+			}
+			writeAll();
+		} finally {
+			for (ForkJoinTask<ByteArrayOutputStream> task : pendingBlocks) {
+				task.cancel(false);
+			}
+			pool.shutdownNow();
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package org.openforis.commons.io.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * {@link CsvTokenizer} working directly on the bytes of a text in UTF-8 or in a single byte charset.
+ *
+ * In these charsets separator, quote and line breaks (ASCII characters) are encoded as single bytes
+ * that cannot be part of the encoding of any other character, so lines can be split without decoding them:
+ * only the bytes of the values actually read are decoded, and values made only of ASCII characters
+ * (e.g. numbers) can be parsed without decoding them at all ({@link #getChars(int)}).
+ * Malformed input is decoded as by an {@link java.io.InputStreamReader}, replacing the invalid bytes.
+ *
+ */
+class ByteCsvTokenizer extends CsvTokenizer {
+
+	private final InputStream is;
+	private final Charset charset;
+	private final byte sep;
+	private final byte quote;
+	private byte[] buffer;
+	private int position;
+	private int limit;
+	private boolean eof;
+	private final boolean utf8;
+	private byte[] value = new byte[64];
+	private int valueLength;
+	private final BufferView view = new BufferView();
+
+	ByteCsvTokenizer(InputStream is, Charset charset, char separator, char quoteChar) {
+		this(is, charset, separator, quoteChar, DEFAULT_BUFFER_SIZE);
+	}
+
+	ByteCsvTokenizer(InputStream is, Charset charset, char separator, char quoteChar, int bufferSize) {
+		super(separator, quoteChar);
+		checkSupported(charset, separator, quoteChar);
+		this.is = is;
+		this.charset = charset;
+		this.utf8 = "UTF-8".equals(charset.name());
+		this.sep = (byte) separator;
+		this.quote = (byte) quoteChar;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Creates a tokenizer over bytes already in memory: the array is used as buffer, without copying it
+	 */
+	ByteCsvTokenizer(byte[] data, int length, Charset charset, char separator, char quoteChar) {
+		super(separator, quoteChar);
+		checkSupported(charset, separator, quoteChar);
+		this.is = null;
+		this.charset = charset;
+		this.utf8 = "UTF-8".equals(charset.name());
+		this.sep = (byte) separator;
+		this.quote = (byte) quoteChar;
+		this.buffer = data;
+		this.limit = length;
+		this.eof = true;
+	}
+
+	/**
+	 * Returns true if a text in the specified charset can be tokenized on its bytes:
+	 * the charset must be UTF-8 or a single byte charset compatible with ASCII and separator and quote ASCII characters
+	 */
+	static boolean isSupported(Charset charset, char separator, char quoteChar) {
+		return separator < 0x80 && quoteChar < 0x80 && LineCounter.isAsciiCompatible(charset);
+	}
+
+	private static void checkSupported(Charset charset, char separator, char quoteChar) {
+		if (! isSupported(charset, separator, quoteChar)) {
+			throw new IllegalArgumentException(String.format("Unsupported charset %s or separator/quote characters %s %s",
+					charset.name(), separator, quoteChar));
+		}
+	}
+
+	@Override
+	protected boolean advance() throws IOException {
+		while (true) {
+			if (position >= limit) {
+				if (eof) {
+					return false;
+				}
+				fill();
+			} else if (parseLine()) {
+				return true;
+			} else {
+				// incomplete line in the buffer
+				fill();
+			}
+		}
+	}
+
+	/**
+	 * Moves the unread bytes to the beginning of the buffer (enlarging it if full) and reads more bytes
+	 */
+	private void fill() throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		int read = is.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			eof = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	/**
+	 * Parses the line starting at the current position: values are split at the separators
+	 * until a quote or an escape character is found, then the line is parsed again by {@link #parseQuotedLine()}.
+	 * Returns false if the line is not complete (more bytes must be read): the line will be parsed again from its beginning.
+	 */
+	private boolean parseLine() throws IOException {
+		final byte[] buf = buffer;
+		final int lim = limit;
+		final byte sep = this.sep;
+		final byte quote = this.quote;
+		valuesCount = 0;
+		int valueStart = position;
+		int i = position;
+		while (true) {
+			if (i >= lim) {
+				if (! eof) {
+					return false;
+				}
+				// end of the text
+				addPlainValue(valueStart, i);
+				position = i;
+				return true;
+			}
+			byte b = buf[i];
+			if (b == sep) {
+				addPlainValue(valueStart, i);
+				valueStart = ++ i;
+			} else if (b == '\n' || b == '\r') {
+				int next = skipLineBreak(i);
+				if (next < 0) {
+					return false;
+				}
+				addPlainValue(valueStart, i);
+				position = next;
+				return true;
+			} else if (b == quote || b == ESCAPE_CHAR) {
+				return parseQuotedLine();
+			} else {
+				i ++;
+			}
+		}
+	}
+
+	private void addPlainValue(int start, int end) {
+		if (lazy) {
+			addRange(start, end);
+		} else {
+			addValue(decode(buffer, start, end - start));
+		}
+	}
+
+	/**
+	 * Returns the position following the line break at the specified position, or -1 if more bytes must be read
+	 */
+	private int skipLineBreak(int i) {
+		if (buffer[i] == '\r') {
+			if (i + 1 >= limit) {
+				return eof ? i + 1 : -1;
+			}
+			if (buffer[i + 1] == '\n') {
+				return i + 2;
+			}
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Parses the line starting at the current position as done by CSVParser.
+	 * Returns false if the line is not complete (more bytes must be read): the line will be parsed again from its beginning.
+	 */
+	private boolean parseQuotedLine() throws IOException {
+		final byte[] buf = buffer;
+		final int lim = limit;
+		final byte sep = this.sep;
+		final byte quote = this.quote;
+		valueLength = 0;
+		valuesCount = 0;
+		boolean inQuotes = false;
+		// true after a character of a value (or an opening quote), false after a closing quote
+		boolean inField = false;
+		int lineStart = position;
+		int i = position;
+		while (true) {
+			if (i >= lim) {
+				if (! eof) {
+					return false;
+				}
+				if (inQuotes) {
+					throw unterminatedQuote(decode(value, 0, valueLength));
+				}
+				addValue(decode(value, 0, valueLength));
+				position = i;
+				return true;
+			}
+			byte b = buf[i];
+			if (b == '\n' || b == '\r') {
+				int next = skipLineBreak(i);
+				if (next < 0) {
+					return false;
+				}
+				if (inQuotes) {
+					// the quoted value continues in the next line
+					append((byte) '\n');
+					lineStart = i = next;
+				} else {
+					addValue(decode(value, 0, valueLength));
+					position = next;
+					return true;
+				}
+				continue;
+			}
+			i ++;
+			if (i >= lim && ! eof && (b == quote || b == ESCAPE_CHAR)) {
+				// the following byte is needed
+				return false;
+			}
+			if (b == ESCAPE_CHAR) {
+				// escapes a following quote, separator or escape character, otherwise it's dropped
+				inField = true;
+				if (i < lim && (buf[i] == quote || buf[i] == sep || buf[i] == ESCAPE_CHAR)) {
+					append(buf[i ++]);
+				}
+			} else if (b == quote) {
+				if ((inQuotes || inField) && i < lim && buf[i] == quote) {
+					// doubled quote
+					append(quote);
+					i ++;
+				} else {
+					inQuotes = ! inQuotes;
+					if (i - 1 - lineStart >= MIN_EMBEDDED_QUOTE_INDEX && buf[i - 2] != sep
+							&& i < lim && buf[i] != sep && buf[i] != '\n' && buf[i] != '\r'
+							&& countChars(lineStart, i - 1) >= MIN_EMBEDDED_QUOTE_INDEX) {
+						// quote in the middle of a value: whitespace preceding it is ignored, otherwise it's kept
+						if (valueLength > 0 && isWhitespace(decode(value, 0, valueLength))) {
+							valueLength = 0;
+						} else {
+							append(quote);
+						}
+					}
+				}
+				inField = ! inField;
+			} else if (b == sep && ! inQuotes) {
+				addValue(decode(value, 0, valueLength));
+				valueLength = 0;
+				inField = false;
+			} else {
+				append(b);
+				inField = true;
+			}
+		}
+	}
+
+	/**
+	 * Counts the characters encoded by the bytes between the specified positions, up to {@value #MIN_EMBEDDED_QUOTE_INDEX}
+	 * (in UTF-8, continuation bytes are not counted and 4 bytes sequences are encoded as 2 chars)
+	 */
+	private int countChars(int start, int end) {
+		if (! utf8) {
+			return end - start;
+		}
+		int count = 0;
+		for (int i = start; i < end && count < MIN_EMBEDDED_QUOTE_INDEX; i++) {
+			int b = buffer[i] & 0xFF;
+			if (b < 0x80 || b >= 0xC0) {
+				count += b >= 0xF0 ? 2 : 1;
+			}
+		}
+		return count;
+	}
+
+	private void append(byte b) {
+		if (valueLength == value.length) {
+			value = Arrays.copyOf(value, value.length * 2);
+		}
+		value[valueLength ++] = b;
+	}
+
+	private String decode(byte[] bytes, int offset, int length) {
+		return length == 0 ? "" : new String(bytes, offset, length, charset);
+	}
+
+	@Override
+	protected String createValue(int start, int end) {
+		return decode(buffer, start, end - start);
+	}
+
+	/**
+	 * If made only of ASCII characters, the value is a view over the buffer
+	 */
+	@Override
+	protected CharSequence getChars(int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] < 0) {
+				return decode(buffer, start, end - start);
+			}
+		}
+		view.start = start;
+		view.end = end;
+		return view;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (is != null) {
+			is.close();
+		}
+	}
+
+	/**
+	 * View over ASCII bytes of the buffer: every byte is a character
+	 */
+	private class BufferView implements CharSequence {
+
+		int start;
+		int end;
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) buffer[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return decode(buffer, start + from, to - from);
+		}
+
+		@Override
+		public String toString() {
+			return decode(buffer, start, end - start);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package org.openforis.commons.io.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * {@link CsvTokenizer} reading characters from a {@link Reader} (or from an array of characters already in memory).
+ *
+ */
+class CharCsvTokenizer extends CsvTokenizer {
+
+	private final Reader reader;
+	private char[] buffer;
+	private int position;
+	private int limit;
+	private boolean eof;
+	private final StringBuilder value = new StringBuilder();
+	private final BufferView view = new BufferView();
+
+	CharCsvTokenizer(Reader reader, char separator, char quoteChar) {
+		this(reader, separator, quoteChar, DEFAULT_BUFFER_SIZE);
+	}
+
+	CharCsvTokenizer(Reader reader, char separator, char quoteChar, int bufferSize) {
+		super(separator, quoteChar);
+		this.reader = reader;
+		this.buffer = new char[bufferSize];
+	}
+
+	/**
+	 * Creates a tokenizer over text already in memory: the array is used as buffer, without copying it
+	 */
+	CharCsvTokenizer(char[] text, int length, char separator, char quoteChar) {
+		super(separator, quoteChar);
+		this.reader = null;
+		this.buffer = text;
+		this.limit = length;
+		this.eof = true;
+	}
+
+	@Override
+	protected boolean advance() throws IOException {
+		while (true) {
+			if (position >= limit) {
+				if (eof) {
+					return false;
+				}
+				fill();
+			} else if (parseLine()) {
+				return true;
+			} else {
+				// incomplete line in the buffer
+				fill();
+			}
+		}
+	}
+
+	/**
+	 * Moves the unread characters to the beginning of the buffer (enlarging it if full) and reads more characters
+	 */
+	private void fill() throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		int read = reader.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			eof = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	/**
+	 * Parses the line starting at the current position: values are split at the separators
+	 * until a quote or an escape character is found, then the line is parsed again by {@link #parseQuotedLine()}.
+	 * Returns false if the line is not complete (more characters must be read): the line will be parsed again from its beginning.
+	 */
+	private boolean parseLine() throws IOException {
+		final char[] buf = buffer;
+		final int lim = limit;
+		final char sep = separator;
+		final char quote = quoteChar;
+		valuesCount = 0;
+		int valueStart = position;
+		int i = position;
+		while (true) {
+			if (i >= lim) {
+				if (! eof) {
+					return false;
+				}
+				// end of the text
+				addPlainValue(valueStart, i);
+				position = i;
+				return true;
+			}
+			char c = buf[i];
+			if (c == sep) {
+				addPlainValue(valueStart, i);
+				valueStart = ++ i;
+			} else if (c == '\n' || c == '\r') {
+				int next = skipLineBreak(i);
+				if (next < 0) {
+					return false;
+				}
+				addPlainValue(valueStart, i);
+				position = next;
+				return true;
+			} else if (c == quote || c == ESCAPE_CHAR) {
+				return parseQuotedLine();
+			} else {
+				i ++;
+			}
+		}
+	}
+
+	private void addPlainValue(int start, int end) {
+		if (lazy) {
+			addRange(start, end);
+		} else {
+			addValue(new String(buffer, start, end - start));
+		}
+	}
+
+	/**
+	 * Returns the position following the line break at the specified position, or -1 if more characters must be read
+	 */
+	private int skipLineBreak(int i) {
+		if (buffer[i] == '\r') {
+			if (i + 1 >= limit) {
+				return eof ? i + 1 : -1;
+			}
+			if (buffer[i + 1] == '\n') {
+				return i + 2;
+			}
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Parses the line starting at the current position as done by CSVParser.
+	 * Returns false if the line is not complete (more characters must be read): the line will be parsed again from its beginning.
+	 */
+	private boolean parseQuotedLine() throws IOException {
+		final char[] buf = buffer;
+		final int lim = limit;
+		final char sep = separator;
+		final char quote = quoteChar;
+		final StringBuilder value = this.value;
+		value.setLength(0);
+		valuesCount = 0;
+		boolean inQuotes = false;
+		// true after a character of a value (or an opening quote), false after a closing quote
+		boolean inField = false;
+		int lineStart = position;
+		int i = position;
+		while (true) {
+			if (i >= lim) {
+				if (! eof) {
+					return false;
+				}
+				if (inQuotes) {
+					throw unterminatedQuote(value);
+				}
+				addValue(value.toString());
+				position = i;
+				return true;
+			}
+			char c = buf[i];
+			if (c == '\n' || c == '\r') {
+				int next = skipLineBreak(i);
+				if (next < 0) {
+					return false;
+				}
+				if (inQuotes) {
+					// the quoted value continues in the next line
+					value.append('\n');
+					lineStart = i = next;
+				} else {
+					addValue(value.toString());
+					position = next;
+					return true;
+				}
+				continue;
+			}
+			i ++;
+			if (i >= lim && ! eof && (c == quote || c == ESCAPE_CHAR)) {
+				// the following character is needed
+				return false;
+			}
+			if (c == ESCAPE_CHAR) {
+				// escapes a following quote, separator or escape character, otherwise it's dropped
+				inField = true;
+				if (i < lim && (buf[i] == quote || buf[i] == sep || buf[i] == ESCAPE_CHAR)) {
+					value.append(buf[i ++]);
+				}
+			} else if (c == quote) {
+				if ((inQuotes || inField) && i < lim && buf[i] == quote) {
+					// doubled quote
+					value.append(quote);
+					i ++;
+				} else {
+					inQuotes = ! inQuotes;
+					if (i - 1 - lineStart >= MIN_EMBEDDED_QUOTE_INDEX && buf[i - 2] != sep
+							&& i < lim && buf[i] != sep && buf[i] != '\n' && buf[i] != '\r') {
+						// quote in the middle of a value: whitespace preceding it is ignored, otherwise it's kept
+						if (value.length() > 0 && isWhitespace(value)) {
+							value.setLength(0);
+						} else {
+							value.append(quote);
+						}
+					}
+				}
+				inField = ! inField;
+			} else if (c == sep && ! inQuotes) {
+				addValue(value.toString());
+				value.setLength(0);
+				inField = false;
+			} else {
+				value.append(c);
+				inField = true;
+			}
+		}
+	}
+
+	@Override
+	protected String createValue(int start, int end) {
+		return new String(buffer, start, end - start);
+	}
+
+	/**
+	 * The value is a view over the buffer
+	 */
+	@Override
+	protected CharSequence getChars(int start, int end) {
+		view.start = start;
+		view.end = end;
+		return view;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (reader != null) {
+			reader.close();
+		}
+	}
+
+	private class BufferView implements CharSequence {
+
+		int start;
+		int end;
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return buffer[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new String(buffer, start + from, to - from);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buffer, start, end - start);
+		}
+	}
+}
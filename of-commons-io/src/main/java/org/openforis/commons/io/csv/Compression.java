@@ -0,0 +1,110 @@
+package org.openforis.commons.io.csv;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+
+/**
+ * Compression of a file, detected by the signature (magic bytes) at its beginning.
+ *
+ * Streams made of several concatenated members (e.g. written by {@link org.openforis.commons.io.ParallelGzipOutputStream})
+ * are decompressed entirely.
+ *
+ */
+enum Compression {
+
+	NONE, GZIP, BZIP2, XZ;
+
+	static final int SIGNATURE_LENGTH = 10;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte[] GZIP_SIGNATURE = new byte[] {0x1F, (byte) 0x8B, 0x08};
+	private static final byte[] BZIP2_SIGNATURE = new byte[] {'B', 'Z', 'h'};
+	private static final byte[] BZIP2_BLOCK_SIGNATURE = new byte[] {0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+	private static final byte[] XZ_SIGNATURE = new byte[] {(byte) 0xFD, '7', 'z', 'X', 'Z', 0x00};
+
+	/**
+	 * Detects the compression from the first bytes of a file
+	 */
+	static Compression detect(byte[] signature, int length) {
+		if (startsWith(signature, length, 0, GZIP_SIGNATURE)) {
+			return GZIP;
+		} else if (startsWith(signature, length, 0, BZIP2_SIGNATURE) && length > 3 && signature[3] >= '1' && signature[3] <= '9'
+				&& startsWith(signature, length, 4, BZIP2_BLOCK_SIGNATURE)) {
+			return BZIP2;
+		} else if (startsWith(signature, length, 0, XZ_SIGNATURE)) {
+			return XZ;
+		} else {
+			return NONE;
+		}
+	}
+
+	static Compression detect(File file) throws IOException {
+		InputStream is = new FileInputStream(file);
+		try {
+			return detect(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	private static Compression detect(InputStream is) throws IOException {
+		byte[] signature = new byte[SIGNATURE_LENGTH];
+		int length = 0;
+		int read;
+		while (length < signature.length && (read = is.read(signature, length, signature.length - length)) != -1) {
+			length += read;
+		}
+		return detect(signature, length);
+	}
+
+	private static boolean startsWith(byte[] data, int length, int offset, byte[] prefix) {
+		if (length < offset + prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[offset + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Opens a stream reading the content of the file, decompressing it if compressed
+	 */
+	static InputStream open(File file) throws IOException {
+		InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try {
+			is.mark(SIGNATURE_LENGTH);
+			Compression compression = detect(is);
+			is.reset();
+			return compression.decompress(is);
+		} catch (IOException e) {
+			is.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Wraps the stream into a stream decompressing its content
+	 */
+	InputStream decompress(InputStream is) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GzipCompressorInputStream(is, true);
+		case BZIP2:
+			return new BZip2CompressorInputStream(is, true);
+		case XZ:
+			return new XZCompressorInputStream(is, true);
+		default:
+			return is;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package org.openforis.commons.io.csv;
+
+import org.openforis.commons.io.flat.FlatRecord;
+
+/**
+ * Column of a CSV file with its name already resolved into an index:
+ * values are read by index, without looking up the column name for every line.
+ * 
+ * Obtained from {@link CsvReader#getColumn(String)} after reading the headers.
+ *
+ */
+public final class CsvColumn {
+
+	private final String name;
+	private final int index;
+
+	CsvColumn(String name, int index) {
+		this.name = name;
+		this.index = index;
+	}
+
+	public <T> T getValue(FlatRecord record, Class<T> type) {
+		return record.getValue(index, type);
+	}
+
+	public String getValue(FlatRecord record) {
+		return record.getValue(index, String.class);
+	}
+
+	public int getInt(FlatRecord record, int missingValue) {
+		return record.getInt(index, missingValue);
+	}
+
+	public long getLong(FlatRecord record, long missingValue) {
+		return record.getLong(index, missingValue);
+	}
+
+	public double getDouble(FlatRecord record, double missingValue) {
+		return record.getDouble(index, missingValue);
+	}
+
+	public boolean getBoolean(FlatRecord record, boolean missingValue) {
+		return record.getBoolean(index, missingValue);
+	}
+
+	/**
+	 * Returns true if the value is missing or blank (or NA) in the specified record
+	 */
+	public boolean isMissing(FlatRecord record) {
+		return record.getValue(index, String.class) == null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	@Override
+	public String toString() {
+		return name + " [" + index + "]";
+	}
+}
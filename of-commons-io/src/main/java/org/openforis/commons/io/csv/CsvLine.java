@@ -1,6 +1,5 @@
 package org.openforis.commons.io.csv;
 
-import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -15,7 +14,7 @@ import org.openforis.commons.io.flat.FlatRecord;
  */
 public class CsvLine implements FlatRecord {
 
-	private static final String NA = "NA";
+	static final String NA = "NA";
 	
 	private List<String> columnNames;
 	private String[] line;
@@ -32,53 +31,73 @@ public class CsvLine implements FlatRecord {
 		return line;
 	}
 
+	/**
+	 * Returns a copy of this line that can be kept after reading the next lines 
+	 * (needed when lines are lazy or their arrays are reused, see {@link CsvReader#setLazyLines(boolean)})
+	 */
+	public CsvLine copy() {
+		CsvLine copy = new CsvLine(csvReader, getLine().clone());
+		copy.naAsNull = naAsNull;
+		return copy;
+	}
+
+	int valuesCount() {
+		return line.length;
+	}
+
+	String value(int idx) {
+		return line[idx];
+	}
+
+	/**
+	 * Returns the value at the specified index, without creating a string if possible
+	 */
+	CharSequence chars(int idx) {
+		return value(idx);
+	}
+
 	private String toString(String txt) {
 		return isNullValue(txt) ? null : txt;
 	}
 
 	private Integer toInteger(String val) {
-		return isNullValue(val) ? null : Double.valueOf(val).intValue();
+		return isNullValue(val) ? null : ValueParser.parseInt(val);
 	}
 
 	private Double toDouble(String val) {
-		return isNullValue(val) ? null : Double.valueOf(val);
+		return isNullValue(val) ? null : ValueParser.parseDouble(val);
 	}
 
 	private Long toLong(String val) {
 		return isNullValue(val) ? null : Long.valueOf(val);
 	}
 
-	private boolean isNullValue(String val) {
-		return val == null || val.trim().isEmpty() || naAsNull && NA.equals(val);
+	private boolean isNullValue(CharSequence val) {
+		return val == null || ValueParser.isBlank(val) || naAsNull && NA.contentEquals(val);
 	}
 
 	private Boolean toBoolean(String val) {
-		if (isNullValue(val)) {
-			return null;
-		} else if (val.equals("1") || val.equalsIgnoreCase("T") || val.equalsIgnoreCase("Y")
-				|| val.equalsIgnoreCase("true")) {
-			return true;
-		} else if (val.equals("0") || val.equalsIgnoreCase("F") || val.equalsIgnoreCase("N")
-				|| val.equalsIgnoreCase("false")) {
-			return false;
-		} else {
-			throw new NumberFormatException("'" + val + "' is not a valid boolean value");
-		}
+		return isNullValue(val) ? null : ValueParser.parseBoolean(val);
 	}
 
+	/**
+	 * Returns the index of the column with the specified name or null if there is no such column.
+	 * Use {@link CsvReader#getFieldIndex(String)} or {@link CsvReader#getColumn(String)} to get it without boxing.
+	 */
 	public Integer getColumnIndex(String column) {
+		int idx = fieldIndex(column);
+		return idx < 0 ? null : idx;
+	}
+
+	private int fieldIndex(String column) {
 		if (column == null) {
 			throw new IllegalStateException("Column headers not yet read");
 		}
-		return columnNames.indexOf(column);
+		return csvReader.getFieldIndex(column);
 	}
 
 	private Date toDate(String val) {
-		try {
-			return isNullValue(val) ? null : csvReader.getDateFormat().parse(val);
-		} catch (ParseException e) {
-			throw DateFormatException.forInputString(val);
-		}
+		return isNullValue(val) ? null : csvReader.parseDate(val);
 	}
 
 	public List<String> getColumnNames() {
@@ -87,12 +106,12 @@ public class CsvLine implements FlatRecord {
 
 	@Override
 	public Object[] toArray() {
-		return line;
+		return getLine();
 	}
 
 	@Override
 	public String[] toStringArray() {
-		return line;
+		return getLine();
 	}
 
 	@Override
@@ -108,10 +127,10 @@ public class CsvLine implements FlatRecord {
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T getValue(int idx, Class<T> type) {
-		if (line.length <= idx) {
+		if (valuesCount() <= idx) {
 			return null;
 		}
-		String value = line[idx];
+		String value = value(idx);
 		if (type.isAssignableFrom(Integer.class)) {
 			return (T) toInteger(value);
 		} else if (type.isAssignableFrom(Long.class)) {
@@ -131,24 +150,82 @@ public class CsvLine implements FlatRecord {
 
 	@Override
 	public <T> T getValue(String column, Class<T> type) {
-		Integer idx = getColumnIndex(column);
-		return idx == null ? null : getValue(idx, type);
+		return getValue(requireColumnIndex(column), type);
+	}
+
+	private int requireColumnIndex(String column) {
+		int idx = fieldIndex(column);
+		if (idx < 0) {
+			throw new IllegalArgumentException("Column not found: " + column);
+		}
+		return idx;
+	}
+
+	/**
+	 * Returns the value at the specified index or null if the index is out of the bounds of the line
+	 */
+	private CharSequence valueAt(int idx) {
+		return idx < 0 || idx >= valuesCount() ? null : chars(idx);
+	}
+
+	@Override
+	public int getInt(int idx, int missingValue) {
+		CharSequence value = valueAt(idx);
+		return isNullValue(value) ? missingValue : ValueParser.parseInt(value);
+	}
+
+	@Override
+	public int getInt(String column, int missingValue) {
+		return getInt(requireColumnIndex(column), missingValue);
+	}
+
+	@Override
+	public long getLong(int idx, long missingValue) {
+		CharSequence value = valueAt(idx);
+		return isNullValue(value) ? missingValue : ValueParser.parseLong(value);
+	}
+
+	@Override
+	public long getLong(String column, long missingValue) {
+		return getLong(requireColumnIndex(column), missingValue);
+	}
+
+	@Override
+	public double getDouble(int idx, double missingValue) {
+		CharSequence value = valueAt(idx);
+		return isNullValue(value) ? missingValue : ValueParser.parseDouble(value);
+	}
+
+	@Override
+	public double getDouble(String column, double missingValue) {
+		return getDouble(requireColumnIndex(column), missingValue);
+	}
+
+	@Override
+	public boolean getBoolean(int idx, boolean missingValue) {
+		String value = idx < 0 || idx >= valuesCount() ? null : value(idx);
+		return isNullValue(value) ? missingValue : ValueParser.parseBoolean(value);
+	}
+
+	@Override
+	public boolean getBoolean(String column, boolean missingValue) {
+		return getBoolean(requireColumnIndex(column), missingValue);
 	}
 
 	@Override
 	public boolean isMissing(int idx) {
-		return isNullValue(line[idx]);
+		return isNullValue(chars(idx));
 	}
 
 	@Override
 	public boolean isMissing(String column) {
-		Integer idx = getColumnIndex(column);
-		return idx == null || isMissing(idx);
+		int idx = fieldIndex(column);
+		return idx < 0 || isMissing(idx);
 	}
 
 	@Override
 	public boolean isEmpty() {
-		for (int i = 0; i < line.length; i++) {
+		for (int i = 0; i < valuesCount(); i++) {
 			if (!isMissing(i)) {
 				return false;
 			}
@@ -162,7 +239,7 @@ public class CsvLine implements FlatRecord {
 
 	@Override
 	public String toString() {
-		return Arrays.toString(line);
+		return Arrays.toString(getLine());
 	}
 
 	@Override
@@ -1,9 +1,12 @@
 package org.openforis.commons.io.csv;
 
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,25 +18,91 @@ import org.openforis.commons.io.flat.Field;
  */
 public abstract class CsvProcessor {
 
+	private static final String DEFAULT_DATE_PATTERN = "yyyy-MM-dd";
+
 	private DateFormat dateFormat;
+	private DateConverter dateConverter;
+	/**
+	 * True if the date format is the default one, created by {@link #getDateFormat()} and not set explicitly
+	 */
+	private boolean defaultDateFormat;
 	private Map<String, Field> fieldsByName;
 	private List<String> fieldNames;
+	private Map<String, Integer> fieldIndexByName;
 	
+	/**
+	 * Returns the format used to parse dates (yyyy-MM-dd if not set): it is not thread safe, use {@link #parseDate(String)} instead
+	 */
 	public DateFormat getDateFormat() {
 		if ( dateFormat == null ) {
-			setDateFormat("yyyy-MM-dd");
+			setDateFormat(DEFAULT_DATE_PATTERN);
+			defaultDateFormat = true;
 		}
 		return dateFormat;
 	}
 
+	/**
+	 * Sets a custom format: dates will be parsed by it, one at a time
+	 */
 	public void setDateFormat(DateFormat dateFormat) {
 		this.dateFormat = dateFormat;
+		this.dateConverter = null;
+		this.defaultDateFormat = false;
 	}
 
+	/**
+	 * Sets a {@link SimpleDateFormat} pattern: dates are parsed and formatted without locking when the pattern 
+	 * is made of numeric fields only (see {@link DateConverter}), otherwise by a SimpleDateFormat, one at a time
+	 */
 	public void setDateFormat(String pattern) {
 		this.dateFormat = new SimpleDateFormat(pattern);
+		this.dateConverter = DateConverter.forPattern(pattern);
+		this.defaultDateFormat = false;
 	}
 	
+	/**
+	 * Parses a date using the date format; it can be called by different threads at the same time.
+	 * 
+	 * @throws DateFormatException if the value cannot be parsed
+	 */
+	public Date parseDate(String value) {
+		DateFormat format = getDateFormat();
+		DateConverter converter = dateConverter;
+		if (converter != null) {
+			return converter.parse(value);
+		}
+		synchronized (format) {
+			try {
+				return format.parse(value);
+			} catch (ParseException e) {
+				throw DateFormatException.forInputString(value);
+			}
+		}
+	}
+	
+	/**
+	 * Appends the date formatted with the date format set by {@link #setDateFormat(String)} or {@link #setDateFormat(DateFormat)};
+	 * returns false (appending nothing) if no date format has been set, even if the default one has been created by {@link #getDateFormat()}
+	 */
+	protected boolean formatDate(Date date, StringBuilder sb) {
+		if (defaultDateFormat) {
+			return false;
+		}
+		DateConverter converter = dateConverter;
+		if (converter != null) {
+			converter.formatTo(date, sb);
+			return true;
+		}
+		DateFormat format = dateFormat;
+		if (format == null) {
+			return false;
+		}
+		synchronized (format) {
+			sb.append(format.format(date));
+		}
+		return true;
+	}
+
 	public List<Field> getFields() {
 		return Collections.unmodifiableList(new ArrayList<Field>(fieldsByName.values()));
 	}
@@ -42,6 +111,14 @@ public abstract class CsvProcessor {
 		return fieldNames;
 	}
 	
+	/**
+	 * Returns the index of the field with the specified name or -1 if not found
+	 */
+	public int getFieldIndex(String name) {
+		Integer idx = fieldIndexByName == null ? null : fieldIndexByName.get(name);
+		return idx == null ? -1 : idx;
+	}
+	
 	public void setFields(List<Field> fields) {
 		setFields(fields.toArray(new Field[fields.size()]));
 	}
@@ -49,15 +126,17 @@ public abstract class CsvProcessor {
 	protected void setFields(Field[] fields) {
 		fieldNames = new ArrayList<String>(fields.length);
 		fieldsByName = new LinkedHashMap<String, Field>(fields.length);
+		fieldIndexByName = new HashMap<String, Integer>(fields.length * 2);
 		for (int i = 0; i < fields.length; i++) {
 			Field f = fields[i];
 			String name = f.getName();
 			if ( name == null || name.trim().isEmpty() ) {
 				throw new IllegalArgumentException("Empty column heading at index: " + i);
 			}
-			if ( fieldNames.contains(name) ) {
+			if ( fieldIndexByName.containsKey(name) ) {
 				throw new IllegalArgumentException("Duplicate header: " + name);
 			}
+			fieldIndexByName.put(name, i);
 			fieldsByName.put(name, f);
 			fieldNames.add(name);
 		}
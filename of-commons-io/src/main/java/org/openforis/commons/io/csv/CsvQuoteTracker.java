@@ -0,0 +1,166 @@
+package org.openforis.commons.io.csv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Follows the quotes and the escape characters of a CSV text as done by {@link CsvTokenizer} (and by the opencsv CSVParser),
+ * to find the line breaks terminating the records without parsing the values.
+ *
+ * Characters (or bytes of a text in an ASCII compatible charset) are passed one at a time,
+ * so the text can be scanned in consecutive portions.
+ * The state changes are computed once for every class of characters, so each character costs two table lookups.
+ *
+ */
+class CsvQuoteTracker {
+
+	// character classes
+	private static final int ORDINARY = 0;
+	private static final int SEPARATOR = 1;
+	private static final int QUOTE = 2;
+	private static final int ESCAPE = 3;
+	private static final int LINE_BREAK = 4;
+
+	// state flags
+	private static final int IN_QUOTES = 1;
+	private static final int IN_FIELD = 2;
+	/**
+	 * After an escape character: the next character is escaped if it's a quote, a separator or an escape character
+	 */
+	private static final int PENDING_ESCAPE = 4;
+	/**
+	 * After a quote that can be doubled: it's an escaped quote if the next character is a quote too
+	 */
+	private static final int PENDING_QUOTE = 8;
+	/**
+	 * Set in a transition by a line break terminating a record
+	 */
+	private static final int RECORD_END = 16;
+
+	/**
+	 * Next state by current state and character class
+	 */
+	private static final byte[] TRANSITIONS = new byte[16 << 3];
+
+	static {
+		for (int state = 0; state < 16; state++) {
+			for (int charClass = ORDINARY; charClass <= LINE_BREAK; charClass++) {
+				TRANSITIONS[state << 3 | charClass] = (byte) transition(state, charClass);
+			}
+		}
+	}
+
+	private final char separator;
+	private final char quote;
+	private final byte[] asciiClasses = new byte[128];
+	private int state;
+
+	CsvQuoteTracker(char separator, char quoteChar) {
+		this.separator = separator;
+		this.quote = quoteChar;
+		// in order of increasing priority
+		setAsciiClass(separator, SEPARATOR);
+		setAsciiClass(quoteChar, QUOTE);
+		setAsciiClass(CsvTokenizer.ESCAPE_CHAR, ESCAPE);
+		setAsciiClass('\n', LINE_BREAK);
+		setAsciiClass('\r', LINE_BREAK);
+	}
+
+	private void setAsciiClass(char c, int charClass) {
+		if (c < asciiClasses.length) {
+			asciiClasses[c] = (byte) charClass;
+		}
+	}
+
+	/**
+	 * Processes the next character (or byte): returns true if it's a line break (LF or CR) terminating a record
+	 */
+	boolean next(int c) {
+		int next = TRANSITIONS[state << 3 | classOf(c)];
+		state = next & ~RECORD_END;
+		return (next & RECORD_END) != 0;
+	}
+
+	/**
+	 * Processes the bytes of the buffer from the specified index (inclusive) to the specified one (exclusive)
+	 * until a line break terminating a record: returns its index or -1 if there is no such line break.
+	 * After the first one, the ordinary characters of a run don't change the state and are just skipped.
+	 */
+	int findRecordEnd(ByteBuffer buffer, int from, int to) {
+		int state = this.state;
+		int i = from;
+		while (i < to) {
+			int charClass = classOf(buffer.get(i++));
+			if (charClass == ORDINARY) {
+				state = TRANSITIONS[state << 3 | ORDINARY];
+				while (i < to && classOf(buffer.get(i)) == ORDINARY) {
+					i ++;
+				}
+			} else {
+				int next = TRANSITIONS[state << 3 | charClass];
+				if ((next & RECORD_END) != 0) {
+					this.state = next & ~RECORD_END;
+					return i - 1;
+				}
+				state = next;
+			}
+		}
+		this.state = state;
+		return -1;
+	}
+
+	/**
+	 * Returns true if the characters processed so far end inside a quoted value
+	 */
+	boolean isInQuotes() {
+		boolean inQuotes = (state & IN_QUOTES) != 0;
+		return (state & PENDING_QUOTE) != 0 ? ! inQuotes : inQuotes;
+	}
+
+	/**
+	 * Restarts from the beginning of a record
+	 */
+	void reset() {
+		state = 0;
+	}
+
+	private int classOf(int c) {
+		if ((c & ~0x7F) == 0) {
+			return asciiClasses[c];
+		}
+		return c == quote ? QUOTE : c == separator ? SEPARATOR : ORDINARY;
+	}
+
+	private static int transition(int state, int charClass) {
+		boolean inQuotes = (state & IN_QUOTES) != 0;
+		boolean inField = (state & IN_FIELD) != 0;
+		if ((state & PENDING_ESCAPE) != 0) {
+			if (charClass == QUOTE || charClass == SEPARATOR || charClass == ESCAPE) {
+				// escaped character
+				return state & ~PENDING_ESCAPE;
+			}
+		} else if ((state & PENDING_QUOTE) != 0) {
+			inField = ! inField;
+			if (charClass == QUOTE) {
+				// doubled quote
+				return toState(inQuotes, inField, 0);
+			}
+			inQuotes = ! inQuotes;
+		}
+		switch (charClass) {
+		case LINE_BREAK:
+			return inQuotes ? toState(true, inField, 0) : RECORD_END;
+		case ESCAPE:
+			return toState(inQuotes, true, PENDING_ESCAPE);
+		case QUOTE:
+			return inQuotes || inField ? toState(inQuotes, inField, PENDING_QUOTE) : toState(true, true, 0);
+		case SEPARATOR:
+			return toState(inQuotes, inQuotes, 0);
+		default:
+			return toState(inQuotes, true, 0);
+		}
+	}
+
+	private static int toState(boolean inQuotes, boolean inField, int pending) {
+		return (inQuotes ? IN_QUOTES : 0) | (inField ? IN_FIELD : 0) | pending;
+	}
+}
@@ -6,10 +6,12 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Reader;
 import java.text.DateFormat;
+import java.util.Date;
 import java.util.List;
 
 import org.openforis.commons.io.OpenForisIOUtils;
 import org.openforis.commons.io.csv.ExcelReader.ExcelParseException;
+import org.openforis.commons.io.flat.ColumnBatch;
 import org.openforis.commons.io.flat.Field;
 import org.openforis.commons.io.flat.FlatDataStream;
 import org.openforis.commons.io.flat.FlatRecord;
@@ -29,6 +31,34 @@ public class CsvReader extends CsvProcessor implements FlatDataStream, Closeable
 	
     public static final char DEFAULT_SEPARATOR = ',';
     public static final char DEFAULT_QUOTE_CHARACTER = '"';
+    /**
+     * Separator to pass to the constructors to detect it from the first lines of the file (among , ; tab and |)
+     */
+    public static final char DETECT_SEPARATOR = '\0';
+    
+    /**
+     * Receives the lines read by {@link CsvReader#readAllLines(LineHandler)}
+     */
+    public interface LineHandler {
+    	
+    	void handle(CsvLine line);
+    }
+    
+    public enum Format {
+    	/**
+    	 * Detected from the first bytes of the file
+    	 */
+    	AUTO, 
+    	CSV, 
+    	/**
+    	 * Excel 97-2003
+    	 */
+    	XLS, 
+    	/**
+    	 * Excel 2007+
+    	 */
+    	XLSX
+    }
 
 	public CsvReader(String filename) throws FileNotFoundException {
 		this(filename, DEFAULT_SEPARATOR, DEFAULT_QUOTE_CHARACTER);
@@ -47,7 +77,27 @@ public class CsvReader extends CsvProcessor implements FlatDataStream, Closeable
 	}
 	
 	public CsvReader(File file, String charsetName, char separator, char quoteChar) throws FileNotFoundException {
-		this.delegate = createDelegate(file, charsetName, separator, quoteChar, this);
+		this(file, charsetName, separator, quoteChar, Format.AUTO);
+	}
+	
+	/**
+	 * Creates a reader for the specified file; if format is {@link Format#AUTO}, 
+	 * the format and the charset (for text files with a byte order mark) are detected from the first bytes of the file.
+	 * CSV files compressed with gzip, bzip2 or xz are decompressed while reading them.
+	 */
+	public CsvReader(File file, String charsetName, char separator, char quoteChar, Format format) throws FileNotFoundException {
+		this(file, charsetName, separator, quoteChar, format, 1);
+	}
+	
+	/**
+	 * Creates a reader for the specified file; if parallelism is greater than 1, uncompressed CSV files (in UTF-8 or a single byte charset,
+	 * with ASCII separator and quote characters) are memory-mapped and parsed in chunks by the specified number of threads.
+	 * Lines are still returned in order by {@link #readNextLine()}, while {@link #readAllLines(LineHandler)} 
+	 * passes them to the handler concurrently.
+	 */
+	public CsvReader(File file, String charsetName, char separator, char quoteChar, Format format, int parallelism) 
+			throws FileNotFoundException {
+		this.delegate = createDelegate(file, charsetName, separator, quoteChar, format, parallelism, this);
 	}
 	
 	/**
@@ -67,17 +117,58 @@ public class CsvReader extends CsvProcessor implements FlatDataStream, Closeable
 	}
 
 	private static CsvReaderDelegate createDelegate(File file, String charsetName, char separator, char quoteChar, 
-			CsvReader csvReader) throws FileNotFoundException {
+			Format format, int parallelism, CsvReader csvReader) throws FileNotFoundException {
 		try {
-			return new ExcelReader(file, csvReader);
+			switch (format) {
+			case CSV:
+				return createCsvDelegate(file, charsetName, 0, toActualSeparator(separator), quoteChar, parallelism, csvReader);
+			case XLS:
+				return new ExcelReader(file, csvReader);
+			case XLSX:
+				return new XlsxStreamingReader(file, csvReader);
+			default:
+				return createDetectedDelegate(file, charsetName, separator, quoteChar, parallelism, csvReader);
+			}
 		} catch(ExcelParseException e) {
-			try {
-				return new OpenCsvReader(file, charsetName, separator, quoteChar, csvReader);
-			} catch(IOException ex) {
-				csvReader.delegateConstructionException = ex;
-				return null;
+			csvReader.delegateConstructionException = new IOException(e.getMessage(), e.getCause());
+			return null;
+		} catch(IOException e) {
+			csvReader.delegateConstructionException = e;
+			return null;
+		}
+	}
+	
+	private static CsvReaderDelegate createDetectedDelegate(File file, String charsetName, char separator, char quoteChar, 
+			int parallelism, CsvReader csvReader) throws IOException {
+		FileFormatDetector detector = FileFormatDetector.detect(file, charsetName, quoteChar);
+		try {
+			switch (detector.getFormat()) {
+			case XLS:
+				return new ExcelReader(file, csvReader);
+			case XLSX:
+				return new XlsxStreamingReader(file, csvReader);
+			default:
+				break;
 			}
+		} catch(ExcelParseException e) {
+			// not a valid Excel file: try to read it as a text file
 		}
+		char actualSeparator = separator == DETECT_SEPARATOR ? detector.getSeparator() : separator;
+		String actualCharsetName = detector.getCharsetName() == null ? charsetName : detector.getCharsetName();
+		return createCsvDelegate(file, actualCharsetName, detector.getBomLength(), actualSeparator, quoteChar, parallelism, csvReader);
+	}
+	
+	private static CsvReaderDelegate createCsvDelegate(File file, String charsetName, int bomLength, char separator, char quoteChar, 
+			int parallelism, CsvReader csvReader) throws IOException {
+		if (parallelism > 1 && ParallelCsvReader.isSupported(charsetName, separator, quoteChar) && Compression.detect(file) == Compression.NONE) {
+			return new ParallelCsvReader(file, charsetName, bomLength, separator, quoteChar, parallelism, csvReader);
+		} else {
+			return new NativeCsvReader(file, charsetName, bomLength, separator, quoteChar, csvReader);
+		}
+	}
+	
+	private static char toActualSeparator(char separator) {
+		return separator == DETECT_SEPARATOR ? DEFAULT_SEPARATOR : separator;
 	}
 	
 	public void readHeaders() throws IOException {
@@ -89,6 +180,15 @@ public class CsvReader extends CsvProcessor implements FlatDataStream, Closeable
 		return delegate.readNextLine();
 	}
 	
+	/**
+	 * Reads all the lines not read yet passing them to the specified handler.
+	 * If the reader has been created with parallelism greater than 1, the handler is called concurrently 
+	 * by the parsing threads and lines are not passed in order: the handler must be thread safe.
+	 */
+	public void readAllLines(LineHandler handler) throws IOException {
+		delegate.readAllLines(handler);
+	}
+	
 	@Override
 	public void close() throws IOException {
 		if (delegate != null) {
@@ -103,6 +203,26 @@ public class CsvReader extends CsvProcessor implements FlatDataStream, Closeable
 	public void setHeadersRead(boolean headersRead ) {
 		delegate.setHeadersRead( headersRead );
 	}
+	
+	/**
+	 * If true, the array of values of a line (see {@link CsvLine#getLine()}) can be reused for the next line read:
+	 * enable it only when the lines read are not retained, to avoid allocating a new array for every line.
+	 * Supported only by CSV files.
+	 */
+	public void setReuseLineArrays(boolean reuseLineArrays) {
+		delegate.setReuseLineArrays(reuseLineArrays);
+	}
+
+	/**
+	 * If true, the values of the lines read by {@link #readNextLine()} (and {@link #nextRecord()}) are kept in the read buffer
+	 * and converted into strings or numbers only when accessed, saving the creation of the values never read.
+	 * A line can be accessed only until the next line is read (an IllegalStateException is thrown otherwise): 
+	 * use {@link CsvLine#copy()} to keep it. 
+	 * Supported only by CSV files read sequentially (parallelism 1).
+	 */
+	public void setLazyLines(boolean lazyLines) {
+		delegate.setLazyLines(lazyLines);
+	}
 
 	public long getLinesRead() {
 		return delegate.getLinesRead();
@@ -117,12 +237,43 @@ public class CsvReader extends CsvProcessor implements FlatDataStream, Closeable
 	public List<String> getFieldNames() {
 		return delegate.getFieldNames();
 	}
+	
+	@Override
+	public int getFieldIndex(String name) {
+		return delegate.getFieldIndex(name);
+	}
+	
+	/**
+	 * Returns a handle to read the values of the column with the specified name by index, 
+	 * without looking up the name for every line
+	 * 
+	 * @throws IllegalArgumentException if the column is not found
+	 */
+	public CsvColumn getColumn(String name) {
+		int idx = getFieldIndex(name);
+		if (idx < 0) {
+			throw new IllegalArgumentException("Column not found: " + name);
+		}
+		return new CsvColumn(name, idx);
+	}
 
 	@Override
 	public FlatRecord nextRecord() throws IOException {
 		return delegate.nextRecord();
 	}
 	
+	/**
+	 * Fills the batch directly from the values of the lines, without creating a {@link CsvLine} for every line:
+	 * values are missing when blank or NA and are converted as done by {@link CsvLine} 
+	 * (e.g. values of INTEGER columns must be integers in the range of long)
+	 * 
+	 * @throws NumberFormatException if a value of an INTEGER or DECIMAL column is not a valid number
+	 */
+	@Override
+	public int nextBatch(ColumnBatch batch) throws IOException {
+		return delegate.readBatch(batch);
+	}
+	
 	public List<String> getColumnNames() {
 		return getFieldNames();
 	}
@@ -132,8 +283,24 @@ public class CsvReader extends CsvProcessor implements FlatDataStream, Closeable
 		return delegate.getDateFormat();
 	}
 	
+	@Override
+	public void setDateFormat(DateFormat dateFormat) {
+		delegate.setDateFormat(dateFormat);
+	}
+	
+	@Override
+	public void setDateFormat(String pattern) {
+		delegate.setDateFormat(pattern);
+	}
+	
+	@Override
+	public Date parseDate(String value) {
+		return delegate.parseDate(value);
+	}
+	
 	/**
 	 * Returns the number of lines including the headers
+	 * (computed only the first time for CSV files)
 	 * @return
 	 * @throws IOException
 	 */
@@ -141,6 +308,24 @@ public class CsvReader extends CsvProcessor implements FlatDataStream, Closeable
 		return delegate.size();
 	}
 	
+	/**
+	 * Returns an estimate of the number of lines including the headers:
+	 * for large CSV files, it's extrapolated from a few samples of the file, without reading it all.
+	 * Useful to show the progress of the reading.
+	 */
+	public int estimateSize() throws IOException {
+		return delegate.estimateSize();
+	}
+	
+	/**
+	 * If true, {@link #size()} doesn't count the line breaks inside quoted values (CSV files only), 
+	 * returning the number of records including the headers. 
+	 * The estimate of the size is not supported in this case: {@link #estimateSize()} returns the exact count.
+	 */
+	public void setQuoteAwareSize(boolean quoteAwareSize) {
+		delegate.setQuoteAwareSize(quoteAwareSize);
+	}
+	
 	private void checkDelegate() throws IOException {
 		if (delegate == null) {
 			throw delegateConstructionException;
@@ -1,11 +1,17 @@
 package org.openforis.commons.io.csv;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.openforis.commons.io.csv.CsvReader.LineHandler;
+import org.openforis.commons.io.flat.ColumnBatch;
 import org.openforis.commons.io.flat.Field;
 import org.openforis.commons.io.flat.FlatRecord;
 
@@ -35,6 +41,21 @@ public abstract class CsvReaderDelegate extends CsvProcessor implements Closeabl
 	 */
 	public abstract int size() throws IOException;
 
+	/**
+	 * Returns an estimate of the number of lines including the headers,
+	 * computed without reading the whole file when supported
+	 */
+	public int estimateSize() throws IOException {
+		return size();
+	}
+
+	/**
+	 * If supported and quoteAwareSize is true, {@link #size()} doesn't count the line breaks inside quoted values
+	 */
+	public void setQuoteAwareSize(boolean quoteAwareSize) {
+		// not supported by default
+	}
+
 	public abstract String[] readHeadersInternal() throws IOException;
 
 	protected abstract String[] line(long lineIdx) throws IOException;
@@ -52,6 +73,16 @@ public abstract class CsvReaderDelegate extends CsvProcessor implements Closeabl
 		}
 	}
 
+	/**
+	 * Reads all the lines not read yet passing them to the specified handler (in order by default)
+	 */
+	public void readAllLines(LineHandler handler) throws IOException {
+		CsvLine line;
+		while ((line = readNextLine()) != null) {
+			handler.handle(line);
+		}
+	}
+
 	public void readHeaders() throws IOException {
 		if (headersRead) {
 			throw new IllegalStateException("Headers already read");
@@ -99,12 +130,103 @@ public abstract class CsvReaderDelegate extends CsvProcessor implements Closeabl
 		return super.getFieldNames();
 	}
 
+	public final int getFieldIndex(String name) {
+		return super.getFieldIndex(name);
+	}
+
 	public final FlatRecord nextRecord() throws IOException {
 		return readNextLine();
 	}
 
+	/**
+	 * Fills the batch with the next lines, without creating a {@link CsvLine} for every line.
+	 * Values are considered missing when blank or equal to NA (see {@link CsvLine#setNaAsNull(boolean)}).
+	 */
+	public int readBatch(ColumnBatch batch) throws IOException {
+		if (!headersRead) {
+			throw new IllegalStateException("Headers must be read first");
+		}
+		int columnCount = batch.getColumnCount();
+		int[] sourceIndexes = new int[columnCount];
+		for (int col = 0; col < columnCount; col++) {
+			String name = batch.getFields().get(col).getName();
+			sourceIndexes[col] = getFieldIndex(name);
+			if (sourceIndexes[col] < 0) {
+				throw new IllegalArgumentException("Column not found: " + name);
+			}
+		}
+		batch.clear();
+		int row = 0;
+		String[] line;
+		while (row < batch.getCapacity() && (line = line(linesRead)) != null) {
+			linesRead++;
+			for (int col = 0; col < columnCount; col++) {
+				int idx = sourceIndexes[col];
+				String value = idx < line.length ? line[idx] : null;
+				if (value == null || ValueParser.isBlank(value) || CsvLine.NA.equals(value)) {
+					batch.setNull(col, row);
+					continue;
+				}
+				switch (batch.getType(col)) {
+				case INTEGER:
+					batch.setLong(col, row, ValueParser.parseLong(value));
+					break;
+				case DECIMAL:
+					batch.setDouble(col, row, ValueParser.parseDouble(value));
+					break;
+				case DATE:
+				case TIME:
+					batch.setLong(col, row, csvReader.parseDate(value).getTime());
+					break;
+				default:
+					batch.setString(col, row, value);
+				}
+			}
+			row++;
+		}
+		batch.setRowCount(row);
+		return row;
+	}
+
 	public void setHeadersRead(boolean headersRead) {
 		this.headersRead = headersRead;
 	}
 
+	/**
+	 * If supported, the array of values of a line is reused for the next line
+	 */
+	public void setReuseLineArrays(boolean reuseLineArrays) {
+		// not supported by default
+	}
+
+	/**
+	 * If supported, lines keep their values in the read buffer until they are accessed
+	 */
+	public void setLazyLines(boolean lazyLines) {
+		// not supported by default
+	}
+
+	/**
+	 * Opens a reader for a text file skipping the first bomLength bytes (byte order mark)
+	 */
+	static Reader openReader(File file, String charsetName, int bomLength) throws IOException {
+		return new InputStreamReader(openStream(file, bomLength), charsetName);
+	}
+
+	/**
+	 * Opens a stream reading the content of a text file (decompressed, if compressed) skipping the first bomLength bytes
+	 */
+	static InputStream openStream(File file, int bomLength) throws IOException {
+		InputStream is = Compression.open(file);
+		try {
+			for (int i = 0; i < bomLength; i++) {
+				is.read();
+			}
+			return is;
+		} catch (IOException e) {
+			is.close();
+			throw e;
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+package org.openforis.commons.io.csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits CSV text into lines of values, producing the same values of the opencsv CSVParser (with default settings)
+ * previously used to read CSV files: values can be enclosed in quotes, quotes are escaped doubling them
+ * or preceding them by a backslash, quoted values can contain separators and line breaks.
+ * As in CSVParser, a backslash followed by a quote, a separator or another backslash escapes it and is dropped otherwise,
+ * whitespace preceding an opening quote is ignored, a quote in the middle of a value is kept
+ * and line breaks inside quoted values are always read as LF.
+ * Lines can be terminated by LF, CRLF or CR; an unterminated quoted value at the end of the text is an error.
+ *
+ * The text is read into a reusable buffer: lines without quotes and backslashes are simply split at the separators,
+ * creating only one string for every value, the other ones are parsed by a state machine reproducing CSVParser.
+ * Optionally, the array of values returned can be reused for the next line.
+ *
+ * Lines can also be parsed lazily ({@link #nextView()}): only the positions of the values in the buffer are recorded
+ * and strings are created only for the values actually read, until the next line is parsed
+ * (values of lines containing quotes or backslashes are always created).
+ *
+ * The buffer contains characters ({@link CharCsvTokenizer}) or, for UTF-8 and single byte charsets,
+ * the bytes of the file, decoded only for the values read ({@link ByteCsvTokenizer}).
+ *
+ */
+abstract class CsvTokenizer implements Closeable {
+
+	static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	static final char ESCAPE_CHAR = '\\';
+	/**
+	 * A quote in the middle of a value is kept only if preceded by at least this number of characters in the same line
+	 * (as done by CSVParser)
+	 */
+	static final int MIN_EMBEDDED_QUOTE_INDEX = 3;
+
+	private static final String[] EMPTY_LINE = new String[0];
+
+	protected final char separator;
+	protected final char quoteChar;
+	/**
+	 * True while parsing a line by {@link #nextView()}: only the positions of the values must be recorded
+	 */
+	protected boolean lazy;
+	protected int valuesCount;
+	private int[] valueStarts = new int[16];
+	private int[] valueEnds = new int[16];
+	/**
+	 * True for the values already created: for the other ones (parsed lazily) only the positions are recorded
+	 */
+	private boolean[] valueCreated = new boolean[16];
+	private String[] values = new String[16];
+	private boolean reuseLineArrays;
+	private String[] lastLine = EMPTY_LINE;
+	private long generation;
+
+	protected CsvTokenizer(char separator, char quoteChar) {
+		this.separator = separator;
+		this.quoteChar = quoteChar;
+	}
+
+	/**
+	 * Creates a tokenizer reading the specified file (decompressing it, if compressed), skipping the byte order mark (if any).
+	 * Files in UTF-8 or in a single byte charset are tokenized on their bytes, when separator and quote are ASCII characters.
+	 */
+	static CsvTokenizer open(File file, String charsetName, int bomLength, char separator, char quoteChar) throws IOException {
+		Charset charset = Charset.forName(charsetName);
+		if (ByteCsvTokenizer.isSupported(charset, separator, quoteChar)) {
+			return new ByteCsvTokenizer(CsvReaderDelegate.openStream(file, bomLength), charset, separator, quoteChar);
+		} else {
+			return new CharCsvTokenizer(CsvReaderDelegate.openReader(file, charsetName, bomLength), separator, quoteChar);
+		}
+	}
+
+	/**
+	 * Returns the values of the next line or null if the end of the text has been reached
+	 */
+	String[] next() throws IOException {
+		generation ++;
+		return advance() ? toLine() : null;
+	}
+
+	/**
+	 * Parses the next line without creating its values, that can be read by {@link #getValue(int)} and {@link #getChars(int)}
+	 * until the next line is parsed; returns false if the end of the text has been reached
+	 */
+	boolean nextView() throws IOException {
+		generation ++;
+		lazy = true;
+		try {
+			return advance();
+		} finally {
+			lazy = false;
+		}
+	}
+
+	/**
+	 * Parses the next line, reading more text if needed; returns false if the end of the text has been reached
+	 */
+	protected abstract boolean advance() throws IOException;
+
+	protected void addValue(String value) {
+		ensureCapacity();
+		values[valuesCount] = value;
+		valueCreated[valuesCount] = true;
+		valuesCount ++;
+	}
+
+	/**
+	 * Adds a value made of the characters of the buffer between the specified positions, without creating it
+	 */
+	protected void addRange(int start, int end) {
+		ensureCapacity();
+		valueStarts[valuesCount] = start;
+		valueEnds[valuesCount] = end;
+		valueCreated[valuesCount] = false;
+		valuesCount ++;
+	}
+
+	private void ensureCapacity() {
+		if (valuesCount == values.length) {
+			int length = values.length * 2;
+			values = Arrays.copyOf(values, length);
+			valueStarts = Arrays.copyOf(valueStarts, length);
+			valueEnds = Arrays.copyOf(valueEnds, length);
+			valueCreated = Arrays.copyOf(valueCreated, length);
+		}
+	}
+
+	/**
+	 * Exception thrown when the text ends inside a quoted value (as CSVReader does)
+	 */
+	protected static IOException unterminatedQuote(CharSequence value) {
+		String text = value.length() > 100 ? value.subSequence(0, 100) + "..." : value.toString();
+		return new IOException("Unterminated quoted field at end of CSV line. Beginning of lost text: [" + text + "]");
+	}
+
+	/**
+	 * Returns true if the value is made only of whitespace (used to ignore the whitespace preceding a quote)
+	 */
+	protected static boolean isWhitespace(CharSequence value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (! Character.isWhitespace(value.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Number of lines parsed: values of a line parsed by {@link #nextView()} are valid only while it doesn't change
+	 */
+	long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Number of values of the last line parsed by {@link #nextView()}
+	 */
+	int getValuesCount() {
+		return valuesCount;
+	}
+
+	/**
+	 * Creates the value at the specified index of the last line parsed by {@link #nextView()}
+	 */
+	String getValue(int idx) {
+		return valueCreated[idx] ? values[idx] : createValue(valueStarts[idx], valueEnds[idx]);
+	}
+
+	/**
+	 * Returns the value at the specified index of the last line parsed by {@link #nextView()}:
+	 * if possible, it's a view over the buffer (reused for the next call), otherwise a string
+	 */
+	CharSequence getChars(int idx) {
+		return valueCreated[idx] ? values[idx] : getChars(valueStarts[idx], valueEnds[idx]);
+	}
+
+	/**
+	 * Creates a value made of the characters of the buffer between the specified positions
+	 */
+	protected abstract String createValue(int start, int end);
+
+	/**
+	 * Returns the characters of the buffer between the specified positions,
+	 * if possible as a view over the buffer (reused for the next call)
+	 */
+	protected abstract CharSequence getChars(int start, int end);
+
+	private String[] toLine() {
+		String[] line;
+		if (reuseLineArrays && lastLine.length == valuesCount) {
+			line = lastLine;
+		} else {
+			line = new String[valuesCount];
+			lastLine = line;
+		}
+		System.arraycopy(values, 0, line, 0, valuesCount);
+		return line;
+	}
+
+	/**
+	 * If true, the array returned by {@link #next()} is reused for the following lines having the same number of values
+	 */
+	void setReuseLineArrays(boolean reuseLineArrays) {
+		this.reuseLineArrays = reuseLineArrays;
+	}
+}
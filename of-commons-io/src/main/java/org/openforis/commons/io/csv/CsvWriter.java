@@ -2,34 +2,67 @@ package org.openforis.commons.io.csv;
 
 import static com.opencsv.ICSVWriter.NO_QUOTE_CHARACTER;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.openforis.commons.io.OpenForisIOUtils;
+import org.openforis.commons.io.flat.FlatDataStream;
 import org.openforis.commons.io.flat.FlatDataWriter;
-
-import com.opencsv.CSVWriterBuilder;
-import com.opencsv.ICSVWriter;
+import org.openforis.commons.io.flat.FlatRecord;
 
 /**
+ * Writes CSV files producing the same output of the opencsv CSVWriter previously used:
+ * if a quote character is specified, all the values (but null ones) are quoted;
+ * quotes are escaped doubling them and, without a quote character, separators and line breaks are escaped by a quote.
+ *
+ * Lines are formatted into a reusable buffer: numbers are appended without creating strings
+ * and every value is scanned only once to find the characters to escape.
+ * Dates are formatted with the date format only if it has been set (see {@link #setDateFormat(String)}), otherwise by {@link Date#toString()}
+ * as done by the previous writer: the default format returned by {@link #getDateFormat()} is never used.
+ * When writing to an {@link OutputStream}, lines are written in blocks of {@value #BLOCK_SIZE} characters,
+ * otherwise every line is written to the {@link Writer} as soon as it is complete.
+ * Records of a {@link FlatDataStream} can be formatted in parallel (see {@link #writeAll(FlatDataStream, int, int)}).
+ * To write a gzip compressed file, compressing it on several threads, use a {@link org.openforis.commons.io.ParallelGzipOutputStream}.
+ *
+ * Unlike the opencsv CSVWriter, which collected them to be checked by its checkError() method,
+ * I/O errors are thrown: wrapped in a RuntimeException by the writeNext methods and as they are by the other methods.
+ *
  * @author G. Miceli
  * @author S. Ricci
  */
 public class CsvWriter extends FlatDataWriter {
-	
+
+	static final int BLOCK_SIZE = 64 * 1024;
+	static final int CHUNK_LINES = 1024;
+
 	private static final char COMMA = ',';
 	private static final char DEFAULT_SEPARATOR = COMMA;
-	
-	private ICSVWriter delegate;
-	
+	private static final char ESCAPE_CHARACTER = '"';
+	private static final char LINE_END = '\n';
+
+	private final Writer writer;
+	private final char separator;
+	private final char quoteChar;
+	private final int blockSize;
+	private final StringBuilder buffer;
+	private char[] chars;
+	private boolean closed;
+
 	public CsvWriter(Writer writer) {
 		this(writer, DEFAULT_SEPARATOR, NO_QUOTE_CHARACTER);
 	}
-	
+
 	/**
 	 * Constructs the writer using the specified {@link OutputStream} to write the CSV file.
 	 * The default charset encoding will be UTF_8
@@ -44,37 +77,243 @@ public class CsvWriter extends FlatDataWriter {
 	public CsvWriter(OutputStream out, String charsetName) throws UnsupportedEncodingException {
 		this(out, charsetName, DEFAULT_SEPARATOR, NO_QUOTE_CHARACTER);
 	}
-	
+
 	public CsvWriter(OutputStream out, String charsetName, char separator, char quotechar) throws UnsupportedEncodingException {
-		this(new BufferedWriter(new OutputStreamWriter(out, charsetName)), separator, quotechar);
+		// lines are already written in blocks: no need of a BufferedWriter
+		this(new OutputStreamWriter(out, charsetName), separator, quotechar, BLOCK_SIZE);
 	}
 
 	public CsvWriter(Writer writer, char separator, char quoteChar) {
-		this.delegate = new CSVWriterBuilder(writer).withSeparator(separator).withQuoteChar(quoteChar).build();
+		this(writer, separator, quoteChar, 0);
 	}
-	
+
+	private CsvWriter(Writer writer, char separator, char quoteChar, int blockSize) {
+		this.writer = writer;
+		this.separator = separator;
+		this.quoteChar = quoteChar;
+		this.blockSize = blockSize;
+		this.buffer = new StringBuilder(Math.max(blockSize, 1024) + 1024);
+		this.chars = new char[buffer.capacity()];
+	}
+
 	@Override
 	protected void writeNextInternal(Object[] values) {
-		String[] stringValues = new String[values.length];
+		appendLine(values, buffer);
+		if (buffer.length() >= blockSize) {
+			try {
+				writeBuffer();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Formats the records of the stream in chunks of {@value #CHUNK_LINES} lines on a pool of {@code parallelism} threads;
+	 * the calling thread reads the records and writes the formatted chunks in order.
+	 * The values of every record are copied, so streams reusing the arrays of values can be written.
+	 * Chunks are formatted without calling {@link #writeNext(Object[])}: subclasses of this class, which could override it,
+	 * write the records sequentially (see {@link #writeAll(FlatDataStream)}).
+	 */
+	@Override
+	public void writeAll(FlatDataStream in, int parallelism, int maxPendingChunks) throws IOException {
+		if (parallelism <= 1 || getClass() != CsvWriter.class) {
+			writeAll(in);
+			return;
+		}
+		if (maxPendingChunks < 1) {
+			throw new IllegalArgumentException("maxPendingChunks must be greater than 0");
+		}
+		FlatRecord r = in.nextRecord();
+		if (r == null) {
+			return;
+		}
+		setFields(in.getFields());
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		Deque<ForkJoinTask<Chunk>> pendingChunks = new ArrayDeque<ForkJoinTask<Chunk>>();
+		try {
+			while (r != null) {
+				final Chunk chunk = new Chunk();
+				while (r != null && chunk.linesCount < CHUNK_LINES) {
+					// the array could be reused by the stream for the next record
+					chunk.lines[chunk.linesCount ++] = r.toArray().clone();
+					r = in.nextRecord();
+				}
+				if (pendingChunks.size() >= maxPendingChunks) {
+					writeChunk(getResult(pendingChunks.poll()));
+				}
+				pendingChunks.add(pool.submit(new Callable<Chunk>() {
+					@Override
+					public Chunk call() throws Exception {
+						chunk.format();
+						return chunk;
+					}
+				}));
+			}
+			while (! pendingChunks.isEmpty()) {
+				writeChunk(getResult(pendingChunks.poll()));
+			}
+		} finally {
+			for (ForkJoinTask<Chunk> task : pendingChunks) {
+				task.cancel(false);
+			}
+			pool.shutdownNow();
+		}
+	}
+
+	private void writeChunk(Chunk chunk) throws IOException {
+		writeBuffer();
+		write(chunk.text);
+		linesWritten += chunk.linesCount;
+	}
+
+	private <T> T getResult(ForkJoinTask<T> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IOException("Error formatting values: " + cause.getMessage(), cause);
+			}
+		}
+	}
+
+	/**
+	 * Appends the values to the builder as a CSV line; it can be called by different threads at the same time
+	 */
+	private void appendLine(Object[] values, StringBuilder sb) {
 		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				sb.append(separator);
+			}
 			Object val = values[i];
-			String stringVal = val == null ? null : val.toString();
-			stringValues[i] = stringVal;
+			if (val != null) {
+				if (quoteChar != NO_QUOTE_CHARACTER) {
+					sb.append(quoteChar);
+				}
+				appendValue(val, sb);
+				if (quoteChar != NO_QUOTE_CHARACTER) {
+					sb.append(quoteChar);
+				}
+			}
 		}
-		delegate.writeNext(stringValues);
+		sb.append(LINE_END);
 	}
-	
+
+	private void appendValue(Object val, StringBuilder sb) {
+		int start = sb.length();
+		if (val instanceof String) {
+			appendEscaped((String) val, sb);
+			return;
+		} else if (val instanceof Integer || val instanceof Long || val instanceof Short || val instanceof Byte) {
+			sb.append(((Number) val).longValue());
+		} else if (val instanceof Double) {
+			sb.append(((Double) val).doubleValue());
+		} else if (val instanceof Float) {
+			sb.append(((Float) val).floatValue());
+		} else if (! (val instanceof Date && formatDate((Date) val, sb))) {
+			appendEscaped(val.toString(), sb);
+			return;
+		}
+		// escape the formatted value only if it contains special characters (e.g. a separator in a date)
+		for (int i = start; i < sb.length(); i++) {
+			if (isEscaped(sb.charAt(i))) {
+				String formatted = sb.substring(start);
+				sb.setLength(start);
+				appendEscaped(formatted, sb);
+				return;
+			}
+		}
+	}
+
+	private void appendEscaped(String value, StringBuilder sb) {
+		int length = value.length();
+		int i = 0;
+		while (i < length && ! isEscaped(value.charAt(i))) {
+			i ++;
+		}
+		sb.append(value, 0, i);
+		for (; i < length; i++) {
+			char c = value.charAt(i);
+			if (isEscaped(c)) {
+				sb.append(ESCAPE_CHARACTER);
+			}
+			sb.append(c);
+		}
+	}
+
+	private boolean isEscaped(char c) {
+		if (quoteChar == NO_QUOTE_CHARACTER) {
+			return c == NO_QUOTE_CHARACTER || c == ESCAPE_CHARACTER || c == separator || c == '\n';
+		} else {
+			return c == quoteChar || c == ESCAPE_CHARACTER;
+		}
+	}
+
+	/**
+	 * Writes the content of the buffer to the underlying writer and empties it
+	 */
+	private void writeBuffer() throws IOException {
+		write(buffer);
+		buffer.setLength(0);
+	}
+
+	private void write(StringBuilder sb) throws IOException {
+		int length = sb.length();
+		if (length == 0) {
+			return;
+		}
+		if (chars.length < length) {
+			chars = new char[sb.capacity()];
+		}
+		sb.getChars(0, length, chars, 0);
+		writer.write(chars, 0, length);
+	}
+
 	@Override
 	public void flush() throws IOException {
-		if (delegate != null) {
-			delegate.flush();
+		if (! closed) {
+			writeBuffer();
+			writer.flush();
 		}
 	}
-	
+
 	@Override
 	public void close() throws IOException {
-		if (delegate != null) {
-			delegate.close();
+		if (! closed) {
+			try {
+				writeBuffer();
+			} finally {
+				closed = true;
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * Lines read from the stream, formatted by a thread of the pool
+	 */
+	private class Chunk {
+
+		final Object[][] lines = new Object[CHUNK_LINES][];
+		int linesCount;
+		StringBuilder text;
+
+		void format() {
+			StringBuilder sb = new StringBuilder(linesCount * 64);
+			for (int i = 0; i < linesCount; i++) {
+				appendLine(lines[i], sb);
+			}
+			text = sb;
 		}
 	}
-}
\ No newline at end of file
+}
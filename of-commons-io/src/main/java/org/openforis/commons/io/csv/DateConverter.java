@@ -0,0 +1,426 @@
+package org.openforis.commons.io.csv;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Immutable and thread safe replacement of a {@link java.text.SimpleDateFormat}, based on java.time.
+ *
+ * Only the {@link java.text.SimpleDateFormat} patterns made of numeric fields are supported (see {@link #forPattern(String)}):
+ * y (except yy), M and MM, d, H, m, s, S (milliseconds), Z and X (time zone offsets), besides quoted text and other characters.
+ * They are formatted as done by SimpleDateFormat and parsed following the same lenient rules of SimpleDateFormat:
+ * spaces and tabs before a field are skipped, numbers can have fewer digits than the pattern or a minus sign (not a plus sign),
+ * values out of range are rolled over (e.g. 2020-02-30 is March 1st) and trailing text is ignored.
+ * When numeric fields are adjacent (e.g. yyyyMMdd) each of them takes at most as many characters as the pattern letters,
+ * except the last one. A single y parses a two digit year within 80 years before and 20 years after the creation of the converter.
+ * Time zones are parsed only as offsets (e.g. -0800, not GMT-08:00).
+ * Dates before 1582 are in the proleptic Gregorian calendar, not in the Julian calendar as in SimpleDateFormat.
+ * Values without a time zone are in the default time zone of the JVM when the converter has been created.
+ *
+ * The last values parsed are cached, so columns with repeated dates are parsed only once per distinct value.
+ *
+ */
+class DateConverter {
+
+	private static final int CACHE_SIZE = 256;
+	private static final LocalDate EPOCH_DATE = LocalDate.of(1970, 1, 1);
+
+	private final DateTimeFormatter formatter;
+	private final Element[] elements;
+	private final ZoneId zone;
+	//two digit years are in the century starting 80 years ago, as in SimpleDateFormat
+	private final ZonedDateTime defaultCenturyStart;
+	private final CacheEntry[] cache = new CacheEntry[CACHE_SIZE];
+
+	private DateConverter(DateTimeFormatter formatter, List<Element> elements) {
+		this.zone = ZoneId.systemDefault();
+		this.formatter = formatter;
+		this.elements = elements.toArray(new Element[elements.size()]);
+		this.defaultCenturyStart = ZonedDateTime.now(zone).minusYears(80);
+	}
+
+	/**
+	 * Returns a converter for the specified {@link java.text.SimpleDateFormat} pattern,
+	 * or null if the pattern contains letters not supported (or with a different meaning in java.time),
+	 * such as yy, MMM, E, a, h, u or z.
+	 *
+	 * @throws IllegalArgumentException if the pattern is not valid
+	 */
+	static DateConverter forPattern(String pattern) {
+		DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
+		List<Element> elements = new ArrayList<Element>();
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			if (c == '\'') {
+				i = appendQuotedText(builder, elements, pattern, i);
+			} else if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+				int end = i + 1;
+				while (end < pattern.length() && pattern.charAt(end) == c) {
+					end ++;
+				}
+				if (! appendField(builder, c, end - i)) {
+					return null;
+				}
+				Element field = new Element(c, end - i);
+				Element previous = elements.isEmpty() ? null : elements.get(elements.size() - 1);
+				if (previous != null && previous.isNumeric() && field.isNumeric()) {
+					// adjacent numeric fields: the previous one cannot take the digits of this one
+					previous.maxLength = previous.count;
+				}
+				elements.add(field);
+				i = end;
+			} else {
+				builder.appendLiteral(c);
+				elements.add(new Element(String.valueOf(c)));
+				i ++;
+			}
+		}
+		return new DateConverter(builder.toFormatter(), elements);
+	}
+
+	/**
+	 * Appends the text quoted starting from the specified index (two consecutive quotes are a quote, inside or outside quoted text):
+	 * returns the index following the closing quote
+	 */
+	private static int appendQuotedText(DateTimeFormatterBuilder builder, List<Element> elements, String pattern, int start) {
+		StringBuilder text = new StringBuilder();
+		int i = start + 1;
+		if (i < pattern.length() && pattern.charAt(i) == '\'') {
+			builder.appendLiteral('\'');
+			elements.add(new Element("'"));
+			return i + 1;
+		}
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			if (c != '\'') {
+				text.append(c);
+				i ++;
+			} else if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+				text.append(c);
+				i += 2;
+			} else {
+				builder.appendLiteral(text.toString());
+				elements.add(new Element(text.toString()));
+				return i + 1;
+			}
+		}
+		throw new IllegalArgumentException("Unterminated quote in pattern " + pattern);
+	}
+
+	/**
+	 * Appends the field with the same meaning of the letter repeated the specified number of times in a SimpleDateFormat pattern:
+	 * returns false if the letter is not supported
+	 */
+	private static boolean appendField(DateTimeFormatterBuilder builder, char letter, int count) {
+		switch (letter) {
+		case 'y':
+			if (count == 2) {
+				// two digit years are interpreted differently
+				return false;
+			}
+			break;
+		case 'M':
+			if (count > 2) {
+				// month names
+				return false;
+			}
+			break;
+		case 'd':
+			return appendNumber(builder, ChronoField.DAY_OF_MONTH, count);
+		case 'H':
+			return appendNumber(builder, ChronoField.HOUR_OF_DAY, count);
+		case 'm':
+			return appendNumber(builder, ChronoField.MINUTE_OF_HOUR, count);
+		case 's':
+			return appendNumber(builder, ChronoField.SECOND_OF_MINUTE, count);
+		case 'S':
+			// milliseconds, not fraction of second as in java.time
+			if (count < 3) {
+				builder.appendValue(ChronoField.MILLI_OF_SECOND, count, 3, SignStyle.NOT_NEGATIVE);
+			} else {
+				builder.appendValue(ChronoField.MILLI_OF_SECOND, count);
+			}
+			return true;
+		case 'Z':
+			// RFC 822 offset whatever the number of letters
+			builder.appendOffset("+HHMM", "+0000");
+			return true;
+		case 'X':
+			if (count == 1 || count > 3) {
+				// a single X prints only the hours of the offset in SimpleDateFormat
+				return false;
+			}
+			break;
+		default:
+			return false;
+		}
+		StringBuilder letters = new StringBuilder(count);
+		for (int i = 0; i < count; i++) {
+			letters.append(letter);
+		}
+		builder.appendPattern(letters.toString());
+		return true;
+	}
+
+	/**
+	 * Appends a number padded to the specified number of digits
+	 */
+	private static boolean appendNumber(DateTimeFormatterBuilder builder, ChronoField field, int count) {
+		if (count == 1) {
+			builder.appendValue(field);
+		} else {
+			builder.appendValue(field, count);
+		}
+		return true;
+	}
+
+	/**
+	 * Parses the text returning a new Date
+	 *
+	 * @throws DateFormatException if the text cannot be parsed
+	 */
+	Date parse(String text) {
+		int slot = (text.hashCode() & Integer.MAX_VALUE) % CACHE_SIZE;
+		CacheEntry entry = cache[slot];
+		if (entry == null || ! entry.text.equals(text)) {
+			entry = new CacheEntry(text, parseTime(text));
+			// entries are immutable: a race between threads can only cause a value to be parsed again
+			cache[slot] = entry;
+		}
+		return new Date(entry.time);
+	}
+
+	private long parseTime(String text) {
+		// date fields missing in the pattern are the ones of 1970-01-01, as in SimpleDateFormat
+		long year = EPOCH_DATE.getYear(), month = 1, day = 1, hour = 0, minute = 0, second = 0, millis = 0;
+		boolean ambiguousYear = false;
+		ZoneOffset offset = null;
+		ParsePosition pos = new ParsePosition(0);
+		for (Element element : elements) {
+			if (element.text != null) {
+				if (! text.startsWith(element.text, pos.getIndex())) {
+					throw DateFormatException.forInputString(text);
+				}
+				pos.setIndex(pos.getIndex() + element.text.length());
+				continue;
+			}
+			skipBlanks(text, pos);
+			if (! element.isNumeric()) {
+				offset = parseOffset(text, pos, element);
+				if (offset == null) {
+					throw DateFormatException.forInputString(text);
+				}
+				continue;
+			}
+			int start = pos.getIndex();
+			Long value = parseNumber(text, pos, element.maxLength);
+			if (value == null) {
+				throw DateFormatException.forInputString(text);
+			}
+			switch (element.letter) {
+			case 'y':
+				year = value;
+				if (element.count == 1 && pos.getIndex() - start == 2 && text.charAt(start) != '-') {
+					int centuryStartYear = defaultCenturyStart.getYear();
+					ambiguousYear = value == centuryStartYear % 100;
+					year += centuryStartYear / 100 * 100 + (value < centuryStartYear % 100 ? 100 : 0);
+				}
+				break;
+			case 'M':
+				month = value;
+				break;
+			case 'd':
+				day = value;
+				break;
+			case 'H':
+				hour = value;
+				break;
+			case 'm':
+				minute = value;
+				break;
+			case 's':
+				second = value;
+				break;
+			default:
+				millis = value;
+			}
+		}
+		try {
+			LocalDateTime dateTime = EPOCH_DATE.plusYears(year - EPOCH_DATE.getYear())
+					.plusMonths(month - 1)
+					.plusDays(day - 1)
+					.atStartOfDay()
+					.plusHours(hour)
+					.plusMinutes(minute)
+					.plusSeconds(second)
+					.plus(millis, ChronoUnit.MILLIS);
+			ZonedDateTime zonedDateTime = toZonedDateTime(dateTime, offset);
+			if (ambiguousYear && zonedDateTime.isBefore(defaultCenturyStart)) {
+				zonedDateTime = toZonedDateTime(dateTime.plusYears(100), offset);
+			}
+			return zonedDateTime.toInstant().toEpochMilli();
+		} catch (DateTimeException e) {
+			throw DateFormatException.forInputString(text);
+		} catch (ArithmeticException e) {
+			throw DateFormatException.forInputString(text);
+		}
+	}
+
+	private ZonedDateTime toZonedDateTime(LocalDateTime dateTime, ZoneOffset offset) {
+		return offset == null
+				// times repeated when daylight saving time ends are in standard time, as in SimpleDateFormat
+				? dateTime.atZone(zone).withLaterOffsetAtOverlap()
+				: dateTime.atZone(offset);
+	}
+
+	private static void skipBlanks(String text, ParsePosition pos) {
+		int i = pos.getIndex();
+		while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+			i ++;
+		}
+		pos.setIndex(i);
+	}
+
+	/**
+	 * Parses an integer with an optional minus sign, made of at most the specified number of characters (if greater than 0):
+	 * returns null if there are no digits
+	 */
+	private static Long parseNumber(String text, ParsePosition pos, int maxLength) {
+		int start = pos.getIndex();
+		int end = maxLength > 0 ? Math.min(text.length(), start + maxLength) : text.length();
+		boolean negative = start < end && text.charAt(start) == '-';
+		int i = negative ? start + 1 : start;
+		int digitsStart = i;
+		long value = 0;
+		while (i < end) {
+			int digit = Character.digit(text.charAt(i), 10);
+			if (digit < 0) {
+				break;
+			}
+			if (value > (Long.MAX_VALUE - digit) / 10) {
+				return null;
+			}
+			value = value * 10 + digit;
+			i ++;
+		}
+		if (i == digitsStart) {
+			return null;
+		}
+		pos.setIndex(i);
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a time zone offset as done by SimpleDateFormat: +HHMM for Z and XX, +HH:MM for XXX, 
+	 * with the letter Z for UTC accepted only by X: returns null if the offset is not valid
+	 */
+	private static ZoneOffset parseOffset(String text, ParsePosition pos, Element element) {
+		int i = pos.getIndex();
+		if (i >= text.length()) {
+			return null;
+		}
+		char sign = text.charAt(i);
+		if (sign == 'Z' && element.letter == 'X') {
+			pos.setIndex(i + 1);
+			return ZoneOffset.UTC;
+		}
+		if (sign != '+' && sign != '-') {
+			return null;
+		}
+		int hours = parseTwoDigits(text, i + 1);
+		i += 3;
+		if (element.letter == 'X' && element.count == 3) {
+			if (i >= text.length() || text.charAt(i) != ':') {
+				return null;
+			}
+			i ++;
+		}
+		int minutes = parseTwoDigits(text, i);
+		if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+			return null;
+		}
+		pos.setIndex(i + 2);
+		int seconds = (hours * 60 + minutes) * 60;
+		return ZoneOffset.ofTotalSeconds(sign == '-' ? -seconds : seconds);
+	}
+
+	/**
+	 * Returns the number made of the two digits at the specified index or -1 if they are not digits
+	 */
+	private static int parseTwoDigits(String text, int index) {
+		if (index + 1 >= text.length()) {
+			return -1;
+		}
+		int tens = Character.digit(text.charAt(index), 10);
+		int units = Character.digit(text.charAt(index + 1), 10);
+		return tens < 0 || units < 0 ? -1 : tens * 10 + units;
+	}
+
+	String format(Date date) {
+		StringBuilder sb = new StringBuilder();
+		formatTo(date, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the formatted date to the specified builder, without creating intermediate strings
+	 */
+	void formatTo(Date date, StringBuilder sb) {
+		// Instant.ofEpochMilli works with java.sql.Date too (its toInstant() is not supported)
+		formatter.formatTo(Instant.ofEpochMilli(date.getTime()).atZone(zone), sb);
+	}
+
+	/**
+	 * Literal text or field of the pattern, used to parse values
+	 */
+	private static class Element {
+
+		final String text;
+		final char letter;
+		final int count;
+		//maximum number of characters of a numeric field followed by another numeric field, 0 if not limited
+		int maxLength;
+
+		Element(String text) {
+			this.text = text;
+			this.letter = 0;
+			this.count = 0;
+		}
+
+		Element(char letter, int count) {
+			this.text = null;
+			this.letter = letter;
+			this.count = count;
+		}
+
+		boolean isNumeric() {
+			return text == null && letter != 'Z' && letter != 'X';
+		}
+	}
+
+	private static class CacheEntry {
+
+		final String text;
+		final long time;
+
+		CacheEntry(String text, long time) {
+			this.text = text;
+			this.time = time;
+		}
+	}
+}
@@ -6,16 +6,17 @@ package org.openforis.commons.io.csv;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.usermodel.XSSFCell;
 
 /**
  * @author D. Wiell
@@ -24,7 +25,8 @@ import org.apache.poi.ss.usermodel.WorkbookFactory;
  */
 class ExcelReader extends CsvReaderDelegate {
 
-	private static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+	static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+	static final DateConverter DATE_TIME_CONVERTER = DateConverter.forPattern(DATE_TIME_FORMAT);
 
 	private Sheet sheet;
 	private int columnCount;
@@ -66,11 +68,25 @@ class ExcelReader extends CsvReaderDelegate {
 		if (cell == null) {
 			return "";
 		}
-		switch (cell.getCellType()) {
+		CellType cellType = cell.getCellType();
+		if (cellType == CellType.FORMULA) {
+			if (cell instanceof XSSFCell && ! ((XSSFCell) cell).getCTCell().isSetV()) {
+				// formula never evaluated: there is no value
+				return "";
+			}
+			// the cached result of the formula is converted like a value of the same type
+			cellType = cell.getCachedFormulaResultType();
+		}
+		switch (cellType) {
 		case NUMERIC:
 			return getNumericStringValue(cell);
 		case BOOLEAN:
 			return String.valueOf(cell.getBooleanCellValue());
+		case STRING:
+			// do not change the cell type: inline strings (written by streaming writers) would be lost
+			return cell.getStringCellValue();
+		case ERROR:
+			return FormulaError.forInt(cell.getErrorCellValue()).getString();
 		default:
 			cell.setCellType(CellType.STRING);
 			return cell.getStringCellValue();
@@ -80,16 +96,19 @@ class ExcelReader extends CsvReaderDelegate {
 	private String getNumericStringValue(Cell cell) {
 		if (DateUtil.isCellDateFormatted(cell)) {
 			Date date = cell.getDateCellValue();
-			return new SimpleDateFormat(DATE_TIME_FORMAT).format(date);
+			return DATE_TIME_CONVERTER.format(date);
 		} else {
-			double doubleVal = cell.getNumericCellValue();
-			Double doubleValObj = Double.valueOf(doubleVal);
-			if (doubleVal % 1 == 0 && doubleVal < Integer.MAX_VALUE) {
-				// values like 1.0 will be considered as integers
-				return String.valueOf(doubleValObj.intValue());
-			} else {
-				return String.valueOf(doubleVal);
-			}
+			return toNumericStringValue(cell.getNumericCellValue());
+		}
+	}
+
+	static String toNumericStringValue(double doubleVal) {
+		Double doubleValObj = Double.valueOf(doubleVal);
+		if (doubleVal % 1 == 0 && doubleVal < Integer.MAX_VALUE) {
+			// values like 1.0 will be considered as integers
+			return String.valueOf(doubleValObj.intValue());
+		} else {
+			return String.valueOf(doubleVal);
 		}
 	}
 
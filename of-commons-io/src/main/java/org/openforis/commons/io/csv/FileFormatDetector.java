@@ -0,0 +1,176 @@
+package org.openforis.commons.io.csv;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.openforis.commons.io.csv.CsvReader.Format;
+
+/**
+ * Detects the format of a file reading only its first bytes:
+ * Excel files are recognized by their signature (OLE2 for xls, ZIP for xlsx),
+ * for text files the charset is detected from the byte order mark (if any)
+ * and the separator from the most frequent candidate consistently used in the first lines.
+ * Compressed files (gzip, bzip2 or xz) are considered text files and their first bytes are decompressed.
+ *
+ */
+class FileFormatDetector {
+
+	static final int SAMPLE_SIZE = 8 * 1024;
+	static final char[] CANDIDATE_SEPARATORS = new char[] {',', ';', '\t', '|'};
+
+	private static final byte[] OLE2_SIGNATURE = new byte[] {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+	private static final byte[] ZIP_SIGNATURE = new byte[] {0x50, 0x4B, 0x03, 0x04};
+	private static final byte[] UTF_8_BOM = new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+	private static final byte[] UTF_16BE_BOM = new byte[] {(byte) 0xFE, (byte) 0xFF};
+	private static final byte[] UTF_16LE_BOM = new byte[] {(byte) 0xFF, (byte) 0xFE};
+
+	private final Format format;
+	private final String charsetName;
+	private final int bomLength;
+	private final char separator;
+
+	private FileFormatDetector(Format format, String charsetName, int bomLength, char separator) {
+		this.format = format;
+		this.charsetName = charsetName;
+		this.bomLength = bomLength;
+		this.separator = separator;
+	}
+
+	/**
+	 * Detects the format of the specified file
+	 *
+	 * @param defaultCharsetName charset used when the file has no byte order mark
+	 * @param quoteChar quote character used to ignore quoted separators
+	 */
+	static FileFormatDetector detect(File file, String defaultCharsetName, char quoteChar) throws IOException {
+		byte[] sample = new byte[SAMPLE_SIZE];
+		int length = readSample(file, sample);
+		if (Compression.detect(sample, length) != Compression.NONE) {
+			length = readSample(Compression.open(file), sample);
+		} else if (startsWith(sample, length, OLE2_SIGNATURE)) {
+			return new FileFormatDetector(Format.XLS, null, 0, CsvReader.DEFAULT_SEPARATOR);
+		} else if (startsWith(sample, length, ZIP_SIGNATURE)) {
+			return new FileFormatDetector(Format.XLSX, null, 0, CsvReader.DEFAULT_SEPARATOR);
+		}
+		String charsetName = defaultCharsetName;
+		int bomLength = 0;
+		if (startsWith(sample, length, UTF_8_BOM)) {
+			charsetName = "UTF-8";
+			bomLength = UTF_8_BOM.length;
+		} else if (startsWith(sample, length, UTF_16BE_BOM)) {
+			charsetName = "UTF-16BE";
+			bomLength = UTF_16BE_BOM.length;
+		} else if (startsWith(sample, length, UTF_16LE_BOM)) {
+			charsetName = "UTF-16LE";
+			bomLength = UTF_16LE_BOM.length;
+		}
+		String text = new String(sample, bomLength, length - bomLength, Charset.forName(charsetName));
+		// ignore the last line if the sample has been truncated
+		boolean truncated = length == SAMPLE_SIZE;
+		char separator = detectSeparator(text, quoteChar, truncated);
+		return new FileFormatDetector(Format.CSV, charsetName, bomLength, separator);
+	}
+
+	private static int readSample(File file, byte[] sample) throws IOException {
+		return readSample(new FileInputStream(file), sample);
+	}
+
+	private static int readSample(InputStream is, byte[] sample) throws IOException {
+		try {
+			int length = 0;
+			int read;
+			while (length < sample.length && (read = is.read(sample, length, sample.length - length)) != -1) {
+				length += read;
+			}
+			return length;
+		} finally {
+			is.close();
+		}
+	}
+
+	private static boolean startsWith(byte[] data, int length, byte[] prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the candidate separator that appears the same (non zero) number of times in most of the lines,
+	 * preferring the most frequent one; returns the default separator if none is found.
+	 */
+	static char detectSeparator(String text, char quoteChar, boolean ignoreLastLine) {
+		String[] lines = text.split("\r\n|\n|\r");
+		int linesCount = ignoreLastLine && lines.length > 1 ? lines.length - 1 : lines.length;
+		char result = CsvReader.DEFAULT_SEPARATOR;
+		int bestConsistentLines = 0;
+		int bestCount = 0;
+		for (char candidate : CANDIDATE_SEPARATORS) {
+			int headerCount = -1;
+			int consistentLines = 0;
+			for (int i = 0; i < linesCount; i++) {
+				String line = lines[i];
+				if (line.isEmpty()) {
+					continue;
+				}
+				int count = countOutsideQuotes(line, candidate, quoteChar);
+				if (headerCount < 0) {
+					headerCount = count;
+				}
+				if (count > 0 && count == headerCount) {
+					consistentLines ++;
+				}
+			}
+			if (consistentLines > bestConsistentLines || consistentLines == bestConsistentLines && consistentLines > 0 && headerCount > bestCount) {
+				result = candidate;
+				bestConsistentLines = consistentLines;
+				bestCount = headerCount;
+			}
+		}
+		return result;
+	}
+
+	private static int countOutsideQuotes(String line, char c, char quoteChar) {
+		int count = 0;
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char current = line.charAt(i);
+			if (current == quoteChar) {
+				quoted = ! quoted;
+			} else if (current == c && ! quoted) {
+				count ++;
+			}
+		}
+		return count;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Charset of a text file: the one specified by the byte order mark or the default one
+	 */
+	public String getCharsetName() {
+		return charsetName;
+	}
+
+	/**
+	 * Number of bytes of the byte order mark at the beginning of a text file (0 if not present)
+	 */
+	public int getBomLength() {
+		return bomLength;
+	}
+
+	public char getSeparator() {
+		return separator;
+	}
+}
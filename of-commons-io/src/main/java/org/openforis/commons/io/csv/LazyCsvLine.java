@@ -0,0 +1,74 @@
+package org.openforis.commons.io.csv;
+
+/**
+ * Line whose values are kept in the buffer of the {@link CsvTokenizer} and converted into strings (or numbers)
+ * only when read. It's valid only until the next line is read: use {@link #copy()} to keep it.
+ *
+ */
+class LazyCsvLine extends CsvLine {
+
+	private final CsvTokenizer tokenizer;
+	private final long generation;
+	private String[] values;
+
+	LazyCsvLine(CsvReader csvReader, CsvTokenizer tokenizer) {
+		super(csvReader, null);
+		this.tokenizer = tokenizer;
+		this.generation = tokenizer.getGeneration();
+	}
+
+	@Override
+	public String[] getLine() {
+		if (values == null) {
+			checkValid();
+			int count = tokenizer.getValuesCount();
+			String[] result = new String[count];
+			for (int i = 0; i < count; i++) {
+				result[i] = tokenizer.getValue(i);
+			}
+			values = result;
+		}
+		return values;
+	}
+
+	@Override
+	int valuesCount() {
+		if (values != null) {
+			return values.length;
+		}
+		checkValid();
+		return tokenizer.getValuesCount();
+	}
+
+	@Override
+	String value(int idx) {
+		if (values != null) {
+			return values[idx];
+		}
+		checkValid();
+		checkIndex(idx);
+		return tokenizer.getValue(idx);
+	}
+
+	@Override
+	CharSequence chars(int idx) {
+		if (values != null) {
+			return values[idx];
+		}
+		checkValid();
+		checkIndex(idx);
+		return tokenizer.getChars(idx);
+	}
+
+	private void checkValid() {
+		if (tokenizer.getGeneration() != generation) {
+			throw new IllegalStateException("Line no longer valid: call copy() to keep a line after reading the next one");
+		}
+	}
+
+	private void checkIndex(int idx) {
+		if (idx >= tokenizer.getValuesCount()) {
+			throw new ArrayIndexOutOfBoundsException(idx);
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package org.openforis.commons.io.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Counts the lines of a text file.
+ *
+ * Files in UTF-8 or in a single byte charset are memory-mapped and their line breaks (LF, CRLF or CR) counted
+ * looking at the bytes, without decoding them; files in other charsets are decoded by a {@link Reader}.
+ * Optionally, line breaks inside quoted values are not counted, so the result is the number of records
+ * read by {@link CsvTokenizer} (quotes and escape characters are followed by {@link CsvQuoteTracker}).
+ * The counts are cached: the file is expected not to change.
+ *
+ * For very large files, the number of lines can be estimated reading only a few samples of the file.
+ * Compressed files are decompressed and decoded while counting (and never estimated).
+ *
+ */
+class LineCounter {
+
+	static final int SAMPLE_SIZE = 64 * 1024;
+	static final int SAMPLES_COUNT = 4;
+
+	private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final File file;
+	private final Charset charset;
+	private final int bomLength;
+	private final char separator;
+	private final char quoteChar;
+	private Integer linesCount;
+	private Integer recordsCount;
+	private Boolean compressed;
+
+	LineCounter(File file, String charsetName, int bomLength, char separator, char quoteChar) {
+		if (file == null) {
+			throw new IllegalStateException("Source file not properly initialized");
+		}
+		this.file = file;
+		this.charset = Charset.forName(charsetName);
+		this.bomLength = bomLength;
+		this.separator = separator;
+		this.quoteChar = quoteChar;
+	}
+
+	/**
+	 * Returns true if the line breaks of a text in the specified charset can be found looking at single bytes
+	 * (UTF-8 and single byte charsets where the ASCII characters are encoded as in ASCII)
+	 */
+	static boolean isAsciiCompatible(Charset charset) {
+		if (! "UTF-8".equals(charset.name()) && ! (charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1)) {
+			return false;
+		}
+		byte[] ascii = new byte[128];
+		for (int i = 0; i < ascii.length; i++) {
+			ascii[i] = (byte) i;
+		}
+		String decoded = new String(ascii, charset);
+		if (decoded.length() != ascii.length) {
+			return false;
+		}
+		for (int i = 0; i < ascii.length; i++) {
+			if (decoded.charAt(i) != i) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of lines (a last line not terminated by a line break is counted too)
+	 */
+	int countLines() throws IOException {
+		if (linesCount == null) {
+			linesCount = count(false);
+		}
+		return linesCount;
+	}
+
+	/**
+	 * Returns the number of records: line breaks inside quoted values are not counted
+	 */
+	int countRecords() throws IOException {
+		if (recordsCount == null) {
+			recordsCount = count(true);
+		}
+		return recordsCount;
+	}
+
+	/**
+	 * Estimates the number of lines counting the line breaks in {@value #SAMPLES_COUNT} samples of {@value #SAMPLE_SIZE} bytes
+	 * evenly distributed in the file; if the file is small or not in an ASCII compatible charset, lines are counted.
+	 */
+	int estimateLines() throws IOException {
+		if (linesCount != null) {
+			return linesCount;
+		}
+		long dataSize = file.length() - bomLength;
+		if (dataSize <= (long) SAMPLES_COUNT * SAMPLE_SIZE || ! isAsciiCompatible(charset) || isCompressed()) {
+			return countLines();
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long lineBreaks = 0;
+			long step = (dataSize - SAMPLE_SIZE) / (SAMPLES_COUNT - 1);
+			for (int i = 0; i < SAMPLES_COUNT; i++) {
+				MappedByteBuffer sample = channel.map(MapMode.READ_ONLY, bomLength + i * step, SAMPLE_SIZE);
+				LineBreakCounter counter = new LineBreakCounter(null);
+				counter.count(sample, SAMPLE_SIZE);
+				lineBreaks += counter.lineBreaks;
+			}
+			long estimate = Math.round((double) lineBreaks * dataSize / ((long) SAMPLES_COUNT * SAMPLE_SIZE));
+			return (int) Math.min(Integer.MAX_VALUE, Math.max(1, estimate));
+		} finally {
+			channel.close();
+		}
+	}
+
+	private int count(boolean records) throws IOException {
+		long result;
+		boolean byteLevel = records ? ByteCsvTokenizer.isSupported(charset, separator, quoteChar) : isAsciiCompatible(charset);
+		if (byteLevel && ! isCompressed()) {
+			result = countBytes(records);
+		} else {
+			result = countChars(records);
+		}
+		return (int) Math.min(Integer.MAX_VALUE, result);
+	}
+
+	private boolean isCompressed() throws IOException {
+		if (compressed == null) {
+			compressed = Compression.detect(file) != Compression.NONE;
+		}
+		return compressed;
+	}
+
+	private LineBreakCounter createCounter(boolean records) {
+		return new LineBreakCounter(records ? new CsvQuoteTracker(separator, quoteChar) : null);
+	}
+
+	private long countBytes(boolean records) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long fileSize = channel.size();
+			LineBreakCounter counter = createCounter(records);
+			long position = bomLength;
+			while (position < fileSize) {
+				int windowSize = (int) Math.min(WINDOW_SIZE, fileSize - position);
+				counter.count(channel.map(MapMode.READ_ONLY, position, windowSize), windowSize);
+				position += windowSize;
+			}
+			return counter.getLinesCount();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private long countChars(boolean records) throws IOException {
+		Reader reader = CsvReaderDelegate.openReader(file, charset.name(), bomLength);
+		try {
+			char[] buffer = new char[64 * 1024];
+			LineBreakCounter counter = createCounter(records);
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				counter.count(buffer, read);
+			}
+			return counter.getLinesCount();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Counts the line breaks (LF, CRLF or CR) in consecutive portions of a text;
+	 * if a quote tracker is specified, only the line breaks terminating a record are counted
+	 */
+	private static class LineBreakCounter {
+
+		private final CsvQuoteTracker quoteTracker;
+		private long lineBreaks;
+		private boolean afterCarriageReturn;
+		private boolean terminated = true;
+
+		LineBreakCounter(CsvQuoteTracker quoteTracker) {
+			this.quoteTracker = quoteTracker;
+		}
+
+		void count(MappedByteBuffer buffer, int size) {
+			if (quoteTracker == null) {
+				for (int i = 0; i < size; i++) {
+					next(buffer.get(i));
+				}
+				return;
+			}
+			int i = 0;
+			int recordEnd;
+			while ((recordEnd = quoteTracker.findRecordEnd(buffer, i, size)) >= 0) {
+				byte b = buffer.get(recordEnd);
+				// LF of a CRLF
+				if (! (b == '\n' && recordEnd == i && afterCarriageReturn)) {
+					lineBreaks ++;
+				}
+				afterCarriageReturn = b == '\r';
+				terminated = true;
+				i = recordEnd + 1;
+			}
+			if (i < size) {
+				afterCarriageReturn = false;
+				terminated = false;
+			}
+		}
+
+		void count(char[] buffer, int length) {
+			for (int i = 0; i < length; i++) {
+				next(buffer[i]);
+			}
+		}
+
+		private void next(int c) {
+			boolean lineBreak = quoteTracker == null ? c == '\n' || c == '\r' : quoteTracker.next(c);
+			if (lineBreak && ! (c == '\n' && afterCarriageReturn)) {
+				lineBreaks ++;
+			}
+			afterCarriageReturn = lineBreak && c == '\r';
+			terminated = lineBreak;
+		}
+
+		/**
+		 * Returns the number of lines: a last line not terminated by a line break is counted too
+		 */
+		long getLinesCount() {
+			return terminated ? lineBreaks : lineBreaks + 1;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package org.openforis.commons.io.csv;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads CSV files using {@link CsvTokenizer}, without any external library.
+ * 
+ * Values are parsed as done by the opencsv CSVParser used by {@link OpenCsvReader} (see {@link CsvTokenizer}).
+ *
+ */
+class NativeCsvReader extends CsvReaderDelegate {
+
+	private final CsvTokenizer tokenizer;
+	private final LineCounter lineCounter;
+	private boolean quoteAwareSize;
+	private boolean lazyLines;
+
+	public NativeCsvReader(File file, String charsetName, int bomLength, char separator, char quoteChar, CsvReader csvReader) 
+			throws IOException {
+		super(csvReader);
+		this.lineCounter = new LineCounter(file, charsetName, bomLength, separator, quoteChar);
+		this.tokenizer = CsvTokenizer.open(file, charsetName, bomLength, separator, quoteChar);
+	}
+
+	@Override
+	public String[] readHeadersInternal() throws IOException {
+		return tokenizer.next();
+	}
+
+	@Override
+	protected String[] line(long lineIdx) throws IOException {
+		return tokenizer.next();
+	}
+
+	@Override
+	public CsvLine readNextLine() throws IOException {
+		if (! lazyLines) {
+			return super.readNextLine();
+		}
+		if (! headersRead) {
+			throw new IllegalStateException("Headers must be read first");
+		}
+		if (! tokenizer.nextView()) {
+			return null;
+		}
+		linesRead ++;
+		return new LazyCsvLine(csvReader, tokenizer);
+	}
+
+	@Override
+	public void setLazyLines(boolean lazyLines) {
+		this.lazyLines = lazyLines;
+	}
+
+	@Override
+	public void setReuseLineArrays(boolean reuseLineArrays) {
+		tokenizer.setReuseLineArrays(reuseLineArrays);
+	}
+
+	@Override
+	public void close() throws IOException {
+		tokenizer.close();
+	}
+
+	/**
+	 * Returns the number of lines including the headers
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	@Override
+	public int size() throws IOException {
+		return quoteAwareSize ? lineCounter.countRecords() : lineCounter.countLines();
+	}
+
+	@Override
+	public int estimateSize() throws IOException {
+		return quoteAwareSize ? lineCounter.countRecords() : lineCounter.estimateLines();
+	}
+
+	@Override
+	public void setQuoteAwareSize(boolean quoteAwareSize) {
+		this.quoteAwareSize = quoteAwareSize;
+	}
+}
@@ -2,9 +2,7 @@ package org.openforis.commons.io.csv;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.io.Reader;
 
 import org.openforis.commons.io.OpenForisIOUtils;
@@ -25,7 +23,7 @@ import com.opencsv.exceptions.CsvValidationException;
 class OpenCsvReader extends CsvReaderDelegate {
 
 	private final CSVReader csv;
-	private File file;
+	private LineCounter lineCounter;
 
 	public static final char DEFAULT_SEPARATOR = ',';
 	public static final char DEFAULT_QUOTE_CHARACTER = '"';
@@ -33,7 +31,7 @@ class OpenCsvReader extends CsvReaderDelegate {
 	public OpenCsvReader(File file, String charsetName, char separator, char quoteChar, CsvReader csvReader)
 			throws FileNotFoundException {
 		this(OpenForisIOUtils.toReader(file, charsetName), separator, quoteChar, csvReader);
-		this.file = file;
+		this.lineCounter = new LineCounter(file, charsetName, 0, separator, quoteChar);
 	}
 
 	@Deprecated
@@ -76,19 +74,10 @@ class OpenCsvReader extends CsvReaderDelegate {
 	 * @throws IOException
 	 */
 	public int size() throws IOException {
-		if (this.file == null) {
+		if (lineCounter == null) {
 			throw new IllegalStateException("Source file not properly initialized");
 		}
-		LineNumberReader lineReader = null;
-		try {
-			lineReader = new LineNumberReader(new FileReader(this.file));
-			lineReader.skip(Long.MAX_VALUE);
-			return lineReader.getLineNumber();
-		} catch (IOException e) {
-			throw e;
-		} finally {
-			lineReader.close();
-		}
+		return lineCounter.countLines();
 	}
 
 }
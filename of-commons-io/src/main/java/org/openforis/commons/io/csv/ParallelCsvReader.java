@@ -0,0 +1,342 @@
+package org.openforis.commons.io.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import org.openforis.commons.io.csv.CsvReader.LineHandler;
+
+/**
+ * Reads CSV files parsing them on a fork-join pool.
+ *
+ * The file is memory-mapped in large windows and split into chunks (slices of a window) ending at a line break
+ * outside quoted values: the calling thread scans the bytes following the quotes ({@link CsvQuoteTracker})
+ * while the chunks already found are tokenized on the pool, every one by a {@link ByteCsvTokenizer}.
+ * Lines can be read in the order they appear in the file or passed to a {@link LineHandler} concurrently,
+ * in no particular order; at most 2 chunks per thread are parsed ahead.
+ *
+ * Chunks are split at LF bytes, so only charsets where the byte of LF cannot be part of another character
+ * and ASCII separator and quote characters are supported (see {@link #isSupported(String, char, char)}).
+ *
+ */
+class ParallelCsvReader extends CsvReaderDelegate {
+
+	/**
+	 * Small chunks keep the number of lines parsed ahead (and not collected yet) low
+	 */
+	static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Size of the portions of the file mapped at once: chunks are cut out of them
+	 */
+	static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final File file;
+	private final LineCounter lineCounter;
+	private boolean quoteAwareSize;
+	private final Charset charset;
+	private final int bomLength;
+	private final char separator;
+	private final char quoteChar;
+	private final int chunkSize;
+	private final int windowSize;
+	private final FileChannel channel;
+	private final long fileSize;
+	private final ForkJoinPool pool;
+	private final CsvQuoteTracker quoteTracker;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	/**
+	 * Position in the file of the next chunk
+	 */
+	private long chunkStart;
+	private final Deque<ForkJoinTask<List<String[]>>> pendingChunks = new ArrayDeque<ForkJoinTask<List<String[]>>>();
+	private List<String[]> currentChunkLines;
+	private int currentChunkLineIdx;
+
+	public ParallelCsvReader(File file, String charsetName, int bomLength, char separator, char quoteChar,
+			int parallelism, CsvReader csvReader) throws IOException {
+		this(file, charsetName, bomLength, separator, quoteChar, parallelism, DEFAULT_CHUNK_SIZE, WINDOW_SIZE, csvReader);
+	}
+
+	ParallelCsvReader(File file, String charsetName, int bomLength, char separator, char quoteChar,
+			int parallelism, int chunkSize, int windowSize, CsvReader csvReader) throws IOException {
+		super(csvReader);
+		if (! isSupported(charsetName, separator, quoteChar)) {
+			throw new IllegalArgumentException(String.format("Charset %s or separator/quote characters %s %s not supported for parallel reading", 
+					charsetName, separator, quoteChar));
+		}
+		this.file = file;
+		this.charset = Charset.forName(charsetName);
+		this.bomLength = bomLength;
+		this.separator = separator;
+		this.quoteChar = quoteChar;
+		this.chunkSize = chunkSize;
+		this.windowSize = windowSize;
+		this.lineCounter = new LineCounter(file, charsetName, bomLength, separator, quoteChar);
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.fileSize = channel.size();
+		this.pool = new ForkJoinPool(parallelism);
+		this.quoteTracker = new CsvQuoteTracker(separator, quoteChar);
+		this.chunkStart = bomLength;
+	}
+
+	/**
+	 * Returns true if a file in the specified charset can be split at LF bytes
+	 * (UTF-8 and single byte charsets) looking for separator and quote characters as single bytes (ASCII characters)
+	 */
+	static boolean isSupported(String charsetName, char separator, char quoteChar) {
+		return ByteCsvTokenizer.isSupported(Charset.forName(charsetName), separator, quoteChar);
+	}
+
+	@Override
+	public String[] readHeadersInternal() throws IOException {
+		ByteBuffer chunk = nextChunk(0);
+		if (chunk == null) {
+			return null;
+		}
+		List<String[]> lines = parseChunk(chunk);
+		if (lines.size() > 1) {
+			// lines not terminated by LF (e.g. CR only)
+			currentChunkLines = lines;
+			currentChunkLineIdx = 1;
+		}
+		return lines.isEmpty() ? null : lines.get(0);
+	}
+
+	@Override
+	protected String[] line(long lineIdx) throws IOException {
+		while (currentChunkLines == null || currentChunkLineIdx >= currentChunkLines.size()) {
+			if (! nextChunk()) {
+				return null;
+			}
+		}
+		return currentChunkLines.get(currentChunkLineIdx ++);
+	}
+
+	/**
+	 * Waits for the next chunk to be parsed, submitting the following ones to the pool
+	 */
+	private boolean nextChunk() throws IOException {
+		int maxPendingChunks = pool.getParallelism() * 2;
+		ByteBuffer chunk;
+		while (pendingChunks.size() < maxPendingChunks && (chunk = nextChunk(chunkSize)) != null) {
+			final ByteBuffer bytes = chunk;
+			pendingChunks.add(pool.submit(new Callable<List<String[]>>() {
+				@Override
+				public List<String[]> call() throws Exception {
+					return parseChunk(bytes);
+				}
+			}));
+		}
+		ForkJoinTask<List<String[]>> task = pendingChunks.poll();
+		if (task == null) {
+			currentChunkLines = null;
+			return false;
+		}
+		currentChunkLines = getResult(task);
+		currentChunkLineIdx = 0;
+		return true;
+	}
+
+	/**
+	 * Parses all the lines not read yet, passing them to the handler from the threads of the pool
+	 */
+	@Override
+	public void readAllLines(final LineHandler handler) throws IOException {
+		if (! headersRead) {
+			throw new IllegalStateException("Headers must be read first");
+		}
+		// chunks already parsed (or being parsed) in order
+		while (currentChunkLines != null) {
+			while (currentChunkLineIdx < currentChunkLines.size()) {
+				String[] line = currentChunkLines.get(currentChunkLineIdx ++);
+				linesRead ++;
+				handler.handle(new CsvLine(csvReader, line));
+			}
+			ForkJoinTask<List<String[]>> task = pendingChunks.poll();
+			currentChunkLines = task == null ? null : getResult(task);
+			currentChunkLineIdx = 0;
+		}
+		// chunks are scanned while the previous ones are parsed, waiting for the oldest one when too many are pending
+		int maxPendingChunks = pool.getParallelism() * 2;
+		Deque<ForkJoinTask<Integer>> tasks = new ArrayDeque<ForkJoinTask<Integer>>();
+		try {
+			ByteBuffer chunk;
+			while ((chunk = nextChunk(chunkSize)) != null) {
+				if (tasks.size() >= maxPendingChunks) {
+					linesRead += getResult(tasks.poll());
+				}
+				final ByteBuffer bytes = chunk;
+				tasks.add(pool.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						List<String[]> lines = parseChunk(bytes);
+						for (String[] line : lines) {
+							handler.handle(new CsvLine(csvReader, line));
+						}
+						return lines.size();
+					}
+				}));
+			}
+			while (! tasks.isEmpty()) {
+				linesRead += getResult(tasks.poll());
+			}
+		} finally {
+			for (ForkJoinTask<?> task : tasks) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	private <T> T getResult(ForkJoinTask<T> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while parsing " + file.getAbsolutePath());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IOException("Error parsing " + file.getAbsolutePath() + ": " + cause.getMessage(), cause);
+			}
+		}
+	}
+
+	/**
+	 * Returns the next chunk, starting at the end of the previous one and ending after the first LF outside quoted values
+	 * found at least minLength bytes after its start (or at the end of the file); returns null at the end of the file.
+	 * The chunk is a slice of the current window: a new window is mapped only when the chunk doesn't fit in it.
+	 */
+	ByteBuffer nextChunk(int minLength) throws IOException {
+		long start = chunkStart;
+		if (start >= fileSize) {
+			return null;
+		}
+		long minEnd = Math.min(fileSize, start + minLength);
+		if (window == null || start < windowStart || minEnd > windowStart + window.capacity()) {
+			mapWindow(start, windowSize);
+		}
+		while (true) {
+			int from = (int) (start - windowStart);
+			int end = findChunkEnd(from, (int) (minEnd - windowStart));
+			if (end < 0 && windowStart + window.capacity() == fileSize) {
+				// last chunk
+				end = window.capacity();
+			}
+			if (end >= 0) {
+				chunkStart = windowStart + end;
+				ByteBuffer chunk = window.duplicate();
+				((Buffer) chunk).limit(end);
+				((Buffer) chunk).position(from);
+				return chunk.slice();
+			}
+			// the chunk goes beyond the end of the window: map a window starting from the chunk (larger, if already starting from it)
+			if (start == windowStart && window.capacity() == Integer.MAX_VALUE) {
+				throw new IOException("Line too long in " + file.getAbsolutePath() + " at position " + start);
+			}
+			long size = start == windowStart ? (long) window.capacity() * 2 : windowSize;
+			mapWindow(start, (int) Math.min(Integer.MAX_VALUE, size));
+		}
+	}
+
+	private void mapWindow(long start, int size) throws IOException {
+		windowStart = start;
+		window = channel.map(MapMode.READ_ONLY, start, Math.min(size, fileSize - start));
+	}
+
+	/**
+	 * Returns the position in the window following the first LF outside quoted values found after minEnd,
+	 * scanning the window from start (that must be the beginning of a record); returns -1 if not found.
+	 */
+	private int findChunkEnd(int start, int minEnd) {
+		MappedByteBuffer window = this.window;
+		CsvQuoteTracker quoteTracker = this.quoteTracker;
+		quoteTracker.reset();
+		int limit = window.capacity();
+		int i = start;
+		int recordEnd;
+		while ((recordEnd = quoteTracker.findRecordEnd(window, i, limit)) >= 0) {
+			if (window.get(recordEnd) == '\n' && recordEnd >= minEnd) {
+				return recordEnd + 1;
+			}
+			i = recordEnd + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Tokenizes the bytes of a chunk
+	 */
+	private List<String[]> parseChunk(ByteBuffer bytes) throws IOException {
+		byte[] data = new byte[bytes.remaining()];
+		bytes.get(data);
+		CsvTokenizer tokenizer = new ByteCsvTokenizer(data, data.length, charset, separator, quoteChar);
+		List<String[]> lines = new ArrayList<String[]>();
+		String[] line;
+		while ((line = tokenizer.next()) != null) {
+			lines.add(line);
+		}
+		return lines;
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	@Override
+	public void close() throws IOException {
+		pool.shutdownNow();
+		try {
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Returns the number of lines including the headers
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	@Override
+	public int size() throws IOException {
+		return quoteAwareSize ? lineCounter.countRecords() : lineCounter.countLines();
+	}
+
+	@Override
+	public int estimateSize() throws IOException {
+		return quoteAwareSize ? lineCounter.countRecords() : lineCounter.estimateLines();
+	}
+
+	@Override
+	public void setQuoteAwareSize(boolean quoteAwareSize) {
+		this.quoteAwareSize = quoteAwareSize;
+	}
+}
@@ -0,0 +1,157 @@
+package org.openforis.commons.io.csv;
+
+/**
+ * Parses the text values read from a file into primitive values.
+ * Values can be strings or views over a buffer of characters.
+ *
+ * Plain decimal values (the vast majority of the values in a file) are parsed directly from their characters,
+ * without creating any intermediate object; any other value is parsed by the JDK methods, with the same results.
+ * Leading and trailing whitespaces are ignored by the numeric parsers.
+ *
+ */
+class ValueParser {
+
+	private static final int MAX_DOUBLE_DIGITS = 15;
+	private static final int MAX_LONG_DIGITS = 18;
+	private static final double[] POWERS_OF_TEN = new double[MAX_DOUBLE_DIGITS + 1];
+
+	static {
+		double power = 1;
+		for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = power;
+			power *= 10;
+		}
+	}
+
+	private ValueParser() {
+	}
+
+	/**
+	 * Parses the value as a double and truncates it: the same as {@code Double.valueOf(value).intValue()}
+	 */
+	static int parseInt(CharSequence value) {
+		int start = start(value);
+		int end = end(value, start);
+		long result = parseDigits(value, start, end, 10);
+		if (result == Long.MIN_VALUE) {
+			return (int) Double.parseDouble(value.toString());
+		}
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, result));
+	}
+
+	/**
+	 * The same as {@link Long#parseLong(String)}, but ignoring leading and trailing whitespaces
+	 */
+	static long parseLong(CharSequence value) {
+		int start = start(value);
+		int end = end(value, start);
+		long result = parseDigits(value, start, end, MAX_LONG_DIGITS);
+		if (result == Long.MIN_VALUE) {
+			return Long.parseLong(value.subSequence(start, end).toString());
+		}
+		return result;
+	}
+
+	/**
+	 * The same as {@link Double#parseDouble(String)}
+	 */
+	static double parseDouble(CharSequence value) {
+		int start = start(value);
+		int end = end(value, start);
+		int i = start;
+		boolean negative = false;
+		if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+			negative = value.charAt(i) == '-';
+			i ++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; i < end; i++) {
+			char c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits ++;
+				if (fractionDigits >= 0) {
+					fractionDigits ++;
+				}
+			} else if (c == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else {
+				break;
+			}
+		}
+		if (i < end || digits == 0 || digits > MAX_DOUBLE_DIGITS) {
+			return Double.parseDouble(value.toString());
+		}
+		// both mantissa and power of ten are exact doubles: the division is correctly rounded
+		double result = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+		return negative ? -result : result;
+	}
+
+	/**
+	 * 1, T, Y and true are true, 0, F, N and false are false (ignoring the case)
+	 */
+	static boolean parseBoolean(String val) {
+		if (val.equals("1") || val.equalsIgnoreCase("T") || val.equalsIgnoreCase("Y") || val.equalsIgnoreCase("true")) {
+			return true;
+		} else if (val.equals("0") || val.equalsIgnoreCase("F") || val.equalsIgnoreCase("N") || val.equalsIgnoreCase("false")) {
+			return false;
+		} else {
+			throw new NumberFormatException("'" + val + "' is not a valid boolean value");
+		}
+	}
+
+	/**
+	 * Returns true if the value contains only whitespaces (the same as {@code value.trim().isEmpty()})
+	 */
+	static boolean isBlank(CharSequence value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses an optionally signed integer made of at most maxDigits digits;
+	 * returns Long.MIN_VALUE if the text is not in this form
+	 */
+	private static long parseDigits(CharSequence value, int start, int end, int maxDigits) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+			negative = value.charAt(i) == '-';
+			i ++;
+		}
+		if (i == end || end - i > maxDigits) {
+			return Long.MIN_VALUE;
+		}
+		long result = 0;
+		for (; i < end; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return Long.MIN_VALUE;
+			}
+			result = result * 10 + (c - '0');
+		}
+		return negative ? -result : result;
+	}
+
+	private static int start(CharSequence value) {
+		int start = 0;
+		while (start < value.length() && value.charAt(start) <= ' ') {
+			start ++;
+		}
+		return start;
+	}
+
+	private static int end(CharSequence value, int start) {
+		int end = value.length();
+		while (end > start && value.charAt(end - 1) <= ' ') {
+			end --;
+		}
+		return end;
+	}
+}
@@ -0,0 +1,361 @@
+package org.openforis.commons.io.csv;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.openforis.commons.io.csv.ExcelReader.ExcelParseException;
+
+/**
+ * Reads the first sheet of an Excel (xlsx) file parsing the sheet XML as a stream of events,
+ * one row at a time, instead of loading the whole workbook in memory like {@link ExcelReader}.
+ *
+ * Values are converted into strings following the same rules as {@link ExcelReader}:
+ * date formatted cells are converted into ISO date times and numbers without decimals into integers.
+ * Formula cells are converted according to their cached result; formulas never evaluated have an empty value.
+ * Only the shared strings table (the distinct text values) is kept in memory,
+ * so memory usage doesn't grow with the number of rows.
+ *
+ */
+class XlsxStreamingReader extends CsvReaderDelegate {
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLHelper.newXMLInputFactory();
+
+	private OPCPackage pkg;
+	private XSSFReader xssfReader;
+	private SharedStrings sharedStrings;
+	private StylesTable styles;
+	private boolean date1904;
+	private Map<Integer, Boolean> dateFormattedByStyleIndex = new HashMap<Integer, Boolean>();
+
+	private InputStream sheetInputStream;
+	private XMLStreamReader sheetReader;
+	private int columnCount;
+	private int lastRowIndex = -1;
+	private Row pendingRow;
+	private Integer size;
+
+	public XlsxStreamingReader(File file, CsvReader csvReader) throws FileNotFoundException {
+		super(csvReader);
+		try {
+			pkg = OPCPackage.open(file, PackageAccess.READ);
+			xssfReader = new XSSFReader(pkg);
+			sharedStrings = xssfReader.getSharedStringsTable();
+			styles = xssfReader.getStylesTable();
+			date1904 = readDate1904();
+			sheetInputStream = openFirstSheet();
+			sheetReader = XML_INPUT_FACTORY.createXMLStreamReader(sheetInputStream);
+		} catch (Exception e) {
+			closeQuietly();
+			throw new ExcelParseException("Failed to parse " + file.getAbsolutePath() + " as Excel", e);
+		}
+	}
+
+	private InputStream openFirstSheet() throws Exception {
+		return xssfReader.getSheetsData().next();
+	}
+
+	private boolean readDate1904() throws Exception {
+		InputStream is = xssfReader.getWorkbookData();
+		XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && "workbookPr".equals(reader.getLocalName())) {
+					String value = reader.getAttributeValue(null, "date1904");
+					return "1".equals(value) || "true".equals(value);
+				}
+			}
+			return false;
+		} finally {
+			reader.close();
+			is.close();
+		}
+	}
+
+	@Override
+	public String[] readHeadersInternal() throws IOException {
+		Row row = nextRow(-1);
+		if (row == null) {
+			return null;
+		}
+		if (row.index != 0) {
+			// headers row missing
+			pendingRow = row;
+			return new String[0];
+		}
+		// consider only the first N columns, where N is the number of cells defined, like ExcelReader does
+		columnCount = row.physicalCellsCount;
+		return Arrays.copyOf(row.values, columnCount);
+	}
+
+	@Override
+	public void readHeaders() throws IOException {
+		super.readHeaders();
+		columnCount = getFieldNames() == null ? 0 : getFieldNames().size();
+	}
+
+	@Override
+	protected String[] line(long lineIdx) throws IOException {
+		Row row;
+		if (pendingRow == null) {
+			row = nextRow(columnCount);
+		} else {
+			row = pendingRow;
+			pendingRow = null;
+		}
+		if (row == null || row.index != lineIdx + 1) {
+			// missing row: stop reading, like ExcelReader does
+			return null;
+		}
+		return row.values;
+	}
+
+	/**
+	 * Parses the next row element of the sheet
+	 *
+	 * @param width number of values to extract; if less than 0, all the values will be extracted
+	 */
+	private Row nextRow(int width) throws IOException {
+		try {
+			if (! moveToNextRow()) {
+				return null;
+			}
+			String rowRef = sheetReader.getAttributeValue(null, "r");
+			int rowIndex = rowRef == null ? lastRowIndex + 1 : Integer.parseInt(rowRef) - 1;
+			lastRowIndex = rowIndex;
+
+			List<String> values = new ArrayList<String>(width < 0 ? 16 : width);
+			int physicalCellsCount = 0;
+			int colIdx = -1;
+			while (sheetReader.hasNext()) {
+				int event = sheetReader.next();
+				if (event == XMLStreamConstants.START_ELEMENT && "c".equals(sheetReader.getLocalName())) {
+					String cellRef = sheetReader.getAttributeValue(null, "r");
+					colIdx = cellRef == null ? colIdx + 1 : extractColumnIndex(cellRef);
+					String type = sheetReader.getAttributeValue(null, "t");
+					String style = sheetReader.getAttributeValue(null, "s");
+					String value = readCellValue(type, style);
+					physicalCellsCount ++;
+					if (width < 0 || colIdx < width) {
+						while (values.size() < colIdx) {
+							values.add("");
+						}
+						values.add(value);
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT && "row".equals(sheetReader.getLocalName())) {
+					break;
+				}
+			}
+			while (values.size() < width) {
+				values.add("");
+			}
+			return new Row(rowIndex, values.toArray(new String[values.size()]), physicalCellsCount);
+		} catch (XMLStreamException e) {
+			throw new IOException("Error parsing Excel sheet: " + e.getMessage(), e);
+		}
+	}
+
+	private boolean moveToNextRow() throws XMLStreamException {
+		while (sheetReader.hasNext()) {
+			int event = sheetReader.next();
+			if (event == XMLStreamConstants.START_ELEMENT && "row".equals(sheetReader.getLocalName())) {
+				return true;
+			} else if (event == XMLStreamConstants.END_ELEMENT && "sheetData".equals(sheetReader.getLocalName())) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the content of the current cell element and converts it into a string
+	 */
+	private String readCellValue(String type, String style) throws XMLStreamException {
+		String value = null;
+		StringBuilder inlineValue = null;
+		while (sheetReader.hasNext()) {
+			int event = sheetReader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = sheetReader.getLocalName();
+				if ("v".equals(name)) {
+					value = sheetReader.getElementText();
+				} else if ("t".equals(name)) {
+					// inline string (possibly split into runs)
+					if (inlineValue == null) {
+						inlineValue = new StringBuilder();
+					}
+					inlineValue.append(sheetReader.getElementText());
+				} else if ("rPh".equals(name)) {
+					// phonetic run: not part of the value
+					skipElement();
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT && "c".equals(sheetReader.getLocalName())) {
+				break;
+			}
+		}
+		if ("inlineStr".equals(type)) {
+			return inlineValue == null ? "" : inlineValue.toString();
+		}
+		if (value == null || value.isEmpty()) {
+			return "";
+		}
+		if (type == null || "n".equals(type)) {
+			return toNumericStringValue(Double.parseDouble(value), style);
+		} else if ("s".equals(type)) {
+			return sharedStrings.getItemAt(Integer.parseInt(value)).getString();
+		} else if ("b".equals(type)) {
+			return String.valueOf("1".equals(value) || "true".equalsIgnoreCase(value));
+		} else {
+			// formula string result (str), error (e) or ISO date (d)
+			return value;
+		}
+	}
+
+	private void skipElement() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && sheetReader.hasNext()) {
+			int event = sheetReader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth ++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth --;
+			}
+		}
+	}
+
+	private String toNumericStringValue(double doubleVal, String style) {
+		if (style != null && isDateFormatted(Integer.parseInt(style)) && DateUtil.isValidExcelDate(doubleVal)) {
+			return ExcelReader.DATE_TIME_CONVERTER.format(DateUtil.getJavaDate(doubleVal, date1904));
+		} else {
+			return ExcelReader.toNumericStringValue(doubleVal);
+		}
+	}
+
+	private boolean isDateFormatted(int styleIndex) {
+		Boolean result = dateFormattedByStyleIndex.get(styleIndex);
+		if (result == null) {
+			XSSFCellStyle cellStyle = styles == null || styleIndex >= styles.getNumCellStyles() ? null : styles.getStyleAt(styleIndex);
+			result = cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+			dateFormattedByStyleIndex.put(styleIndex, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Extracts the 0 based column index from a cell reference (e.g. "AB12" = 27)
+	 */
+	static int extractColumnIndex(String cellRef) {
+		int result = 0;
+		for (int i = 0; i < cellRef.length(); i++) {
+			char c = cellRef.charAt(i);
+			if (c < 'A' || c > 'Z') {
+				break;
+			}
+			result = result * 26 + (c - 'A' + 1);
+		}
+		return result - 1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closeQuietly();
+	}
+
+	private void closeQuietly() {
+		if (sheetReader != null) {
+			try {
+				sheetReader.close();
+			} catch (XMLStreamException e) {
+				// ignore it
+			}
+		}
+		if (sheetInputStream != null) {
+			try {
+				sheetInputStream.close();
+			} catch (IOException e) {
+				// ignore it
+			}
+		}
+		if (pkg != null) {
+			// opened in read only mode: discard any change
+			pkg.revert();
+		}
+	}
+
+	/**
+	 * Returns the number of lines including the headers
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	@Override
+	public int size() throws IOException {
+		if (size == null) {
+			size = countRows();
+		}
+		return size;
+	}
+
+	private int countRows() throws IOException {
+		InputStream is = null;
+		XMLStreamReader reader = null;
+		try {
+			is = openFirstSheet();
+			reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+			int count = 0;
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && "row".equals(reader.getLocalName())) {
+					count ++;
+				}
+			}
+			return count;
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Error counting Excel rows: " + e.getMessage(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// ignore it
+				}
+			}
+			if (is != null) {
+				is.close();
+			}
+		}
+	}
+
+	private static class Row {
+
+		int index;
+		String[] values;
+		int physicalCellsCount;
+
+		Row(int index, String[] values, int physicalCellsCount) {
+			this.index = index;
+			this.values = values;
+			this.physicalCellsCount = physicalCellsCount;
+		}
+	}
+}
@@ -9,22 +9,61 @@ import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.openforis.commons.io.flat.Field;
 import org.openforis.commons.io.flat.Field.Type;
 import org.openforis.commons.io.flat.FlatDataWriter;
 
+/**
+ * Writes flat values into an Excel (xlsx) file.
+ * 
+ * By default the whole workbook is kept in memory and written on {@link #close()}.
+ * In streaming mode only the last rows (a window of {@code rowAccessWindowSize} rows) are kept in memory,
+ * older rows are flushed to a temporary file, so memory usage doesn't depend on the number of rows written.
+ *
+ */
 public class ExcelFlatValuesWriter extends FlatDataWriter {
 
+	public static final int DEFAULT_ROW_ACCESS_WINDOW_SIZE = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+
 	private static final int IMAGE_COLUMN_WIDTH = 4000;
 	private static final short IMAGE_ROW_HEIGHT = 2000;
 
-	private Workbook workbook = new XSSFWorkbook();
-	private Sheet sheet = workbook.createSheet("sheet1");
+	private final boolean streaming;
+	private Workbook workbook;
+	private Sheet sheet;
 	private OutputStream os;
 
 	public ExcelFlatValuesWriter(OutputStream output) throws UnsupportedEncodingException {
+		this(output, false);
+	}
+
+	/**
+	 * @param output
+	 * @param streaming if true, rows are flushed to a temporary file when they exceed the default window size
+	 * ({@value #DEFAULT_ROW_ACCESS_WINDOW_SIZE} rows)
+	 */
+	public ExcelFlatValuesWriter(OutputStream output, boolean streaming) throws UnsupportedEncodingException {
+		this(output, streaming ? DEFAULT_ROW_ACCESS_WINDOW_SIZE : -1);
+	}
+
+	/**
+	 * @param output
+	 * @param rowAccessWindowSize number of rows kept in memory (streaming mode); 
+	 * if less or equal to 0, the whole workbook is kept in memory
+	 */
+	public ExcelFlatValuesWriter(OutputStream output, int rowAccessWindowSize) throws UnsupportedEncodingException {
 		this.os = output;
+		this.streaming = rowAccessWindowSize > 0;
+		if (streaming) {
+			SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(rowAccessWindowSize);
+			streamingWorkbook.setCompressTempFiles(true);
+			this.workbook = streamingWorkbook;
+		} else {
+			this.workbook = new XSSFWorkbook();
+		}
+		this.sheet = workbook.createSheet("sheet1");
 	}
 
 	@Override
@@ -71,9 +110,21 @@ public class ExcelFlatValuesWriter extends FlatDataWriter {
 	@Override
 	public void close() throws IOException {
 		if (workbook != null) {
-			workbook.write(os);
-			workbook.close();
+			try {
+				workbook.write(os);
+			} finally {
+				workbook.close();
+				if (streaming) {
+					// delete temporary files
+					((SXSSFWorkbook) workbook).dispose();
+				}
+				workbook = null;
+			}
 		}
 	}
 
+	public boolean isStreaming() {
+		return streaming;
+	}
+
 }
@@ -10,6 +10,7 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.util.Units;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public abstract class ExcelPictures {
@@ -57,7 +58,7 @@ public abstract class ExcelPictures {
 		// calculate the horizontal center position
 		int horCenterPosPx = Math.round(columnWidthPx / 2f - pictWidthPx * scale / 2f);
 		// set the horizontal center position as Dx1 of anchor
-		if (wb instanceof XSSFWorkbook) {
+		if (wb instanceof XSSFWorkbook || wb instanceof SXSSFWorkbook) {
 			anchor.setDx1(horCenterPosPx * Units.EMU_PER_PIXEL); // in unit EMU for XSSF
 		} else if (wb instanceof HSSFWorkbook) {
 			// see
@@ -84,7 +85,7 @@ public abstract class ExcelPictures {
 		// set the vertical center position as Row1 plus Dy1 of anchor
 		if (row1 != null) {
 			anchor.setRow1(row1);
-			if (wb instanceof XSSFWorkbook) {
+			if (wb instanceof XSSFWorkbook || wb instanceof SXSSFWorkbook) {
 				anchor.setDy1(Math.round(vertCenterPosPx - rowsHeightPx) * Units.EMU_PER_PIXEL); // in unit EMU for XSSF
 			} else if (wb instanceof HSSFWorkbook) {
 				// see
@@ -0,0 +1,168 @@
+package org.openforis.commons.io.flat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reusable batch of rows stored by column, filled by {@link FlatDataStream#nextBatch(ColumnBatch)}.
+ *
+ * Every column is identified by a field: its name selects the column of the stream to read
+ * and its type the array where values are stored:
+ * <ul>
+ * <li>INTEGER: long values ({@link #getLongs(int)})</li>
+ * <li>DECIMAL: double values ({@link #getDoubles(int)})</li>
+ * <li>DATE and TIME: milliseconds since the epoch ({@link #getLongs(int)})</li>
+ * <li>STRING: string values ({@link #getStrings(int)})</li>
+ * </ul>
+ * Missing values are marked in a bitmap for every column ({@link #isNull(int, int)}).
+ * Only the first {@link #getRowCount()} elements of the arrays are valid: arrays are reused by the next batch.
+ *
+ */
+public class ColumnBatch {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final List<Field> fields;
+	private final Field.Type[] types;
+	private final int capacity;
+	private final long[][] longs;
+	private final double[][] doubles;
+	private final String[][] strings;
+	private final long[][] nulls;
+	private int rowCount;
+
+	public ColumnBatch(List<Field> fields) {
+		this(fields, DEFAULT_CAPACITY);
+	}
+
+	public ColumnBatch(List<Field> fields, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be greater than 0");
+		}
+		int columnCount = fields.size();
+		this.fields = Collections.unmodifiableList(new ArrayList<Field>(fields));
+		this.capacity = capacity;
+		this.types = new Field.Type[columnCount];
+		this.longs = new long[columnCount][];
+		this.doubles = new double[columnCount][];
+		this.strings = new String[columnCount][];
+		this.nulls = new long[columnCount][(capacity + 63) / 64];
+		for (int i = 0; i < columnCount; i++) {
+			Field field = fields.get(i);
+			Field.Type type = field.getType();
+			switch (type) {
+			case INTEGER:
+			case DATE:
+			case TIME:
+				longs[i] = new long[capacity];
+				break;
+			case DECIMAL:
+				doubles[i] = new double[capacity];
+				break;
+			case STRING:
+				strings[i] = new String[capacity];
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported type " + type + " for field " + field.getName());
+			}
+			types[i] = type;
+		}
+	}
+
+	/**
+	 * Removes all the rows
+	 */
+	public void clear() {
+		for (long[] columnNulls : nulls) {
+			Arrays.fill(columnNulls, 0L);
+		}
+		for (String[] columnStrings : strings) {
+			if (columnStrings != null) {
+				// do not retain the values of the previous batch
+				Arrays.fill(columnStrings, 0, rowCount, null);
+			}
+		}
+		rowCount = 0;
+	}
+
+	public void setLong(int column, int row, long value) {
+		longs[column][row] = value;
+	}
+
+	public void setDouble(int column, int row, double value) {
+		doubles[column][row] = value;
+	}
+
+	public void setString(int column, int row, String value) {
+		strings[column][row] = value;
+	}
+
+	public void setNull(int column, int row) {
+		nulls[column][row >>> 6] |= 1L << row;
+	}
+
+	public boolean isNull(int column, int row) {
+		return (nulls[column][row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Returns the values of an INTEGER, DATE or TIME column
+	 */
+	public long[] getLongs(int column) {
+		return checkType(longs[column], column);
+	}
+
+	/**
+	 * Returns the values of a DECIMAL column
+	 */
+	public double[] getDoubles(int column) {
+		return checkType(doubles[column], column);
+	}
+
+	/**
+	 * Returns the values of a STRING column
+	 */
+	public String[] getStrings(int column) {
+		return checkType(strings[column], column);
+	}
+
+	private <A> A checkType(A values, int column) {
+		if (values == null) {
+			throw new IllegalArgumentException("Column " + fields.get(column).getName() + " is of type " + types[column]);
+		}
+		return values;
+	}
+
+	public Field.Type getType(int column) {
+		return types[column];
+	}
+
+	public List<Field> getFields() {
+		return fields;
+	}
+
+	public int getColumnCount() {
+		return types.length;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public void setRowCount(int rowCount) {
+		if (rowCount < 0 || rowCount > capacity) {
+			throw new IllegalArgumentException("Invalid row count: " + rowCount);
+		}
+		this.rowCount = rowCount;
+	}
+
+	public boolean isEmpty() {
+		return rowCount == 0;
+	}
+}
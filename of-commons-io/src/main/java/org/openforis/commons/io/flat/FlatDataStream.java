@@ -1,6 +1,7 @@
 package org.openforis.commons.io.flat;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.List;
 
 
@@ -13,4 +14,62 @@ public interface FlatDataStream {
 	
 	FlatRecord nextRecord() throws IOException;
 	
+	/**
+	 * Clears the batch and fills it with the next records (at most {@link ColumnBatch#getCapacity()}),
+	 * reading only the columns of the batch and converting their values into the types of its fields.
+	 * 
+	 * By default records are read one at a time by {@link #nextRecord()} and their values taken by index,
+	 * following the order of {@link #getFields()}; implementations can fill the batch without creating the records.
+	 * 
+	 * @return the number of records read (0 if there are no more records)
+	 * @throws IllegalArgumentException if a column of the batch is not a field of the stream
+	 */
+	default int nextBatch(ColumnBatch batch) throws IOException {
+		List<Field> fields = getFields();
+		int columnCount = batch.getColumnCount();
+		int[] sourceIndexes = new int[columnCount];
+		for (int col = 0; col < columnCount; col++) {
+			String name = batch.getFields().get(col).getName();
+			sourceIndexes[col] = -1;
+			for (int i = 0; i < fields.size(); i++) {
+				if (fields.get(i).getName().equals(name)) {
+					sourceIndexes[col] = i;
+					break;
+				}
+			}
+			if (sourceIndexes[col] < 0) {
+				throw new IllegalArgumentException("Column not found: " + name);
+			}
+		}
+		batch.clear();
+		int row = 0;
+		FlatRecord record;
+		while (row < batch.getCapacity() && (record = nextRecord()) != null) {
+			for (int col = 0; col < columnCount; col++) {
+				int idx = sourceIndexes[col];
+				if (record.isMissing(idx)) {
+					batch.setNull(col, row);
+					continue;
+				}
+				switch (batch.getType(col)) {
+				case INTEGER:
+					batch.setLong(col, row, record.getLong(idx, 0));
+					break;
+				case DECIMAL:
+					batch.setDouble(col, row, record.getDouble(idx, 0));
+					break;
+				case DATE:
+				case TIME:
+					batch.setLong(col, row, record.getValue(idx, Date.class).getTime());
+					break;
+				default:
+					batch.setString(col, row, record.getValue(idx, String.class));
+				}
+			}
+			row++;
+		}
+		batch.setRowCount(row);
+		return row;
+	}
+	
 }
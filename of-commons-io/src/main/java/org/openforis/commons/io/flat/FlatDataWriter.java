@@ -34,6 +34,28 @@ public abstract class FlatDataWriter extends CsvProcessor implements Closeable {
 		}
 	}
 
+	/**
+	 * Writes all the records of the stream like {@link #writeAll(FlatDataStream)},
+	 * formatting them on {@code parallelism} threads (at most {@code parallelism * 2} chunks of records pending)
+	 * 
+	 * @see #writeAll(FlatDataStream, int, int)
+	 */
+	public void writeAll(FlatDataStream in, int parallelism) throws IOException {
+		writeAll(in, parallelism, parallelism * 2);
+	}
+
+	/**
+	 * Writes all the records of the stream like {@link #writeAll(FlatDataStream)}: writers supporting it
+	 * format chunks of records on {@code parallelism} threads, while records are read and written in order by the calling thread;
+	 * other writers write the records sequentially.
+	 * 
+	 * @param parallelism number of threads formatting the records
+	 * @param maxPendingChunks maximum number of chunks read but not written yet (limits the memory used)
+	 */
+	public void writeAll(FlatDataStream in, int parallelism, int maxPendingChunks) throws IOException {
+		writeAll(in);
+	}
+
 	public abstract void flush() throws IOException;
 	
 	@Override
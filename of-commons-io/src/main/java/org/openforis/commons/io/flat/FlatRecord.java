@@ -25,5 +25,79 @@ public interface FlatRecord {
 	
 	boolean isEmpty();
 	
+	/**
+	 * Returns the value at the specified index as an int (decimals are truncated) 
+	 * or missingValue if the value is missing or blank.
+	 * Implementations can override it to parse the value without boxing it.
+	 * 
+	 * @throws NumberFormatException if the value is not a valid number
+	 */
+	default int getInt(int idx, int missingValue) {
+		Integer value = getValue(idx, Integer.class);
+		return value == null ? missingValue : value;
+	}
+	
+	/**
+	 * Same as {@link #getInt(int, int)}; an unknown name is handled as done by {@link #getValue(String, Class)}
+	 */
+	default int getInt(String name, int missingValue) {
+		Integer value = getValue(name, Integer.class);
+		return value == null ? missingValue : value;
+	}
+	
+	/**
+	 * Returns the value at the specified index as a long or missingValue if the value is missing or blank
+	 * 
+	 * @throws NumberFormatException if the value is not a valid integer number
+	 */
+	default long getLong(int idx, long missingValue) {
+		Long value = getValue(idx, Long.class);
+		return value == null ? missingValue : value;
+	}
+	
+	/**
+	 * Same as {@link #getLong(int, long)}; an unknown name is handled as done by {@link #getValue(String, Class)}
+	 */
+	default long getLong(String name, long missingValue) {
+		Long value = getValue(name, Long.class);
+		return value == null ? missingValue : value;
+	}
+	
+	/**
+	 * Returns the value at the specified index as a double or missingValue if the value is missing or blank
+	 * 
+	 * @throws NumberFormatException if the value is not a valid number
+	 */
+	default double getDouble(int idx, double missingValue) {
+		Double value = getValue(idx, Double.class);
+		return value == null ? missingValue : value;
+	}
+	
+	/**
+	 * Same as {@link #getDouble(int, double)}; an unknown name is handled as done by {@link #getValue(String, Class)}
+	 */
+	default double getDouble(String name, double missingValue) {
+		Double value = getValue(name, Double.class);
+		return value == null ? missingValue : value;
+	}
+	
+	/**
+	 * Returns the value at the specified index as a boolean or missingValue if the value is missing or blank
+	 * 
+	 * @throws NumberFormatException if the value is not a valid boolean
+	 */
+	default boolean getBoolean(int idx, boolean missingValue) {
+		Boolean value = getValue(idx, Boolean.class);
+		return value == null ? missingValue : value;
+	}
+	
+	/**
+	 * Same as {@link #getBoolean(int, boolean)}; an unknown name is handled as done by {@link #getValue(String, Class)}
+	 */
+	default boolean getBoolean(String name, boolean missingValue) {
+		Boolean value = getValue(name, Boolean.class);
+		return value == null ? missingValue : value;
+	}
+	
 	<T> T getValue(String string, Class<T> type, T object);
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package org.openforis.commons.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+	@Test
+	public void testCompressedBlocks() throws IOException {
+		byte[] data = randomText(300000);
+		for (int parallelism : new int[] {1, 3}) {
+			for (int blockSize : new int[] {97, 1000, 64 * 1024, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE}) {
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+				ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, parallelism, blockSize);
+				// single bytes and arrays crossing the blocks
+				out.write(data, 0, 10);
+				out.write(data[10]);
+				out.write(data, 11, data.length - 11);
+				out.close();
+				assertArrayEquals(parallelism + " threads, block size " + blockSize, data, decompress(compressed.toByteArray()));
+			}
+		}
+	}
+
+	@Test
+	public void testFlush() throws IOException {
+		byte[] data = randomText(100000);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 2, 16 * 1024);
+		out.write(data, 0, 5000);
+		out.flush();
+		// the data written so far can be read
+		assertArrayEquals(Arrays.copyOf(data, 5000), decompress(compressed.toByteArray()));
+		out.write(data, 5000, data.length - 5000);
+		out.close();
+		assertArrayEquals(data, decompress(compressed.toByteArray()));
+	}
+
+	/**
+	 * An empty stream is written as an empty gzip member
+	 */
+	@Test
+	public void testEmpty() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new ParallelGzipOutputStream(compressed, 2).close();
+		assertEquals(0, decompress(compressed.toByteArray()).length);
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterClose() throws IOException {
+		ParallelGzipOutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream(), 2);
+		out.close();
+		out.write(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBlockSize() {
+		new ParallelGzipOutputStream(new ByteArrayOutputStream(), 2, 0);
+	}
+
+	private static byte[] randomText(int length) {
+		Random random = new Random(0);
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (random.nextInt(10) == 0 ? '\n' : 'a' + random.nextInt(26));
+		}
+		return data;
+	}
+
+	private static byte[] decompress(byte[] compressed) throws IOException {
+		// GZIPInputStream reads concatenated members
+		InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+}
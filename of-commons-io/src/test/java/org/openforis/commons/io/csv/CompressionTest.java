@@ -0,0 +1,133 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openforis.commons.io.ParallelGzipOutputStream;
+
+public class CompressionTest {
+
+	private static final byte[] BOM = new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDetect() throws IOException {
+		byte[] content = csv(10).getBytes(StandardCharsets.UTF_8);
+		for (Compression compression : Compression.values()) {
+			assertEquals(compression, Compression.detect(write(compression, content)));
+		}
+		assertEquals(Compression.NONE, Compression.detect(folder.newFile()));
+		// bzip2 signature without a valid block size
+		assertEquals(Compression.NONE, Compression.detect("BZh0".getBytes(StandardCharsets.US_ASCII), 4));
+	}
+
+	@Test
+	public void testOpen() throws IOException {
+		byte[] content = csv(10000).getBytes(StandardCharsets.UTF_8);
+		for (Compression compression : Compression.values()) {
+			assertArrayEquals(compression.name(), content, read(write(compression, content)));
+		}
+	}
+
+	/**
+	 * Files made of several gzip members are read entirely
+	 */
+	@Test
+	public void testConcatenatedMembers() throws IOException {
+		byte[] content = csv(100000).getBytes(StandardCharsets.UTF_8);
+		File file = folder.newFile();
+		OutputStream out = new ParallelGzipOutputStream(new FileOutputStream(file), 2, 64 * 1024);
+		out.write(content);
+		out.close();
+		assertArrayEquals(content, read(file));
+	}
+
+	@Test
+	public void testReadCompressedCsv() throws IOException {
+		byte[] content = csv(5000).getBytes(StandardCharsets.UTF_8);
+		byte[] withBom = new byte[BOM.length + content.length];
+		System.arraycopy(BOM, 0, withBom, 0, BOM.length);
+		System.arraycopy(content, 0, withBom, BOM.length, content.length);
+		for (Compression compression : new Compression[] {Compression.GZIP, Compression.BZIP2, Compression.XZ}) {
+			CsvReader reader = new CsvReader(write(compression, withBom));
+			try {
+				reader.readHeaders();
+				assertEquals(compression.name(), "id", reader.getColumnNames().get(0));
+				// lines counted while decompressing, headers included
+				assertEquals(5001, reader.size());
+				assertEquals(5001, reader.estimateSize());
+				for (int i = 0; i < 5000; i++) {
+					CsvLine line = reader.readNextLine();
+					assertEquals(Integer.valueOf(i), line.getValue("id", Integer.class));
+					assertEquals("name, " + i, line.getValue("name", String.class));
+				}
+				assertNull(reader.readNextLine());
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	private File write(Compression compression, byte[] content) throws IOException {
+		File file = folder.newFile();
+		OutputStream out = new FileOutputStream(file);
+		switch (compression) {
+		case GZIP:
+			out = new GZIPOutputStream(out);
+			break;
+		case BZIP2:
+			out = new BZip2CompressorOutputStream(out);
+			break;
+		case XZ:
+			out = new XZCompressorOutputStream(out);
+			break;
+		default:
+		}
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static byte[] read(File file) throws IOException {
+		InputStream is = Compression.open(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+
+	private static String csv(int lines) {
+		StringBuilder sb = new StringBuilder("id,name\n");
+		for (int i = 0; i < lines; i++) {
+			sb.append(i).append(",\"name, ").append(i).append("\"\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,189 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvLineTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testColumnIndex() throws IOException {
+		CsvLine line = readLines("id,name,notes\n1,a,\n").get(0);
+		assertEquals(Integer.valueOf(0), line.getColumnIndex("id"));
+		assertEquals(Integer.valueOf(2), line.getColumnIndex("notes"));
+		assertNull(line.getColumnIndex("missing"));
+	}
+
+	@Test
+	public void testValuesByName() throws IOException {
+		CsvLine line = readLines("id,name,notes\n1,a,NA\n").get(0);
+		assertEquals(Integer.valueOf(1), line.getValue("id", Integer.class));
+		assertEquals("a", line.getValue("name", String.class));
+		assertNull(line.getValue("notes", String.class));
+		assertFalse(line.isMissing("name"));
+		assertTrue(line.isMissing("notes"));
+		// unknown columns are missing
+		assertTrue(line.isMissing("missing"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownColumnValue() throws IOException {
+		readLines("id\n1\n").get(0).getValue("missing", String.class);
+	}
+
+	@Test
+	public void testPrimitiveValues() throws IOException {
+		for (boolean lazyLines : new boolean[] {false, true}) {
+			CsvReader reader = new CsvReader(write("i,l,d,b,blank\n12.7,12345678901,-1.5e3,Y, \n"));
+			try {
+				reader.setLazyLines(lazyLines);
+				reader.readHeaders();
+				CsvLine line = reader.readNextLine();
+				assertEquals(12, line.getInt("i", -1));
+				assertEquals(12345678901L, line.getLong(1, -1));
+				assertEquals(-1500, line.getDouble("d", 0), 0);
+				assertTrue(line.getBoolean("b", false));
+				assertEquals(-1, line.getInt("blank", -1));
+				assertEquals(-1, line.getLong("blank", -1));
+				assertEquals(-1, line.getDouble("blank", -1), 0);
+				assertTrue(line.getBoolean("blank", true));
+				// index out of the line
+				assertEquals(-1, line.getInt(10, -1));
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testUnknownColumnPrimitiveValues() throws IOException {
+		CsvLine line = readLines("id\n1\n").get(0);
+		try {
+			line.getInt("missing", -1);
+			fail("Unknown column not detected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			line.getLong("missing", -1);
+			fail("Unknown column not detected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			line.getDouble("missing", -1);
+			fail("Unknown column not detected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			line.getBoolean("missing", false);
+			fail("Unknown column not detected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testLazyLines() throws IOException {
+		CsvReader reader = new CsvReader(write("id,name,notes\n1,\"a, \"\"b\"\"\",\n2,c,NA\n3,d,e\n"));
+		try {
+			reader.setLazyLines(true);
+			reader.readHeaders();
+			CsvLine line = reader.readNextLine();
+			assertEquals(Integer.valueOf(1), line.getValue("id", Integer.class));
+			assertEquals("a, \"b\"", line.getValue("name", String.class));
+			assertTrue(line.isMissing("notes"));
+			CsvLine copy = line.copy();
+			assertArrayEquals(new String[] {"1", "a, \"b\"", ""}, copy.getLine());
+
+			CsvLine next = reader.readNextLine();
+			assertEquals("c", next.getValue("name", String.class));
+			assertTrue(next.isMissing("notes"));
+			// the copy is still valid
+			assertEquals("a, \"b\"", copy.getValue("name", String.class));
+
+			assertArrayEquals(new String[] {"3", "d", "e"}, reader.readNextLine().getLine());
+			try {
+				next.getValue("name", String.class);
+				fail("Line read before the last one still accessible");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			assertNull(reader.readNextLine());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testColumnHandles() throws IOException {
+		File file = write("id,name,notes\n1,a,x\n2,b,\n");
+		CsvReader reader = new CsvReader(file);
+		try {
+			reader.readHeaders();
+			assertEquals(1, reader.getFieldIndex("name"));
+			assertEquals(-1, reader.getFieldIndex("missing"));
+			CsvColumn name = reader.getColumn("name");
+			CsvColumn notes = reader.getColumn("notes");
+			assertEquals(1, name.getIndex());
+			CsvLine line = reader.readNextLine();
+			assertEquals("a", name.getValue(line));
+			assertEquals("x", notes.getValue(line));
+			line = reader.readNextLine();
+			assertEquals("b", name.getValue(line));
+			assertTrue(notes.isMissing(line));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownColumnHandle() throws IOException {
+		CsvReader reader = new CsvReader(write("id\n1\n"));
+		try {
+			reader.readHeaders();
+			reader.getColumn("missing");
+		} finally {
+			reader.close();
+		}
+	}
+
+	private List<CsvLine> readLines(String content) throws IOException {
+		CsvReader reader = new CsvReader(write(content));
+		try {
+			reader.readHeaders();
+			List<CsvLine> lines = new ArrayList<CsvLine>();
+			CsvLine line;
+			while ((line = reader.readNextLine()) != null) {
+				lines.add(line);
+			}
+			return lines;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private File write(String content) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
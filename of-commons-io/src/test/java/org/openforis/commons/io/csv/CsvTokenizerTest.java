@@ -0,0 +1,203 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+
+public class CsvTokenizerTest {
+
+	private static final int[] BUFFER_SIZES = new int[] {1, 2, 3, 7, CsvTokenizer.DEFAULT_BUFFER_SIZE};
+
+	@Test
+	public void testPlainValues() throws IOException {
+		assertLines("a,b,c\n1,,3\n", line("a", "b", "c"), line("1", "", "3"));
+		assertLines("a,b\r\nc,d\re,f", line("a", "b"), line("c", "d"), line("e", "f"));
+		assertLines("a,b,\n\n", line("a", "b", ""), line(""));
+		assertLines("");
+	}
+
+	@Test
+	public void testQuotedSeparator() throws IOException {
+		assertLines("a,\"b,c\",d\n", line("a", "b,c", "d"));
+	}
+
+	@Test
+	public void testDoubledQuotes() throws IOException {
+		assertLines("\"a\"\"b\",\"\"\"\"\n", line("a\"b", "\""));
+		assertLines("ab\"\"cd,e\n", line("ab\"cd", "e"));
+	}
+
+	@Test
+	public void testEmbeddedNewlines() throws IOException {
+		assertLines("a,\"b\nc\",d\ne\n", line("a", "b\nc", "d"), line("e"));
+		// line breaks inside quoted values are always read as LF
+		assertLines("a,\"b\r\nc\rd\"\n", line("a", "b\nc\nd"));
+	}
+
+	@Test
+	public void testWhitespaceBeforeQuote() throws IOException {
+		assertLines("a, \"b,c\",d\n", line("a", "b,c", "d"));
+		assertLines("a,\t \"b\",d\n", line("a", "b", "d"));
+	}
+
+	@Test
+	public void testTextAfterClosingQuote() throws IOException {
+		assertLines("\"ab\"cd,e\n", line("ab\"cd", "e"));
+		// a quote in the first 3 characters of a line is never kept
+		assertLines("\"a\"b,c\n", line("ab", "c"));
+	}
+
+	@Test
+	public void testBackslashEscapes() throws IOException {
+		assertLines("a\\\"b,c\\\\d,e\\,f,C:\\dir\n", line("a\"b", "c\\d", "e,f", "C:dir"));
+	}
+
+	@Test
+	public void testUnterminatedQuote() {
+		for (CsvTokenizer tokenizer : tokenizers("a,\"b\nc")) {
+			try {
+				tokenizer.next();
+				fail("Unterminated quote not detected");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().startsWith("Unterminated quoted field"));
+			}
+		}
+	}
+
+	@Test
+	public void testNonAsciiCharacters() throws IOException {
+		assertLines("\u00e0\u00e8,\"\uD83D\uDE00\"\"x\",\"\u00e9\"y\n", line("\u00e0\u00e8", "\uD83D\uDE00\"x", "\u00e9\"y"));
+	}
+
+	@Test
+	public void testReuseLineArrays() throws IOException {
+		CsvTokenizer tokenizer = new CharCsvTokenizer(new StringReader("a,b\nc,d\ne\n"), ',', '"');
+		tokenizer.setReuseLineArrays(true);
+		String[] first = tokenizer.next();
+		String[] second = tokenizer.next();
+		assertTrue(first == second);
+		assertEquals(Arrays.asList("c", "d"), Arrays.asList(second));
+		assertEquals(Arrays.asList("e"), Arrays.asList(tokenizer.next()));
+	}
+
+	/**
+	 * Values must be the same produced by the opencsv CSVParser with default settings
+	 */
+	@Test
+	public void testSameValuesAsOpenCsv() throws IOException {
+		char[] alphabet = new char[] {'a', 'b', ' ', '\t', ',', ';', '"', '"', '\\', '\n', '\r', '\u00e9'};
+		Random random = new Random(0);
+		for (int t = 0; t < 5000; t++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(30);
+			for (int i = 0; i < length; i++) {
+				sb.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+			String text = sb.toString();
+			String expected = readWithOpenCsv(text);
+			for (CsvTokenizer tokenizer : tokenizers(text)) {
+				assertEquals(text, expected, toString(readAll(tokenizer)));
+			}
+		}
+	}
+
+	private static String readWithOpenCsv(String text) throws IOException {
+		CSVParser parser = new CSVParserBuilder().withSeparator(',').withQuoteChar('"').build();
+		CSVReader reader = new CSVReaderBuilder(new StringReader(text)).withCSVParser(parser).build();
+		List<String[]> lines = new ArrayList<String[]>();
+		try {
+			String[] line;
+			while ((line = reader.readNext()) != null) {
+				lines.add(line);
+			}
+		} catch (Exception e) {
+			lines.add(new String[] {"error"});
+		}
+		return toString(lines);
+	}
+
+	private static List<String[]> readAll(CsvTokenizer tokenizer) {
+		List<String[]> lines = new ArrayList<String[]>();
+		try {
+			String[] line;
+			while ((line = tokenizer.next()) != null) {
+				lines.add(line);
+			}
+		} catch (IOException e) {
+			lines.add(new String[] {"error"});
+		}
+		return lines;
+	}
+
+	private static String toString(List<String[]> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String[] line : lines) {
+			sb.append(Arrays.toString(line)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static void assertLines(String text, String[]... expected) throws IOException {
+		List<String> expectedLines = new ArrayList<String>();
+		for (String[] line : expected) {
+			expectedLines.add(Arrays.asList(line).toString());
+		}
+		for (CsvTokenizer tokenizer : tokenizers(text)) {
+			List<String> lines = new ArrayList<String>();
+			String[] line;
+			while ((line = tokenizer.next()) != null) {
+				lines.add(Arrays.asList(line).toString());
+			}
+			assertEquals(expectedLines, lines);
+		}
+		// lazy lines
+		for (CsvTokenizer tokenizer : tokenizers(text)) {
+			List<String> lines = new ArrayList<String>();
+			while (tokenizer.nextView()) {
+				List<String> values = new ArrayList<String>();
+				for (int i = 0; i < tokenizer.getValuesCount(); i++) {
+					String value = tokenizer.getValue(i);
+					assertEquals(value, tokenizer.getChars(i).toString());
+					values.add(value);
+				}
+				lines.add(values.toString());
+			}
+			assertEquals(expectedLines, lines);
+		}
+	}
+
+	/**
+	 * Char and byte tokenizers reading the text with buffers of different sizes
+	 */
+	private static List<CsvTokenizer> tokenizers(String text) {
+		List<CsvTokenizer> result = new ArrayList<CsvTokenizer>();
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		for (int bufferSize : BUFFER_SIZES) {
+			result.add(new CharCsvTokenizer(new StringReader(text), ',', '"', bufferSize));
+			result.add(new ByteCsvTokenizer(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, ',', '"', bufferSize));
+		}
+		result.add(new CharCsvTokenizer(text.toCharArray(), text.length(), ',', '"'));
+		result.add(new ByteCsvTokenizer(bytes, bytes.length, StandardCharsets.UTF_8, ',', '"'));
+		return result;
+	}
+
+	private static String[] line(String... values) {
+		return values;
+	}
+}
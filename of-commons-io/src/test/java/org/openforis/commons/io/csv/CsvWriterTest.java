@@ -0,0 +1,159 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.opencsv.ICSVWriter;
+
+public class CsvWriterTest {
+
+	private static final Object[] VALUES = new Object[] {"a", "b,c", "say \"hi\"", "x\ny", null, 12, -7L, 1.5, 2.5f, ""};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testEscapingWithoutQuoteChar() throws IOException {
+		assertEquals("a,b\",c,say \"\"hi\"\",x\"\ny,,12,-7,1.5,2.5,\n", write(',', ICSVWriter.NO_QUOTE_CHARACTER, VALUES));
+		assertEquals("b,c;1\";2\n", write(';', ICSVWriter.NO_QUOTE_CHARACTER, "b,c", "1;2"));
+	}
+
+	@Test
+	public void testEscapingWithQuoteChar() throws IOException {
+		assertEquals("\"a\",\"b,c\",\"say \"\"hi\"\"\",\"x\ny\",,\"12\",\"-7\",\"1.5\",\"2.5\",\"\"\n", write(',', '"', VALUES));
+		// the escape character is always the double quote, as in opencsv
+		assertEquals("'it\"'s';'\"\"'\n", write(';', '\'', "it's", "\""));
+	}
+
+	@Test
+	public void testDates() throws Exception {
+		Date date = new SimpleDateFormat("yyyy-MM-dd HH:mm").parse("2020-01-02 10:30");
+
+		StringWriter out = new StringWriter();
+		CsvWriter writer = new CsvWriter(out);
+		writer.writeNext(new Object[] {date});
+		// the default date format used to parse dates does not affect the output
+		writer.getDateFormat();
+		writer.writeNext(new Object[] {date});
+		writer.setDateFormat("dd/MM/yyyy HH:mm");
+		writer.writeNext(new Object[] {date});
+		// separators in formatted dates are escaped
+		writer.setDateFormat("yyyy,MM,dd");
+		writer.writeNext(new Object[] {date});
+		writer.setDateFormat(new SimpleDateFormat("dd MMM yyyy", Locale.ENGLISH));
+		writer.writeNext(new Object[] {date});
+		writer.close();
+
+		assertEquals(date.toString() + "\n" + date.toString() + "\n02/01/2020 10:30\n2020\",01\",02\n02 Jan 2020\n", out.toString());
+	}
+
+	@Test
+	public void testOutputStream() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CsvWriter writer = new CsvWriter(out);
+		writer.writeHeaders(new String[] {"id", "name"});
+		StringBuilder expected = new StringBuilder("id,name\n");
+		// more lines than a block
+		for (int i = 0; i < 10000; i++) {
+			String name = "name \u00e8 " + i;
+			writer.writeNext(new Object[] {i, name});
+			expected.append(i).append(',').append(name).append('\n');
+		}
+		writer.close();
+		// headers included
+		assertEquals(10001, writer.getLinesWritten());
+		assertEquals(expected.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Records read reusing the arrays of values are written in parallel as they are sequentially
+	 */
+	@Test
+	public void testParallelWriteAll() throws IOException {
+		StringBuilder content = new StringBuilder("id,name,dbh\n");
+		for (int i = 0; i < 10000; i++) {
+			content.append(i).append(",\"name, ").append(i).append("\",").append(i * 0.5).append('\n');
+		}
+		File file = folder.newFile();
+		Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+		StringWriter expected = new StringWriter();
+		CsvWriter writer = new CsvWriter(expected);
+		CsvReader reader = openReader(file, false);
+		try {
+			writer.writeAll(reader);
+		} finally {
+			reader.close();
+		}
+		writer.close();
+
+		for (boolean lazyLines : new boolean[] {false, true}) {
+			StringWriter out = new StringWriter();
+			CsvWriter parallelWriter = new CsvWriter(out);
+			reader = openReader(file, lazyLines);
+			try {
+				parallelWriter.writeAll(reader, 4, 2);
+			} finally {
+				reader.close();
+			}
+			parallelWriter.close();
+			assertEquals(writer.getLinesWritten(), parallelWriter.getLinesWritten());
+			assertEquals(expected.toString(), out.toString());
+		}
+	}
+
+	/**
+	 * Subclasses, which can override writeNext, write the records sequentially
+	 */
+	@Test
+	public void testSubclassWriteAll() throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), "id\n1\n2\n3\n".getBytes(StandardCharsets.UTF_8));
+		final AtomicInteger writtenLines = new AtomicInteger();
+		CsvWriter writer = new CsvWriter(new StringWriter()) {
+			@Override
+			public void writeNext(Object[] line) {
+				writtenLines.incrementAndGet();
+				super.writeNext(line);
+			}
+		};
+		CsvReader reader = openReader(file, false);
+		try {
+			writer.writeAll(reader, 4, 2);
+		} finally {
+			reader.close();
+		}
+		writer.close();
+		assertEquals(writer.getLinesWritten(), writtenLines.get());
+	}
+
+	private static CsvReader openReader(File file, boolean lazyLines) throws IOException {
+		CsvReader reader = new CsvReader(file);
+		reader.setReuseLineArrays(true);
+		reader.setLazyLines(lazyLines);
+		reader.readHeaders();
+		return reader;
+	}
+
+	private static String write(char separator, char quoteChar, Object... values) throws IOException {
+		StringWriter out = new StringWriter();
+		CsvWriter writer = new CsvWriter(out, separator, quoteChar);
+		writer.writeNext(values);
+		writer.close();
+		return out.toString();
+	}
+}
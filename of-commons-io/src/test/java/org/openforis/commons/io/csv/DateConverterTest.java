@@ -0,0 +1,176 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DateConverterTest {
+
+	private static final String[] PATTERNS = new String[] {
+		"yyyy-MM-dd",
+		"yyyy-MM-dd HH:mm:ss",
+		ExcelReader.DATE_TIME_FORMAT,
+		"dd/MM/yyyy H:m:s.S",
+		"d/M/y",
+		"yyyyMMddHHmmss",
+		"HH:mm:ss.SSSS",
+		"yyyy-MM-dd'T'HH:mm:ssXXX",
+		"yyyyy-MM-dd XX",
+		"'Day' ddd 'of' yyyy, H 'o''clock'''"
+	};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSameAsSimpleDateFormat() throws ParseException {
+		Random random = new Random(0);
+		long from = -20L * 365 * 24 * 3600 * 1000;
+		long to = 80L * 365 * 24 * 3600 * 1000;
+		for (String pattern : PATTERNS) {
+			DateConverter converter = DateConverter.forPattern(pattern);
+			assertNotNull(pattern, converter);
+			SimpleDateFormat simpleDateFormat = new SimpleDateFormat(pattern);
+			for (int i = 0; i < 1000; i++) {
+				Date date = new Date(from + (long) (random.nextDouble() * (to - from)));
+				String expected = simpleDateFormat.format(date);
+				assertEquals(pattern, expected, converter.format(date));
+				assertEquals(pattern + " " + expected, simpleDateFormat.parse(expected), converter.parse(expected));
+			}
+		}
+	}
+
+	@Test
+	public void testMilliseconds() throws ParseException {
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", "2020-01-02 10:20:30.5");
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", "2020-01-02 10:20:30.050");
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd HH:mm:ss.S", "2020-01-02 10:20:30.123");
+		Date date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").parse("2020-01-02 10:20:30.500");
+		assertEquals("30.500", DateConverter.forPattern("ss.S").format(date));
+		assertEquals("30.0500", DateConverter.forPattern("ss.SSSS").format(date));
+	}
+
+	@Test
+	public void testLenientParsing() throws ParseException {
+		// values out of range rolled over
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd", "2020-02-30");
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd HH:mm", "2020-12-31 24:61");
+		// fewer digits
+		assertParsedAsSimpleDateFormat("dd/MM/yyyy", "1/2/2020");
+		// trailing text ignored
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd", "2020-01-02T10:00");
+		// spaces and tabs before numbers ignored
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd", " \t2020-01-02");
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd", "2020- 1-05");
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd HH:mm", "2020-01-05   10:00");
+		// negative numbers
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd", "2020-01--5");
+	}
+
+	/**
+	 * Adjacent numeric fields take at most the number of digits in the pattern, except the last one
+	 */
+	@Test
+	public void testAdjacentFields() throws ParseException {
+		assertParsedAsSimpleDateFormat("yyyyMMdd", "2020015");
+		assertEquals(new SimpleDateFormat("yyyy-MM-dd").parse("2020-01-05"), DateConverter.forPattern("yyyyMMdd").parse("2020015"));
+		assertParsedAsSimpleDateFormat("yyyyMMdd", "20200105");
+		assertParsedAsSimpleDateFormat("yyyyMMdd", "202001051234");
+		assertParsedAsSimpleDateFormat("yyyyMMddHHmm", "2020010510 5");
+	}
+
+	@Test
+	public void testTwoDigitYear() throws ParseException {
+		int year = Calendar.getInstance().get(Calendar.YEAR);
+		for (int i = 0; i < 100; i++) {
+			assertParsedAsSimpleDateFormat("d/M/y", "5/1/" + (i < 10 ? "0" + i : i));
+		}
+		// the years 80 years ago and 20 years from now can be ambiguous depending on the day
+		String ambiguous = String.format("%02d", (year - 80) % 100);
+		assertParsedAsSimpleDateFormat("d/M/y", "1/1/" + ambiguous);
+		assertParsedAsSimpleDateFormat("d/M/y", "31/12/" + ambiguous);
+		assertParsedAsSimpleDateFormat("d/M/y", "5/1/2020");
+	}
+
+	@Test
+	public void testTimeZoneOffsets() throws ParseException {
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd HH:mm Z", "2020-01-05 10:00 +0530");
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd HH:mm Z", "2020-01-05 10:00 -0800");
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd HH:mm XX", "2020-01-05 10:00 Z");
+		assertParsedAsSimpleDateFormat("yyyy-MM-dd HH:mm XXX", "2020-01-05 10:00 +05:30");
+		assertNotParsed("yyyy-MM-dd HH:mm Z", "2020-01-05 10:00 +05:30");
+		assertNotParsed("yyyy-MM-dd HH:mm Z", "2020-01-05 10:00 Z");
+		assertNotParsed("yyyy-MM-dd HH:mm XXX", "2020-01-05 10:00 +0530");
+	}
+
+	@Test
+	public void testInvalidDate() {
+		assertNotParsed("yyyy-MM-dd", "2020/01/02");
+		// plus sign not accepted by SimpleDateFormat
+		assertNotParsed("yyyy-MM-dd", "+2020-01-05");
+		assertNotParsed("yyyy-MM-dd", "2020-+1-05");
+		// other whitespaces than spaces and tabs
+		assertNotParsed("yyyy-MM-dd", "\n2020-01-05");
+		assertNotParsed("yyyy-MM-dd", "");
+	}
+
+	@Test
+	public void testUnsupportedPatterns() {
+		for (String pattern : new String[] {"yy-MM-dd", "dd MMM yyyy", "EEE, d MMMM yyyy", "yyyy-MM-dd u", "hh:mm a", "HH:mm z", "HH:mm X", "YYYY-ww"}) {
+			assertNull(pattern, DateConverter.forPattern(pattern));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnterminatedQuote() {
+		DateConverter.forPattern("yyyy 'at");
+	}
+
+	/**
+	 * Patterns not supported by the converter are handled by SimpleDateFormat
+	 */
+	@Test
+	public void testUnsupportedPatternParsedBySimpleDateFormat() throws IOException, ParseException {
+		File file = folder.newFile();
+		CsvReader reader = new CsvReader(file);
+		try {
+			reader.setDateFormat("yy-MM-dd u");
+			String value = "20-01-06 1";
+			assertEquals(new SimpleDateFormat("yy-MM-dd u").parse(value), reader.parseDate(value));
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void assertNotParsed(String pattern, String value) {
+		try {
+			new SimpleDateFormat(pattern).parse(value);
+			fail("Parsed by SimpleDateFormat: " + value);
+		} catch (ParseException e) {
+			// expected
+		}
+		try {
+			DateConverter.forPattern(pattern).parse(value);
+			fail("Parsed by the converter: " + value);
+		} catch (DateFormatException e) {
+			// expected
+		}
+	}
+
+	private static void assertParsedAsSimpleDateFormat(String pattern, String value) throws ParseException {
+		assertEquals(pattern + " " + value, new SimpleDateFormat(pattern).parse(value), DateConverter.forPattern(pattern).parse(value));
+	}
+}
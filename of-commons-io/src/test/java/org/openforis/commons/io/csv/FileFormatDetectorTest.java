@@ -0,0 +1,108 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openforis.commons.io.OpenForisIOUtils;
+import org.openforis.commons.io.csv.CsvReader.Format;
+
+public class FileFormatDetectorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testExcelSignatures() throws IOException {
+		byte[] ole2 = new byte[] {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1, 0, 0};
+		assertEquals(Format.XLS, detect(write(ole2)).getFormat());
+		byte[] zip = new byte[] {0x50, 0x4B, 0x03, 0x04, 0, 0};
+		assertEquals(Format.XLSX, detect(write(zip)).getFormat());
+	}
+
+	@Test
+	public void testByteOrderMarks() throws IOException {
+		FileFormatDetector detector = detect(write(concat(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, "a;b\n1;2\n".getBytes(StandardCharsets.UTF_8))));
+		assertEquals(Format.CSV, detector.getFormat());
+		assertEquals("UTF-8", detector.getCharsetName());
+		assertEquals(3, detector.getBomLength());
+		assertEquals(';', detector.getSeparator());
+
+		detector = detect(write(concat(new byte[] {(byte) 0xFF, (byte) 0xFE}, "a\tb\n1\t2\n".getBytes(StandardCharsets.UTF_16LE))));
+		assertEquals("UTF-16LE", detector.getCharsetName());
+		assertEquals(2, detector.getBomLength());
+		assertEquals('\t', detector.getSeparator());
+
+		detector = detect(write(concat(new byte[] {(byte) 0xFE, (byte) 0xFF}, "a|b\n1|2\n".getBytes(StandardCharsets.UTF_16BE))));
+		assertEquals("UTF-16BE", detector.getCharsetName());
+		assertEquals('|', detector.getSeparator());
+
+		// no byte order mark: default charset
+		detector = detect(write("a,b\n".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(OpenForisIOUtils.UTF_8, detector.getCharsetName());
+		assertEquals(0, detector.getBomLength());
+	}
+
+	@Test
+	public void testDetectSeparator() {
+		assertEquals(';', FileFormatDetector.detectSeparator("a;b;c\n1;2;3\n4;5;6", '"', false));
+		// separators inside quoted values are ignored
+		assertEquals(';', FileFormatDetector.detectSeparator("a;\"b,c,d\"\n1;\"2,3,4\"\n", '"', false));
+		// the separator used consistently wins over the most frequent character
+		assertEquals(',', FileFormatDetector.detectSeparator("a,b\n1,x;y;z\n2,w\n", '"', false));
+		// single column
+		assertEquals(CsvReader.DEFAULT_SEPARATOR, FileFormatDetector.detectSeparator("a\n1\n2\n", '"', false));
+		// truncated last line ignored
+		assertEquals(';', FileFormatDetector.detectSeparator("a;b\n1;2\n3;4\n5,6,7,8,9,1", '"', true));
+	}
+
+	@Test
+	public void testCompressedFile() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream out = new GZIPOutputStream(bytes);
+		out.write("a;b\n1;2\n".getBytes(StandardCharsets.UTF_8));
+		out.close();
+		FileFormatDetector detector = detect(write(bytes.toByteArray()));
+		assertEquals(Format.CSV, detector.getFormat());
+		assertEquals(';', detector.getSeparator());
+	}
+
+	@Test
+	public void testReaderUsesDetectedFormat() throws IOException {
+		File file = write(concat(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, "id;name\n1;\u00e0\n".getBytes(StandardCharsets.UTF_8)));
+		CsvReader reader = new CsvReader(file, "ISO-8859-1", CsvReader.DETECT_SEPARATOR, '"', Format.AUTO);
+		try {
+			reader.readHeaders();
+			assertEquals(Arrays.asList("id", "name"), reader.getColumnNames());
+			assertEquals("\u00e0", reader.readNextLine().getValue("name", String.class));
+		} finally {
+			reader.close();
+		}
+	}
+
+	private FileFormatDetector detect(File file) throws IOException {
+		return FileFormatDetector.detect(file, OpenForisIOUtils.UTF_8, '"');
+	}
+
+	private File write(byte[] content) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+}
@@ -0,0 +1,142 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LineCounterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCountLines() throws IOException {
+		assertEquals(0, countLines(""));
+		assertEquals(1, countLines("a"));
+		assertEquals(1, countLines("a\n"));
+		assertEquals(3, countLines("a\r\nb\rc\n"));
+		assertEquals(3, countLines("a\n\nb"));
+		// line breaks inside quoted values are counted too
+		assertEquals(3, countLines("a,\"b\nc\"\nd\n"));
+	}
+
+	@Test
+	public void testCountRecords() throws IOException {
+		assertEquals(2, countRecords("a,\"b\nc\"\nd\n"));
+		assertEquals(2, countRecords("a,\"b\r\nc\"\r\nd"));
+		assertEquals(2, countRecords("a,\"b\"\"\nc\"\nd\n"));
+		// escaped quotes don't open quoted values
+		assertEquals(3, countRecords("a\\\"b\nc\nd\n"));
+		assertEquals(2, countRecords("\"a\\\"b\nc\"\nd\n"));
+	}
+
+	@Test
+	public void testSameRecordsCountAsTokenizer() throws IOException {
+		char[] alphabet = new char[] {'a', ' ', ',', '"', '"', '\\', '\n', '\r', '\u00e9'};
+		Random random = new Random(0);
+		for (int t = 0; t < 1000; t++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(30);
+			for (int i = 0; i < length; i++) {
+				sb.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+			String text = sb.toString();
+			Integer expected = countTokenizerLines(text);
+			if (expected != null) {
+				assertEquals(text, expected.intValue(), countRecords(text));
+			}
+		}
+	}
+
+	@Test
+	public void testCharsetsDecoded() throws IOException {
+		String text = "a,\"b\nc\"\nd\u00e9\n";
+		assertEquals(3, counter(write(text, StandardCharsets.UTF_16), "UTF-16", '"').countLines());
+		assertEquals(2, counter(write(text, StandardCharsets.UTF_16), "UTF-16", '"').countRecords());
+		// quote that is not a single byte
+		String guillemets = "a,\u00abb\nc\u00ab\nd\n";
+		assertEquals(2, counter(write(guillemets, StandardCharsets.UTF_8), "UTF-8", '\u00ab').countRecords());
+	}
+
+	@Test
+	public void testCompressedFile() throws IOException {
+		File file = folder.newFile();
+		OutputStream out = new GZIPOutputStream(Files.newOutputStream(file.toPath()));
+		try {
+			out.write("a,\"b\nc\"\nd\n".getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+		assertEquals(3, counter(file, "UTF-8", '"').countLines());
+		assertEquals(3, counter(file, "UTF-8", '"').estimateLines());
+		assertEquals(2, counter(file, "UTF-8", '"').countRecords());
+	}
+
+	@Test
+	public void testEstimateLines() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int lines = 100000;
+		for (int i = 0; i < lines; i++) {
+			sb.append(i).append(",value ").append(i % 100).append('\n');
+		}
+		LineCounter counter = counter(write(sb.toString(), StandardCharsets.UTF_8), "UTF-8", '"');
+		int estimate = counter.estimateLines();
+		assertTrue("Estimate " + estimate, Math.abs(estimate - lines) < lines / 10);
+		assertEquals(lines, counter.countLines());
+		// once counted, the exact count is returned
+		assertEquals(lines, counter.estimateLines());
+	}
+
+	private int countLines(String text) throws IOException {
+		return counter(write(text, StandardCharsets.UTF_8), "UTF-8", '"').countLines();
+	}
+
+	private int countRecords(String text) throws IOException {
+		File file = write(text, StandardCharsets.UTF_8);
+		int count = counter(file, "UTF-8", '"').countRecords();
+		// decoded text
+		assertEquals(text, count, counter(write(text, StandardCharsets.UTF_16), "UTF-16", '"').countRecords());
+		return count;
+	}
+
+	/**
+	 * Returns the number of lines read by the tokenizer, or null if the text cannot be parsed
+	 */
+	private static Integer countTokenizerLines(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		CsvTokenizer tokenizer = new ByteCsvTokenizer(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, ',', '"',
+				CsvTokenizer.DEFAULT_BUFFER_SIZE);
+		try {
+			int count = 0;
+			while (tokenizer.next() != null) {
+				count ++;
+			}
+			return count;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private File write(String text, Charset charset) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), text.getBytes(charset));
+		return file;
+	}
+
+	private static LineCounter counter(File file, String charsetName, char quoteChar) {
+		return new LineCounter(file, charsetName, 0, ',', quoteChar);
+	}
+}
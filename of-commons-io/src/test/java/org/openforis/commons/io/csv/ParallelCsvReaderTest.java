@@ -0,0 +1,166 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openforis.commons.io.OpenForisIOUtils;
+import org.openforis.commons.io.csv.CsvReader.Format;
+import org.openforis.commons.io.csv.CsvReader.LineHandler;
+
+public class ParallelCsvReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSameLinesAsSequentialReader() throws IOException {
+		File file = writeFile("id,name,notes\n"
+				// quoted line breaks, likely crossing chunk boundaries
+				+ "1,\"multi\nline\",\"a,b\"\n"
+				+ "2,\"x\r\ny\",z\r\n"
+				// escaped quotes: quote parity doesn't tell if a line break is inside a quoted value
+				+ "3,\"a\\\"b\nc\",d\n"
+				+ "4,e\\\"f,\"g\"\"\nh\"\n"
+				+ "5, \"leading space\",\"ab\"cd\n"
+				+ randomLines(2000));
+		List<String> expected = readSequentially(file);
+		for (int chunkSize : new int[] {1, 10, 100, ParallelCsvReader.DEFAULT_CHUNK_SIZE}) {
+			for (int windowSize : new int[] {16, 1000, ParallelCsvReader.WINDOW_SIZE}) {
+				assertEquals(expected, readInOrder(file, chunkSize, windowSize));
+				assertEquals(sorted(expected), sorted(readAll(file, chunkSize, windowSize)));
+			}
+		}
+	}
+
+	@Test
+	public void testLastLineWithoutLineBreak() throws IOException {
+		File file = writeFile("a,b\n1,2\n3,\"4\n5\"");
+		assertEquals(readSequentially(file), readInOrder(file, 1, 16));
+	}
+
+	@Test
+	public void testSupportedCharsets() {
+		assertTrue(ParallelCsvReader.isSupported(OpenForisIOUtils.UTF_8, ',', '"'));
+		assertTrue(ParallelCsvReader.isSupported("ISO-8859-1", ';', '\''));
+		assertFalse(ParallelCsvReader.isSupported("UTF-16", ',', '"'));
+		// separator and quote must be single bytes
+		assertFalse(ParallelCsvReader.isSupported(OpenForisIOUtils.UTF_8, ',', '\u00ab'));
+		assertFalse(ParallelCsvReader.isSupported(OpenForisIOUtils.UTF_8, '\u00a7', '"'));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonAsciiQuoteRejected() throws IOException {
+		File file = writeFile("a,b\n");
+		CsvReader csvReader = new CsvReader(file);
+		try {
+			new ParallelCsvReader(file, OpenForisIOUtils.UTF_8, 0, ',', '\u00ab', 2, csvReader);
+		} finally {
+			csvReader.close();
+		}
+	}
+
+	private String randomLines(int count) {
+		String[] values = new String[] {"plain", "with space", "\u00e0\u00e8\u00ec", "\"quoted\"", "\"a,b\"", "\"x\ny\"",
+				"\"q\"\"q\"", "back\\\\slash", "\"e\\\"s\"", ""};
+		Random random = new Random(0);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append(i);
+			for (int j = 0; j < 3; j++) {
+				sb.append(',').append(values[random.nextInt(values.length)]);
+			}
+			sb.append(random.nextInt(10) == 0 ? "\r\n" : "\n");
+		}
+		return sb.toString();
+	}
+
+	private File writeFile(String content) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static List<String> readSequentially(File file) throws IOException {
+		CsvReader csvReader = new CsvReader(file, OpenForisIOUtils.UTF_8, ',', '"', Format.CSV);
+		try {
+			csvReader.readHeaders();
+			List<String> lines = new ArrayList<String>();
+			lines.add(csvReader.getColumnNames().toString());
+			CsvLine line;
+			while ((line = csvReader.readNextLine()) != null) {
+				lines.add(toString(line));
+			}
+			return lines;
+		} finally {
+			csvReader.close();
+		}
+	}
+
+	private static List<String> readInOrder(File file, int chunkSize, int windowSize) throws IOException {
+		CsvReader csvReader = new CsvReader(file);
+		ParallelCsvReader reader = new ParallelCsvReader(file, OpenForisIOUtils.UTF_8, 0, ',', '"', 3, chunkSize, windowSize, csvReader);
+		try {
+			reader.readHeaders();
+			List<String> lines = new ArrayList<String>();
+			lines.add(reader.getFieldNames().toString());
+			CsvLine line;
+			while ((line = reader.readNextLine()) != null) {
+				lines.add(toString(line));
+			}
+			return lines;
+		} finally {
+			reader.close();
+			csvReader.close();
+		}
+	}
+
+	private static List<String> readAll(File file, int chunkSize, int windowSize) throws IOException {
+		CsvReader csvReader = new CsvReader(file);
+		ParallelCsvReader reader = new ParallelCsvReader(file, OpenForisIOUtils.UTF_8, 0, ',', '"', 3, chunkSize, windowSize, csvReader);
+		try {
+			reader.readHeaders();
+			final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+			lines.add(reader.getFieldNames().toString());
+			// the first line is read in order, the other ones concurrently
+			lines.add(toString(reader.readNextLine()));
+			reader.readAllLines(new LineHandler() {
+				@Override
+				public void handle(CsvLine line) {
+					lines.add(ParallelCsvReaderTest.toString(line));
+				}
+			});
+			assertEquals(lines.size() - 1, reader.getLinesRead());
+			return lines;
+		} finally {
+			reader.close();
+			csvReader.close();
+		}
+	}
+
+	private static String toString(CsvLine line) {
+		StringBuilder sb = new StringBuilder();
+		for (String value : line.getLine()) {
+			sb.append('<').append(value).append('>');
+		}
+		return sb.toString();
+	}
+
+	private static List<String> sorted(List<String> lines) {
+		List<String> result = new ArrayList<String>(lines);
+		Collections.sort(result);
+		return result;
+	}
+}
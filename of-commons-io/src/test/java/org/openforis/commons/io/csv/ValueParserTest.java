@@ -0,0 +1,84 @@
+package org.openforis.commons.io.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ValueParserTest {
+
+	private static final String[] NUMBERS = new String[] {"0", "-0", "+7", "42", " 42 ", "-123456", "2147483647", "2147483648",
+			"-2147483649", "12.7", "-12.7", ".5", "5.", "1e3", "1.5E-3", "123456789012345678", "1234567890123456789",
+			"9223372036854775807", "0.1", "0.30000000000000004", "123456789.123456", "1234567890.1234567", "NaN", "Infinity"};
+
+	@Test
+	public void testParseInt() {
+		for (String value : NUMBERS) {
+			assertEquals(value, Double.valueOf(value).intValue(), ValueParser.parseInt(value));
+			assertEquals(value, Double.valueOf(value).intValue(), ValueParser.parseInt(CharBuffer.wrap(value)));
+		}
+	}
+
+	@Test
+	public void testParseLong() {
+		for (String value : new String[] {"0", "-0", "+7", " 42 ", "-123456", "123456789012345678", "9223372036854775807", "-9223372036854775808"}) {
+			assertEquals(value, Long.parseLong(value.trim()), ValueParser.parseLong(value));
+		}
+		for (String value : new String[] {"12.7", "1e3", "9223372036854775808", "", "-", "abc"}) {
+			try {
+				ValueParser.parseLong(value);
+				fail("Invalid long parsed: " + value);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testParseDouble() {
+		for (String value : NUMBERS) {
+			assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)), Double.doubleToLongBits(ValueParser.parseDouble(value)));
+		}
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			String value = random.nextInt(1000000) + "." + random.nextInt(1000000);
+			assertEquals(value, Double.parseDouble(value), ValueParser.parseDouble(CharBuffer.wrap(value)), 0);
+		}
+		for (String value : new String[] {"", ".", "-", "1.2.3", "abc"}) {
+			try {
+				ValueParser.parseDouble(value);
+				fail("Invalid double parsed: " + value);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testParseBoolean() {
+		for (String value : new String[] {"1", "t", "Y", "true", "TRUE"}) {
+			assertTrue(value, ValueParser.parseBoolean(value));
+		}
+		for (String value : new String[] {"0", "F", "n", "false", "False"}) {
+			assertFalse(value, ValueParser.parseBoolean(value));
+		}
+		try {
+			ValueParser.parseBoolean("yes");
+			fail("Invalid boolean parsed");
+		} catch (NumberFormatException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testIsBlank() {
+		assertTrue(ValueParser.isBlank(""));
+		assertTrue(ValueParser.isBlank(" \t\r\n"));
+		assertFalse(ValueParser.isBlank(" a "));
+	}
+}
@@ -0,0 +1,197 @@
+package org.openforis.commons.io.flat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openforis.commons.io.csv.CsvReader;
+import org.openforis.commons.io.flat.Field.Type;
+
+public class ColumnBatchTest {
+
+	private static final String CSV = "id,name,dbh,date,notes\n"
+			+ "1,a,10.5,2020-01-02,x\n"
+			+ "2,b,,2020-01-03,\n"
+			+ "3,NA,7,,y\n"
+			+ "4,d,8.25,2020-01-05,z\n"
+			+ "5,e,1e2,2020-01-06,w\n";
+
+	private static final List<Field> FIELDS = Arrays.asList(new Field("dbh", Type.DECIMAL), new Field("id", Type.INTEGER),
+			new Field("name", Type.STRING), new Field("date", Type.DATE));
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCsvReaderBatches() throws Exception {
+		CsvReader reader = openReader();
+		try {
+			assertBatches(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Batches filled by the default implementation, reading one record at a time
+	 */
+	@Test
+	public void testRecordBatches() throws Exception {
+		CsvReader reader = openReader();
+		try {
+			assertBatches(new RecordStream(reader));
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * INTEGER values are parsed by the reader as done by the records: decimal or too large values are not truncated
+	 */
+	@Test
+	public void testIntegerValuesAsRecords() throws IOException {
+		String[] values = new String[] {"42", " -7 ", "+5", "123456789012345678", "1234567890123456789",
+				"9223372036854775807", "-9223372036854775808", "9223372036854775808", "1.5", "1e3", "12.0", "abc"};
+		List<Field> fields = Arrays.asList(new Field("id", Type.INTEGER));
+		for (String value : values) {
+			Object expected = readFirstValue(openRecordStream("id\n\"" + value + "\"\n"), fields);
+			Object actual = readFirstValue(openReader("id\n\"" + value + "\"\n"), fields);
+			assertEquals(value, expected, actual);
+		}
+		assertEquals(1234567890123456789L, readFirstValue(openReader("id\n1234567890123456789\n"), fields));
+		assertEquals(NumberFormatException.class, readFirstValue(openReader("id\n1.5\n"), fields));
+		assertEquals(NumberFormatException.class, readFirstValue(openReader("id\n1e3\n"), fields));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownColumn() throws IOException {
+		CsvReader reader = openReader();
+		try {
+			reader.nextBatch(new ColumnBatch(Arrays.asList(new Field("missing", Type.STRING))));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testClear() {
+		ColumnBatch batch = new ColumnBatch(Arrays.asList(new Field("name", Type.STRING)), 100);
+		batch.setString(0, 0, "a");
+		batch.setNull(0, 70);
+		batch.setRowCount(71);
+		assertTrue(batch.isNull(0, 70));
+		assertFalse(batch.isNull(0, 6));
+		batch.clear();
+		assertTrue(batch.isEmpty());
+		assertFalse(batch.isNull(0, 70));
+		assertNull(batch.getStrings(0)[0]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongColumnType() {
+		new ColumnBatch(Arrays.asList(new Field("id", Type.INTEGER))).getDoubles(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedType() {
+		new ColumnBatch(Arrays.asList(new Field("image", Type.IMAGE_BYTE_ARRAY)));
+	}
+
+	private void assertBatches(FlatDataStream stream) throws Exception {
+		ColumnBatch batch = new ColumnBatch(FIELDS, 2);
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+		assertEquals(2, stream.nextBatch(batch));
+		assertArrayEquals(new double[] {10.5, 0}, batch.getDoubles(0), 0);
+		assertArrayEquals(new long[] {1, 2}, batch.getLongs(1));
+		assertArrayEquals(new String[] {"a", "b"}, batch.getStrings(2));
+		assertEquals(dateFormat.parse("2020-01-03").getTime(), batch.getLongs(3)[1]);
+		assertFalse(batch.isNull(0, 0));
+		assertTrue(batch.isNull(0, 1));
+
+		assertEquals(2, stream.nextBatch(batch));
+		assertEquals(3, batch.getLongs(1)[0]);
+		assertTrue(batch.isNull(2, 0));
+		assertTrue(batch.isNull(3, 0));
+		assertEquals(8.25, batch.getDoubles(0)[1], 0);
+
+		assertEquals(1, stream.nextBatch(batch));
+		assertEquals(100, batch.getDoubles(0)[0], 0);
+		assertEquals("e", batch.getStrings(2)[0]);
+
+		assertEquals(0, stream.nextBatch(batch));
+		assertTrue(batch.isEmpty());
+	}
+
+	/**
+	 * Returns the first value of the first column or the class of the exception thrown reading it; closes the stream
+	 */
+	private static Object readFirstValue(FlatDataStream stream, List<Field> fields) throws IOException {
+		try {
+			ColumnBatch batch = new ColumnBatch(fields, 1);
+			stream.nextBatch(batch);
+			return batch.getLongs(0)[0];
+		} catch (NumberFormatException e) {
+			return NumberFormatException.class;
+		} finally {
+			((Closeable) stream).close();
+		}
+	}
+
+	private CsvReader openReader() throws IOException {
+		return openReader(CSV);
+	}
+
+	private CsvReader openReader(String content) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		CsvReader reader = new CsvReader(file);
+		reader.readHeaders();
+		return reader;
+	}
+
+	/**
+	 * Opens a stream filling the batches with the default implementation, reading one record at a time
+	 */
+	private FlatDataStream openRecordStream(String content) throws IOException {
+		return new RecordStream(openReader(content));
+	}
+
+	private static class RecordStream implements FlatDataStream, Closeable {
+
+		private final CsvReader reader;
+
+		RecordStream(CsvReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public List<Field> getFields() {
+			return reader.getFields();
+		}
+
+		@Override
+		public FlatRecord nextRecord() throws IOException {
+			return reader.nextRecord();
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
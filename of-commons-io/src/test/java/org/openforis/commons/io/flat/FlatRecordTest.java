@@ -0,0 +1,113 @@
+package org.openforis.commons.io.flat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Primitive accessors implemented by the default methods of {@link FlatRecord}
+ */
+public class FlatRecordTest {
+
+	private static final List<String> FIELD_NAMES = Arrays.asList("i", "l", "d", "b", "blank");
+
+	@Test
+	public void testPrimitiveValues() {
+		FlatRecord record = new ArrayRecord(new Object[] {12, 12345678901L, -1.5, true, null});
+		assertEquals(12, record.getInt(0, -1));
+		assertEquals(12, record.getInt("i", -1));
+		assertEquals(12345678901L, record.getLong("l", -1));
+		assertEquals(-1.5, record.getDouble("d", 0), 0);
+		assertTrue(record.getBoolean("b", false));
+		assertEquals(-1, record.getInt("blank", -1));
+		assertEquals(-1, record.getLong(4, -1));
+		assertEquals(-1, record.getDouble("blank", -1), 0);
+		assertFalse(record.getBoolean("blank", false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownName() {
+		new ArrayRecord(new Object[5]).getInt("missing", -1);
+	}
+
+	/**
+	 * Record implementing only the methods without a default implementation
+	 */
+	private static class ArrayRecord implements FlatRecord {
+
+		private final Object[] values;
+
+		ArrayRecord(Object[] values) {
+			this.values = values;
+		}
+
+		@Override
+		public Object[] toArray() {
+			return values;
+		}
+
+		@Override
+		public String[] toStringArray() {
+			String[] result = new String[values.length];
+			for (int i = 0; i < values.length; i++) {
+				result[i] = values[i] == null ? null : values[i].toString();
+			}
+			return result;
+		}
+
+		@Override
+		public FlatDataStream getFlatDataStream() {
+			return null;
+		}
+
+		@Override
+		public List<String> getFieldNames() {
+			return FIELD_NAMES;
+		}
+
+		@Override
+		public <T> T getValue(int idx, Class<T> type) {
+			return type.cast(values[idx]);
+		}
+
+		@Override
+		public <T> T getValue(String name, Class<T> type) {
+			int idx = FIELD_NAMES.indexOf(name);
+			if (idx < 0) {
+				throw new IllegalArgumentException("Field not found: " + name);
+			}
+			return getValue(idx, type);
+		}
+
+		@Override
+		public boolean isMissing(int idx) {
+			return values[idx] == null;
+		}
+
+		@Override
+		public boolean isMissing(String name) {
+			return getValue(name, Object.class) == null;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			for (Object value : values) {
+				if (value != null) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public <T> T getValue(String name, Class<T> type, T defaultValue) {
+			T value = getValue(name, type);
+			return value == null ? defaultValue : value;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package org.openforis.commons.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.openforis.concurrency.Job;
+import org.openforis.concurrency.SimpleJobManager;
+import org.openforis.concurrency.WorkerProgressEvent;
+import org.openforis.concurrency.WorkerProgressListener;
+import org.openforis.concurrency.WorkerProgressPublisher.Subscription;
+
+/**
+ * Streams the status and progress of a job to the client as Server-Sent Events
+ * (content type {@code text/event-stream}), so clients don't need to poll the job status.
+ *
+ * Every event has name "jobStatus" and as data the JSON representation of a {@link JobStatusResponse}.
+ * The stream is written in the request thread and ends when the job ends or the client disconnects.
+ *
+ */
+public class JobProgressEventStream {
+
+	public static final String CONTENT_TYPE = "text/event-stream";
+	public static final String EVENT_NAME = "jobStatus";
+	public static final long DEFAULT_KEEP_ALIVE_MILLIS = 15 * 1000; //15 seconds
+
+	private final SimpleJobManager jobManager;
+	private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+
+	public JobProgressEventStream(SimpleJobManager jobManager) {
+		this.jobManager = jobManager;
+	}
+
+	/**
+	 * Writes the events of the job with the specified id until it ends.
+	 * Responds with status 404 if the job cannot be found.
+	 */
+	public void write(String jobId, HttpServletResponse response) throws IOException {
+		Job job = jobManager.getJob(jobId);
+		if (job == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		response.setContentType(CONTENT_TYPE);
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+		PrintWriter writer = response.getWriter();
+
+		final BlockingQueue<WorkerProgressEvent> events = new LinkedBlockingQueue<WorkerProgressEvent>();
+		Subscription subscription = jobManager.subscribe(job, new WorkerProgressListener() {
+			@Override
+			public void progressChanged(WorkerProgressEvent event) {
+				events.offer(event);
+			}
+		});
+		try {
+			long eventId = 0;
+			while (true) {
+				WorkerProgressEvent event = events.poll(keepAliveMillis, TimeUnit.MILLISECONDS);
+				if (event == null) {
+					//comment line: keeps the connection open and detects disconnected clients
+					writer.write(":\n\n");
+				} else {
+					writer.write("event: " + EVENT_NAME + "\n");
+					writer.write("id: " + (++ eventId) + "\n");
+					writer.write("data: " + toJson(toJobStatusResponse(jobId, event)) + "\n\n");
+				}
+				writer.flush();
+				if (writer.checkError() || event != null && event.isEnded()) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			subscription.cancel();
+		}
+	}
+
+	public static JobStatusResponse toJobStatusResponse(String jobId, WorkerProgressEvent event) {
+		JobStatusResponse response = new JobStatusResponse();
+		response.setJobId(jobId);
+		response.setJobStatus(event.getStatus());
+		response.setJobProgress(event.getProgressPercent());
+		response.setJobErrorMessage(event.getErrorMessage());
+		return response;
+	}
+
+	private static String toJson(JobStatusResponse response) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"jobId\":").append(toJsonString(response.getJobId()));
+		sb.append(",\"jobStatus\":").append(toJsonString(response.getJobStatus() == null ? null : response.getJobStatus().name()));
+		sb.append(",\"jobProgress\":").append(response.getJobProgress());
+		sb.append(",\"jobErrorMessage\":").append(toJsonString(response.getJobErrorMessage()));
+		sb.append('}');
+		return sb.toString();
+	}
+
+	private static String toJsonString(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(value.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+
+	public long getKeepAliveMillis() {
+		return keepAliveMillis;
+	}
+
+	public void setKeepAliveMillis(long keepAliveMillis) {
+		this.keepAliveMillis = keepAliveMillis;
+	}
+}
@@ -0,0 +1,114 @@
+package org.openforis.commons.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.openforis.concurrency.Job;
+import org.openforis.concurrency.SimpleJobManager;
+import org.openforis.concurrency.Task;
+
+public class JobProgressEventStreamTest {
+
+	@Test
+	public void testEventsUntilJobEnd() throws Exception {
+		SimpleJobManager jobManager = new SimpleJobManager();
+		try {
+			final CountDownLatch end = new CountDownLatch(1);
+			Job job = new Job() {
+				@Override
+				protected void buildTasks() throws Throwable {
+					addTask(new Task() {
+						@Override
+						protected void execute() throws Throwable {
+							end.await(10, TimeUnit.SECONDS);
+						}
+					});
+				}
+			};
+			jobManager.start(job);
+			final String jobId = job.getId().toString();
+			final JobProgressEventStream stream = new JobProgressEventStream(jobManager);
+			stream.setKeepAliveMillis(50);
+			final TestResponse response = new TestResponse();
+			Thread requestThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						stream.write(jobId, response.proxy());
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			requestThread.start();
+			Thread.sleep(200);
+			end.countDown();
+			requestThread.join(5000);
+			assertFalse("Stream not ended with the job", requestThread.isAlive());
+
+			String output = response.body.toString();
+			assertEquals(JobProgressEventStream.CONTENT_TYPE, response.contentType);
+			assertTrue(output, output.startsWith("event: jobStatus\nid: 1\ndata: {\"jobId\":\"" + jobId + "\",\"jobStatus\":"));
+			assertTrue(output, output.contains("\"jobStatus\":\"RUNNING\""));
+			// keep alive comments while nothing changes
+			assertTrue(output, output.contains(":\n\n"));
+			assertTrue(output, output.endsWith("\"jobStatus\":\"COMPLETED\",\"jobProgress\":100,\"jobErrorMessage\":null}\n\n"));
+		} finally {
+			jobManager.destroy();
+		}
+	}
+
+	@Test
+	public void testJobNotFound() throws Exception {
+		SimpleJobManager jobManager = new SimpleJobManager();
+		try {
+			TestResponse response = new TestResponse();
+			new JobProgressEventStream(jobManager).write("missing", response.proxy());
+			assertEquals(Integer.valueOf(HttpServletResponse.SC_NOT_FOUND), response.error);
+			assertEquals(0, response.body.getBuffer().length());
+		} finally {
+			jobManager.destroy();
+		}
+	}
+
+	/**
+	 * Records the content type, the error and the body written to a response
+	 */
+	private static class TestResponse implements InvocationHandler {
+
+		final StringWriter body = new StringWriter();
+		final PrintWriter writer = new PrintWriter(body);
+		String contentType;
+		Integer error;
+
+		HttpServletResponse proxy() {
+			return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] {HttpServletResponse.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("getWriter")) {
+				return writer;
+			} else if (name.equals("setContentType")) {
+				contentType = (String) args[0];
+			} else if (name.equals("sendError")) {
+				error = (Integer) args[0];
+			}
+			return null;
+		}
+	}
+}